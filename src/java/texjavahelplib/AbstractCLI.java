@@ -27,6 +27,7 @@ import java.text.MessageFormat;
 
 import java.util.Locale;
 import java.util.IllformedLocaleException;
+import java.util.function.Supplier;
 
 import java.awt.Component;
 
@@ -959,6 +960,17 @@ public abstract class AbstractCLI
       }
    }
 
+   /**
+    * Debugging message that's only created if debugging mode is on.
+    */
+   public void debug(Supplier<String> message)
+   {
+      if (isDebuggingModeOn())
+      {
+         error(message.get(), null);
+      }
+   }
+
    protected TeXJavaHelpLibAppAdapter createHelpLibraryApp()
    {
       return new TeXJavaHelpLibAppAdapter()
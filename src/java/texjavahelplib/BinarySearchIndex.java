@@ -0,0 +1,453 @@
+/*
+    Copyright (C) 2024 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+
+package com.dickimawbooks.texjavahelplib;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.ByteArrayOutputStream;
+
+import java.nio.ByteBuffer;
+import java.nio.BufferUnderflowException;
+import java.nio.charset.StandardCharsets;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+
+/**
+ * Case-sensitive search index read directly from the compact binary
+ * search file. Posting lists remain encoded in the buffer and are
+ * only decoded when a term is looked up. Context text is likewise
+ * only decoded on request.
+ *
+ * The format (all integers are unsigned LEB128 varints unless
+ * stated otherwise) is:
+ * <pre>
+ * magic "TJHS" (4 bytes), version (1 byte)
+ * string count, then each string as byte length + UTF-8
+ * context count, then for each context (sorted by ID):
+ *    ID delta, node label string index + 1 (0 if none), text byte length
+ * term count, then for each term (sorted):
+ *    byte length + UTF-8, posting count, posting byte length,
+ *    postings: zigzag context ID delta, zigzag start delta, end-start
+ * context text blob: byte length + UTF-8
+ * </pre>
+ */
+public class BinarySearchIndex extends SearchIndex
+{
+   protected BinarySearchIndex(ByteBuffer buffer, String[] terms,
+     int[] termPostingPositions, int[] termPostingCounts,
+     String[] strings, int[] contextIds, int[] contextLabels,
+     int[] contextTextOffsets, int blobPosition)
+   {
+      super(true, terms);
+
+      this.buffer = buffer;
+      this.termPostingPositions = termPostingPositions;
+      this.termPostingCounts = termPostingCounts;
+      this.strings = strings;
+      this.contextIds = contextIds;
+      this.contextLabels = contextLabels;
+      this.contextTextOffsets = contextTextOffsets;
+      this.blobPosition = blobPosition;
+
+      for (int n : termPostingCounts)
+      {
+         totalPostings += n;
+      }
+   }
+
+   /**
+    * Reads the index from the given buffer. Only the term and
+    * context tables are decoded. The buffer shouldn't be modified
+    * after this method is called.
+    */
+   public static BinarySearchIndex read(ByteBuffer buffer)
+    throws IOException
+   {
+      buffer = buffer.duplicate();
+
+      try
+      {
+         byte[] magic = new byte[MAGIC.length];
+         buffer.get(magic);
+
+         if (!Arrays.equals(magic, MAGIC))
+         {
+            throw new IOException("Not a binary search index");
+         }
+
+         int version = buffer.get() & 0xFF;
+
+         if (version != VERSION)
+         {
+            throw new IOException(String.format(
+              "Unsupported binary search index version %d (expected %d)",
+              version, VERSION));
+         }
+
+         int n = readVarint(buffer);
+         String[] strings = new String[n];
+
+         for (int i = 0; i < n; i++)
+         {
+            strings[i] = readString(buffer);
+         }
+
+         n = readVarint(buffer);
+
+         int[] contextIds = new int[n];
+         int[] contextLabels = new int[n];
+         int[] contextTextOffsets = new int[n+1];
+
+         int id = 0;
+         int offset = 0;
+
+         for (int i = 0; i < n; i++)
+         {
+            id += readVarint(buffer);
+            contextIds[i] = id;
+            contextLabels[i] = readVarint(buffer) - 1;
+            contextTextOffsets[i] = offset;
+            offset += readVarint(buffer);
+         }
+
+         contextTextOffsets[n] = offset;
+
+         n = readVarint(buffer);
+
+         String[] terms = new String[n];
+         int[] termPostingPositions = new int[n];
+         int[] termPostingCounts = new int[n];
+
+         for (int i = 0; i < n; i++)
+         {
+            terms[i] = readString(buffer);
+            termPostingCounts[i] = readVarint(buffer);
+
+            int len = readVarint(buffer);
+            termPostingPositions[i] = buffer.position();
+            buffer.position(buffer.position()+len);
+         }
+
+         int blobLength = readVarint(buffer);
+         int blobPosition = buffer.position();
+
+         if (blobLength != offset || blobPosition + blobLength > buffer.limit())
+         {
+            throw new IOException("Truncated binary search index");
+         }
+
+         return new BinarySearchIndex(buffer, terms,
+           termPostingPositions, termPostingCounts,
+           strings, contextIds, contextLabels, contextTextOffsets,
+           blobPosition);
+      }
+      catch (BufferUnderflowException | IllegalArgumentException e)
+      {
+         throw new IOException("Truncated binary search index", e);
+      }
+   }
+
+   @Override
+   public int[] getPostings(int termIdx)
+   {
+      int n = termPostingCounts[termIdx];
+      int[] postings = new int[3*n];
+
+      ByteBuffer buf = buffer.duplicate();
+      buf.position(termPostingPositions[termIdx]);
+
+      int contextId = 0;
+      int start = 0;
+
+      for (int i = 0, j = 0; i < n; i++)
+      {
+         int delta = readZigzag(buf);
+
+         if (delta != 0)
+         {
+            start = 0;
+         }
+
+         contextId += delta;
+         start += readZigzag(buf);
+
+         postings[j++] = contextId;
+         postings[j++] = start;
+         postings[j++] = start + readVarint(buf);
+      }
+
+      return postings;
+   }
+
+   @Override
+   public int getPostingCount()
+   {
+      return totalPostings;
+   }
+
+   public int getContextCount()
+   {
+      return contextIds.length;
+   }
+
+   public int getContextId(int idx)
+   {
+      return contextIds[idx];
+   }
+
+   /**
+    * Gets the index of the context with the given ID or -1 if not
+    * found.
+    */
+   public int findContext(int contextId)
+   {
+      int idx = Arrays.binarySearch(contextIds, contextId);
+
+      return idx < 0 ? -1 : idx;
+   }
+
+   public String getContextNodeLabel(int idx)
+   {
+      int labelIdx = contextLabels[idx];
+
+      return labelIdx < 0 ? null : strings[labelIdx];
+   }
+
+   public String getContextText(int idx)
+   {
+      int offset = contextTextOffsets[idx];
+      int len = contextTextOffsets[idx+1] - offset;
+
+      byte[] bytes = new byte[len];
+
+      ByteBuffer buf = buffer.duplicate();
+      buf.position(blobPosition+offset);
+      buf.get(bytes);
+
+      return new String(bytes, StandardCharsets.UTF_8);
+   }
+
+   /**
+    * Creates a search context for the context at the given index.
+    */
+   public SearchContext createContext(int idx)
+   {
+      return new SearchContext(contextIds[idx], getContextText(idx),
+        getContextNodeLabel(idx));
+   }
+
+   /**
+    * Writes the binary form of the given case-sensitive index and
+    * contexts.
+    */
+   public static void write(OutputStream out, SearchIndex index,
+     Collection<SearchContext> contexts)
+   throws IOException
+   {
+      if (!index.isCaseSensitive())
+      {
+         throw new IllegalArgumentException(
+          "Binary search index requires a case-sensitive index");
+      }
+
+      SearchContext[] contextList
+         = contexts.toArray(new SearchContext[contexts.size()]);
+
+      Arrays.sort(contextList, new Comparator<SearchContext>()
+       {
+          public int compare(SearchContext c1, SearchContext c2)
+          {
+             return Integer.compare(c1.getId(), c2.getId());
+          }
+       });
+
+      HashMap<String,Integer> stringMap = new HashMap<String,Integer>();
+      ByteArrayOutputStream strings = new ByteArrayOutputStream();
+
+      ByteArrayOutputStream contextTable = new ByteArrayOutputStream();
+      ByteArrayOutputStream blob = new ByteArrayOutputStream();
+
+      int prevId = 0;
+
+      for (SearchContext context : contextList)
+      {
+         writeVarint(contextTable, context.getId()-prevId);
+         prevId = context.getId();
+
+         String label = context.getNodeLabel();
+
+         if (label == null)
+         {
+            writeVarint(contextTable, 0);
+         }
+         else
+         {
+            Integer labelIdx = stringMap.get(label);
+
+            if (labelIdx == null)
+            {
+               labelIdx = Integer.valueOf(stringMap.size());
+               stringMap.put(label, labelIdx);
+               writeString(strings, label);
+            }
+
+            writeVarint(contextTable, labelIdx.intValue()+1);
+         }
+
+         byte[] bytes = context.getText().toString().getBytes(StandardCharsets.UTF_8);
+         writeVarint(contextTable, bytes.length);
+         blob.write(bytes);
+      }
+
+      out.write(MAGIC);
+      out.write(VERSION);
+
+      writeVarint(out, stringMap.size());
+      strings.writeTo(out);
+
+      writeVarint(out, contextList.length);
+      contextTable.writeTo(out);
+
+      writeTerms(out, index);
+
+      writeVarint(out, blob.size());
+      blob.writeTo(out);
+   }
+
+   /**
+    * Writes the term table of the given index.
+    */
+   protected static void writeTerms(OutputStream out, SearchIndex index)
+   throws IOException
+   {
+      int n = index.getTermCount();
+      writeVarint(out, n);
+
+      ByteArrayOutputStream postingBytes = new ByteArrayOutputStream();
+
+      for (int i = 0; i < n; i++)
+      {
+         int[] postings = index.getPostings(i);
+
+         postingBytes.reset();
+
+         int contextId = 0;
+         int start = 0;
+
+         for (int j = 0; j < postings.length; j += 3)
+         {
+            int delta = postings[j] - contextId;
+
+            if (delta != 0)
+            {
+               start = 0;
+            }
+
+            writeZigzag(postingBytes, delta);
+            writeZigzag(postingBytes, postings[j+1]-start);
+            writeVarint(postingBytes, postings[j+2]-postings[j+1]);
+
+            contextId = postings[j];
+            start = postings[j+1];
+         }
+
+         writeString(out, index.getTerm(i));
+         writeVarint(out, postings.length/3);
+         writeVarint(out, postingBytes.size());
+         postingBytes.writeTo(out);
+      }
+   }
+
+   public static int readVarint(ByteBuffer buf)
+   {
+      int value = 0;
+
+      for (int shift = 0; shift < 35; shift += 7)
+      {
+         int b = buf.get();
+
+         value |= (b & 0x7F) << shift;
+
+         if ((b & 0x80) == 0)
+         {
+            return value;
+         }
+      }
+
+      throw new IllegalArgumentException("Malformed varint");
+   }
+
+   public static int readZigzag(ByteBuffer buf)
+   {
+      int value = readVarint(buf);
+
+      return (value >>> 1) ^ -(value & 1);
+   }
+
+   public static String readString(ByteBuffer buf)
+   {
+      int len = readVarint(buf);
+
+      byte[] bytes = new byte[len];
+      buf.get(bytes);
+
+      return new String(bytes, StandardCharsets.UTF_8);
+   }
+
+   public static void writeVarint(OutputStream out, int value)
+    throws IOException
+   {
+      while ((value & ~0x7F) != 0)
+      {
+         out.write((value & 0x7F) | 0x80);
+         value >>>= 7;
+      }
+
+      out.write(value);
+   }
+
+   public static void writeZigzag(OutputStream out, int value)
+    throws IOException
+   {
+      writeVarint(out, (value << 1) ^ (value >> 31));
+   }
+
+   public static void writeString(OutputStream out, String value)
+    throws IOException
+   {
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      writeVarint(out, bytes.length);
+      out.write(bytes);
+   }
+
+   protected ByteBuffer buffer;
+   protected int[] termPostingPositions, termPostingCounts;
+   protected int totalPostings = 0;
+
+   protected String[] strings;
+   protected int[] contextIds, contextLabels, contextTextOffsets;
+   protected int blobPosition;
+
+   public static final byte[] MAGIC = new byte[] {'T', 'J', 'H', 'S'};
+   public static final int VERSION = 1;
+}
@@ -120,6 +120,7 @@ public abstract class CLITeXAppAdapter extends TeXAppAdapter
    {
       if (arg.equals("--debug-mode")
        || arg.equals("--log")
+       || arg.equals("--kpsewhich-cache")
        || arg.equals("--charset")
        || (getCharsetShortSwitch() != null && arg.equals(getCharsetShortSwitch()))
          )
@@ -167,6 +168,22 @@ public abstract class CLITeXAppAdapter extends TeXAppAdapter
       
          logFile = new File(returnVals[0].toString());
       }
+      else if (arg.equals("--nokpsewhich-cache"))
+      {
+         kpsewhichCacheFile = null;
+      }
+      else if (cliParser.isArg(arg, "--kpsewhich-cache", returnVals))
+      {
+         if (returnVals[0] == null)
+         {
+            throw new InvalidSyntaxException(
+               getMessage("error.clisyntax.missing_value", arg));
+         } 
+
+         String value = returnVals[0].toString();
+
+         kpsewhichCacheFile = value.isEmpty() ? null : new File(value);
+      }
       else if (cliParser.isArg(getCharsetShortSwitch(), "--charset", returnVals))
       {
          defaultCharset = Charset.forName(returnVals[0].toString());
@@ -207,6 +224,11 @@ public abstract class CLITeXAppAdapter extends TeXAppAdapter
       printSyntaxItem(getMessage("clisyntax.log", "--log"));
       printSyntaxItem(getMessage("clisyntax.nolog", "--nolog"));
 
+      printSyntaxItem(getMessage("clisyntax.kpsewhich-cache",
+        "--kpsewhich-cache"));
+      printSyntaxItem(getMessage("clisyntax.nokpsewhich-cache",
+        "--nokpsewhich-cache"));
+
       String charsetShortSwitch = getCharsetShortSwitch();
 
       if (charsetShortSwitch == null)
@@ -470,6 +492,20 @@ public abstract class CLITeXAppAdapter extends TeXAppAdapter
      String type)
      throws IOException,InterruptedException
    {
+      try
+      {
+         Dimension dim = getImageDimensionReader().getDimension(file);
+
+         if (dim != null)
+         {
+            return dim;
+         }
+      }
+      catch (IOException e)
+      {
+         getHelpLib().debug(e);
+      }
+
       String invoker = "file";
 
       boolean isPdf = L2HConverter.MIME_TYPE_PDF.equals(type);
@@ -567,6 +603,21 @@ public abstract class CLITeXAppAdapter extends TeXAppAdapter
       return null;
    }
 
+   /**
+    * Gets the reader used to obtain image dimensions from the file
+    * headers. The results are remembered, so each file is only read
+    * once unless it's modified.
+    */
+   public synchronized ImageDimensionReader getImageDimensionReader()
+   {
+      if (imageDimensionReader == null)
+      {
+         imageDimensionReader = new ImageDimensionReader();
+      }
+
+      return imageDimensionReader;
+   }
+
    protected File createTempFile(String name, boolean usePrefix)
      throws IOException
    {
@@ -684,6 +735,47 @@ public abstract class CLITeXAppAdapter extends TeXAppAdapter
       return getHelpLib().kpsewhich(arg, MAX_PROCESS_TIME);
    }
 
+   /**
+    * Looks up all the given files with a single kpsewhich call. The
+    * results are then available to kpsewhich(String) without
+    * starting another process.
+    */
+   public void kpsewhich(String... args)
+     throws IOException,InterruptedException
+   {
+      getHelpLib().kpsewhich(MAX_PROCESS_TIME, args);
+   }
+
+   /**
+    * Sets the file used to save kpsewhich results between runs or
+    * null if they shouldn't be saved. This needs to be set before
+    * the first call to kpsewhich.
+    */
+   public void setKpsewhichCacheFile(File file)
+   {
+      kpsewhichCacheFile = file;
+
+      getHelpLib().getKpsewhichCache().setFile(file);
+   }
+
+   /**
+    * Saves any new kpsewhich results to the cache file, if set.
+    * This is done once at the end of the run rather than after each
+    * lookup.
+    */
+   public void saveKpsewhichCache()
+   {
+      if (cliTeXHelpLib != null && getHelpLib() != null)
+      {
+         getHelpLib().getKpsewhichCache().save();
+      }
+   }
+
+   public File getKpsewhichCacheFile()
+   {
+      return kpsewhichCacheFile;
+   }
+
    public File getTeXMF()
       throws IOException
    {
@@ -856,7 +948,11 @@ public abstract class CLITeXAppAdapter extends TeXAppAdapter
             throw new IOException(getMessage("message.no.write", destDirFile));
          }
 
-          cliTeXHelpLib.debug(String.format("mkdir %s", destDirFile));
+          if (isDebuggingOn())
+          {
+             cliTeXHelpLib.debug(String.format("mkdir %s", destDirFile));
+          }
+
           Files.createDirectories(destDirFile.toPath());
       }
 
@@ -865,7 +961,10 @@ public abstract class CLITeXAppAdapter extends TeXAppAdapter
          throw new IOException(getMessage("message.no.write", dest));
       }
 
-      cliTeXHelpLib.debug(String.format("%s -> %s", src, dest));
+      if (isDebuggingOn())
+      {
+         cliTeXHelpLib.debug(String.format("%s -> %s", src, dest));
+      }
 
       Files.copy(src.toPath(), dest.toPath(),
          StandardCopyOption.REPLACE_EXISTING);
@@ -910,6 +1009,7 @@ public abstract class CLITeXAppAdapter extends TeXAppAdapter
    int exitCode = 0;
 
    protected File logFile = null;
+   protected File kpsewhichCacheFile = null;
    protected PrintWriter logWriter = null;
    protected boolean deleteTempDirOnExit = true;
    protected boolean mayRequireTmpDir;
@@ -919,6 +1019,8 @@ public abstract class CLITeXAppAdapter extends TeXAppAdapter
 
    protected File texmf;
 
+   private ImageDimensionReader imageDimensionReader;
+
    public static final Pattern PNG_INFO =
     Pattern.compile(".*: PNG image data, (\\d+) x (\\d+),.*");
    public static final Pattern JPEG_INFO =
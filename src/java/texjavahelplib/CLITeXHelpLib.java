@@ -116,6 +116,11 @@ public class CLITeXHelpLib extends AbstractCLI
    protected void postCLIProcess()
      throws InvalidSyntaxException
    {
+      if (cliTeXApp.kpsewhichCacheFile != null)
+      {
+         getHelpLib().getKpsewhichCache().setFile(cliTeXApp.kpsewhichCacheFile);
+      }
+
       cliTeXApp.postCLIProcess();
    }
 
@@ -0,0 +1,124 @@
+/*
+    Copyright (C) 2024 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+
+package com.dickimawbooks.texjavahelplib;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Case-insensitive view of a case-sensitive index. Each lower case
+ * term maps onto the group of case-sensitive terms that have the
+ * same lower case form.
+ */
+class CaseInsensitiveSearchIndex extends SearchIndex
+{
+   CaseInsensitiveSearchIndex(SearchIndex index)
+   {
+      super(false, null);
+
+      this.index = index;
+
+      int n = index.getTermCount();
+
+      HashMap<String,IntList> termMap = new HashMap<String,IntList>();
+
+      for (int i = 0; i < n; i++)
+      {
+         String word = index.getTerm(i).toLowerCase();
+
+         IntList list = termMap.get(word);
+
+         if (list == null)
+         {
+            list = new IntList(1);
+            termMap.put(word, list);
+         }
+
+         list.add(i);
+      }
+
+      terms = termMap.keySet().toArray(new String[termMap.size()]);
+      Arrays.sort(terms);
+
+      groupOffsets = new int[terms.length+1];
+      groupTerms = new int[n];
+
+      int total = 0;
+
+      for (int i = 0; i < terms.length; i++)
+      {
+         IntList list = termMap.get(terms[i]);
+
+         groupOffsets[i] = total;
+         list.copyInto(groupTerms, total);
+         total += list.size();
+      }
+
+      groupOffsets[terms.length] = total;
+   }
+
+   @Override
+   public int[] getPostings(int termIdx)
+   {
+      int from = groupOffsets[termIdx];
+      int to = groupOffsets[termIdx+1];
+
+      if (to - from == 1)
+      {
+         return index.getPostings(groupTerms[from]);
+      }
+
+      IntList list = new IntList();
+
+      for (int i = from; i < to; i++)
+      {
+         int[] postings = index.getPostings(groupTerms[i]);
+
+         for (int value : postings)
+         {
+            list.add(value);
+         }
+      }
+
+      return list.toArray();
+   }
+
+   @Override
+   public SearchIndex getCaseSensitiveIndex()
+   {
+      return index;
+   }
+
+   @Override
+   public int[] getCaseSensitiveTerms(int termIdx)
+   {
+      return Arrays.copyOfRange(groupTerms, groupOffsets[termIdx],
+        groupOffsets[termIdx+1]);
+   }
+
+   @Override
+   public int getPostingCount()
+   {
+      return index.getPostingCount();
+   }
+
+   private SearchIndex index;
+   private int[] groupOffsets, groupTerms;
+}
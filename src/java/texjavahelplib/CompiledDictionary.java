@@ -0,0 +1,391 @@
+/*
+    Copyright (C) 2024 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+
+package com.dickimawbooks.texjavahelplib;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.Vector;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Precompiled dictionary. This is a binary form of the XML
+ * dictionary files that can be loaded without an XML parser. The
+ * dictionary for a locale includes the messages from the more
+ * general locales, so prefix-en-GB.dict contains everything in
+ * prefix-en.xml overridden by prefix-en-GB.xml.
+ *
+ * The file format is:
+ * <pre>
+ * magic version source-count source* count (key pattern-length)* pattern-blob
+ * </pre>
+ * where the sources are the names of the XML files the dictionary
+ * was compiled from, the keys are in sorted order, each source and
+ * key is a UTF-8 string preceded by its length, the lengths are
+ * variable length integers and the pattern blob is the UTF-8
+ * patterns in the same order as the keys. Version 1 files don't
+ * have the source list.
+ */
+public class CompiledDictionary
+{
+   private CompiledDictionary()
+   {
+   }
+
+   /**
+    * Reads a compiled dictionary.
+    * @return map of keys to message patterns
+    */
+   public static HashMap<String,String> read(InputStream in)
+   throws IOException
+   {
+      return read(in, null);
+   }
+
+   /**
+    * Reads a compiled dictionary.
+    * @param sources if not null, the names of the XML files the
+    * dictionary was compiled from will be added to this list
+    * @return map of keys to message patterns
+    */
+   public static HashMap<String,String> read(InputStream in,
+     Vector<String> sources)
+   throws IOException
+   {
+      return read(ByteBuffer.wrap(Helpset.readAll(in, -1L)), sources);
+   }
+
+   public static HashMap<String,String> read(ByteBuffer buffer,
+     Vector<String> sources)
+   throws IOException
+   {
+      try
+      {
+         byte[] magic = new byte[MAGIC.length];
+         buffer.get(magic);
+
+         if (!Arrays.equals(magic, MAGIC))
+         {
+            throw new IOException("Not a compiled dictionary");
+         }
+
+         int version = buffer.get() & 0xFF;
+
+         if (version < 1 || version > VERSION)
+         {
+            throw new IOException(String.format(
+              "Unsupported compiled dictionary version %d (expected %d)",
+              version, VERSION));
+         }
+
+         int n;
+
+         if (version > 1)
+         {
+            n = BinarySearchIndex.readVarint(buffer);
+
+            for (int i = 0; i < n; i++)
+            {
+               String source = BinarySearchIndex.readString(buffer);
+
+               if (sources != null)
+               {
+                  sources.add(source);
+               }
+            }
+         }
+
+         n = BinarySearchIndex.readVarint(buffer);
+
+         String[] keys = new String[n];
+         int[] lengths = new int[n];
+
+         for (int i = 0; i < n; i++)
+         {
+            keys[i] = BinarySearchIndex.readString(buffer);
+            lengths[i] = BinarySearchIndex.readVarint(buffer);
+         }
+
+         HashMap<String,String> map = new HashMap<String,String>(2*n);
+
+         byte[] array = buffer.array();
+         int offset = buffer.arrayOffset()+buffer.position();
+
+         for (int i = 0; i < n; i++)
+         {
+            if (offset+lengths[i] > buffer.arrayOffset()+buffer.limit())
+            {
+               throw new BufferUnderflowException();
+            }
+
+            map.put(keys[i],
+              new String(array, offset, lengths[i], StandardCharsets.UTF_8));
+
+            offset += lengths[i];
+         }
+
+         return map;
+      }
+      catch (BufferUnderflowException | IllegalArgumentException e)
+      {
+         throw new IOException("Truncated or corrupt compiled dictionary", e);
+      }
+   }
+
+   /**
+    * Loads the dictionary from the given stream into the given
+    * properties. The stream may either be a compiled dictionary or
+    * an XML dictionary.
+    */
+   public static void load(InputStream in, Properties props)
+   throws IOException
+   {
+      if (!in.markSupported())
+      {
+         in = new BufferedInputStream(in);
+      }
+
+      in.mark(MAGIC.length);
+
+      byte[] magic = new byte[MAGIC.length];
+      int n = 0;
+
+      while (n < magic.length)
+      {
+         int count = in.read(magic, n, magic.length-n);
+
+         if (count == -1) break;
+
+         n += count;
+      }
+
+      in.reset();
+
+      if (n == magic.length && Arrays.equals(magic, MAGIC))
+      {
+         props.putAll(read(in));
+      }
+      else
+      {
+         props.loadFromXML(in);
+      }
+   }
+
+   public static void write(OutputStream out, Map<String,String> dictionary,
+     Vector<String> sources)
+   throws IOException
+   {
+      TreeMap<String,String> sorted = new TreeMap<String,String>(dictionary);
+
+      ByteArrayOutputStream blob = new ByteArrayOutputStream();
+
+      out.write(MAGIC);
+      out.write(VERSION);
+
+      BinarySearchIndex.writeVarint(out, sources.size());
+
+      for (String source : sources)
+      {
+         BinarySearchIndex.writeString(out, source);
+      }
+
+      BinarySearchIndex.writeVarint(out, sorted.size());
+
+      for (Map.Entry<String,String> entry : sorted.entrySet())
+      {
+         byte[] bytes = entry.getValue().getBytes(StandardCharsets.UTF_8);
+
+         BinarySearchIndex.writeString(out, entry.getKey());
+         BinarySearchIndex.writeVarint(out, bytes.length);
+
+         blob.write(bytes);
+      }
+
+      blob.writeTo(out);
+   }
+
+   /**
+    * Gets the location of the compiled form of the given XML
+    * dictionary.
+    * @return the location or null if the URL doesn't identify an
+    * XML file
+    */
+   public static URL getCompiledURL(URL xmlURL)
+   {
+      String str = xmlURL.toString();
+
+      if (!str.endsWith(".xml"))
+      {
+         return null;
+      }
+
+      try
+      {
+         return new URL(str.substring(0, str.length()-4)+EXTENSION);
+      }
+      catch (MalformedURLException e)
+      {
+         return null;
+      }
+   }
+
+   /**
+    * Compiles the given XML dictionary file. The dictionaries for
+    * the more general locales are loaded first from the same
+    * directory, if they exist.
+    */
+   public static void compile(File xmlFile, File outDir)
+   throws IOException
+   {
+      String name = xmlFile.getName();
+      Matcher m = FILE_NAME_PATTERN.matcher(name);
+
+      if (!m.matches())
+      {
+         throw new IllegalArgumentException(String.format(
+           "Dictionary file name '%s' doesn't match <prefix>-<tag>.xml", name));
+      }
+
+      String prefix = m.group(1);
+      String tag = m.group(2);
+
+      Vector<File> chain = new Vector<File>();
+      chain.add(xmlFile);
+
+      File dir = xmlFile.getAbsoluteFile().getParentFile();
+      int idx;
+
+      while ((idx = tag.lastIndexOf('-')) > 0)
+      {
+         tag = tag.substring(0, idx);
+
+         File file = new File(dir, String.format("%s-%s.xml", prefix, tag));
+
+         if (file.exists())
+         {
+            chain.add(0, file);
+         }
+      }
+
+      Properties props = new Properties();
+      Vector<String> sources = new Vector<String>(chain.size());
+
+      for (File file : chain)
+      {
+         sources.add(file.getName());
+
+         InputStream in = null;
+
+         try
+         {
+            in = Files.newInputStream(file.toPath());
+            props.loadFromXML(in);
+         }
+         finally
+         {
+            if (in != null)
+            {
+               in.close();
+            }
+         }
+      }
+
+      HashMap<String,String> map = new HashMap<String,String>(props.size());
+
+      for (String key : props.stringPropertyNames())
+      {
+         map.put(key, props.getProperty(key));
+      }
+
+      File outFile = new File(outDir,
+        name.substring(0, name.length()-4)+EXTENSION);
+
+      OutputStream out = null;
+
+      try
+      {
+         out = new BufferedOutputStream(Files.newOutputStream(outFile.toPath()));
+         write(out, map, sources);
+      }
+      finally
+      {
+         if (out != null)
+         {
+            out.close();
+         }
+      }
+   }
+
+   /**
+    * Compiles XML dictionaries. Syntax: &lt;out-dir&gt;
+    * &lt;xml-file&gt;...
+    */
+   public static void main(String[] args)
+   {
+      if (args.length < 2)
+      {
+         System.err.println(
+          "Syntax: CompiledDictionary <out-dir> <xml-file>...");
+         System.exit(1);
+      }
+
+      File outDir = new File(args[0]);
+
+      try
+      {
+         for (int i = 1; i < args.length; i++)
+         {
+            compile(new File(args[i]), outDir);
+         }
+      }
+      catch (Exception e)
+      {
+         System.err.println(e.getMessage());
+         System.exit(2);
+      }
+   }
+
+   public static final byte[] MAGIC = new byte[] {'T', 'J', 'H', 'D'};
+   public static final int VERSION = 2;
+   public static final String EXTENSION = ".dict";
+
+   private static final Pattern FILE_NAME_PATTERN
+     = Pattern.compile("(.+)-([a-z]{2,3}(?:-[A-Z]{2})?(?:-[A-Z][a-z]{3})?)\\.xml");
+}
@@ -0,0 +1,291 @@
+/*
+    Copyright (C) 2024 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+
+package com.dickimawbooks.texjavahelplib;
+
+import java.lang.ref.SoftReference;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Vector;
+
+import javax.swing.text.Element;
+import javax.swing.text.html.HTMLDocument;
+
+/**
+ * Size-bounded cache of parsed HTML documents shared by all pages
+ * of the helpset. Each document is weighted by its estimated memory
+ * footprint. The least recently used documents are evicted once the
+ * total weight exceeds the maximum. The documents are also softly
+ * referenced so the garbage collector may evict them if memory is
+ * short.
+ */
+public class HTMLDocumentCache
+{
+   public HTMLDocumentCache()
+   {
+      this(DEFAULT_MAX_WEIGHT);
+   }
+
+   public HTMLDocumentCache(long maxWeight)
+   {
+      this.maxWeight = maxWeight;
+      entries = new LinkedHashMap<HelpsetFile,HTMLDocumentCacheEntry>(
+        16, 0.75f, true);
+   }
+
+   /**
+    * Gets the cached document for the given file or null if the
+    * document isn't in the cache.
+    */
+   public synchronized HTMLDocument get(HelpsetFile hsf)
+   {
+      HTMLDocumentCacheEntry entry = entries.get(hsf);
+
+      if (entry != null)
+      {
+         HTMLDocument doc = entry.ref.get();
+
+         if (doc != null)
+         {
+            hitCount++;
+            return doc;
+         }
+
+         // cleared by the garbage collector
+
+         entries.remove(hsf);
+         totalWeight -= entry.weight;
+         softEvictionCount++;
+      }
+
+      missCount++;
+      return null;
+   }
+
+   /**
+    * Adds the document to the cache. Documents that exceed the
+    * maximum weight on their own aren't cached.
+    */
+   public synchronized void put(HelpsetFile hsf, HTMLDocument doc)
+   {
+      long weight = estimateWeight(doc);
+
+      HTMLDocumentCacheEntry entry = entries.remove(hsf);
+
+      if (entry != null)
+      {
+         totalWeight -= entry.weight;
+      }
+
+      if (weight > maxWeight)
+      {
+         return;
+      }
+
+      entries.put(hsf, new HTMLDocumentCacheEntry(doc, weight));
+      totalWeight += weight;
+
+      trim();
+   }
+
+   public synchronized HTMLDocument remove(HelpsetFile hsf)
+   {
+      HTMLDocumentCacheEntry entry = entries.remove(hsf);
+
+      if (entry == null)
+      {
+         return null;
+      }
+
+      totalWeight -= entry.weight;
+
+      return entry.ref.get();
+   }
+
+   /**
+    * Determines whether the given file has an entry in the cache.
+    * This doesn't update the hit and miss counts or the access
+    * order.
+    */
+   public synchronized boolean contains(HelpsetFile hsf)
+   {
+      return entries.containsKey(hsf);
+   }
+
+   public synchronized void clear()
+   {
+      entries.clear();
+      totalWeight = 0L;
+   }
+
+   /**
+    * Evicts least recently used entries until the total weight is
+    * within the maximum. Entries that have been cleared by the
+    * garbage collector are also removed.
+    */
+   protected void trim()
+   {
+      Iterator<Map.Entry<HelpsetFile,HTMLDocumentCacheEntry>> it
+         = entries.entrySet().iterator();
+
+      while (it.hasNext())
+      {
+         HTMLDocumentCacheEntry entry = it.next().getValue();
+
+         if (entry.ref.get() == null)
+         {
+            it.remove();
+            totalWeight -= entry.weight;
+            softEvictionCount++;
+         }
+      }
+
+      it = entries.entrySet().iterator();
+
+      while (totalWeight > maxWeight && it.hasNext())
+      {
+         HTMLDocumentCacheEntry entry = it.next().getValue();
+
+         it.remove();
+         totalWeight -= entry.weight;
+         evictionCount++;
+      }
+   }
+
+   public synchronized void setMaximumWeight(long maxWeight)
+   {
+      this.maxWeight = maxWeight;
+      trim();
+   }
+
+   public synchronized long getMaximumWeight()
+   {
+      return maxWeight;
+   }
+
+   public synchronized long getTotalWeight()
+   {
+      return totalWeight;
+   }
+
+   public synchronized int size()
+   {
+      return entries.size();
+   }
+
+   public synchronized long getHitCount()
+   {
+      return hitCount;
+   }
+
+   public synchronized long getMissCount()
+   {
+      return missCount;
+   }
+
+   /**
+    * Gets the number of documents evicted to keep the cache within
+    * its maximum weight.
+    */
+   public synchronized long getEvictionCount()
+   {
+      return evictionCount;
+   }
+
+   /**
+    * Gets the number of documents that were cleared by the garbage
+    * collector.
+    */
+   public synchronized long getSoftEvictionCount()
+   {
+      return softEvictionCount;
+   }
+
+   /**
+    * Estimates the memory used by the given document. This counts
+    * the content characters and the element structure. It doesn't
+    * need to be accurate, it's just used to balance large pages
+    * against small ones.
+    */
+   public static long estimateWeight(HTMLDocument doc)
+   {
+      long weight = 2L * doc.getLength();
+
+      Vector<Element> stack = new Vector<Element>();
+
+      for (Element root : doc.getRootElements())
+      {
+         stack.add(root);
+      }
+
+      while (!stack.isEmpty())
+      {
+         Element elem = stack.remove(stack.size()-1);
+
+         weight += ELEMENT_WEIGHT
+            + ATTRIBUTE_WEIGHT * elem.getAttributes().getAttributeCount();
+
+         for (int i = 0, n = elem.getElementCount(); i < n; i++)
+         {
+            stack.add(elem.getElement(i));
+         }
+      }
+
+      return weight;
+   }
+
+   @Override
+   public synchronized String toString()
+   {
+      return String.format(
+        "%s[size=%d,weight=%d,max=%d,hits=%d,misses=%d,evictions=%d,cleared=%d]",
+        getClass().getSimpleName(), entries.size(), totalWeight, maxWeight,
+        hitCount, missCount, evictionCount, softEvictionCount);
+   }
+
+   private LinkedHashMap<HelpsetFile,HTMLDocumentCacheEntry> entries;
+
+   private long maxWeight;
+   private long totalWeight = 0L;
+
+   private long hitCount = 0L, missCount = 0L;
+   private long evictionCount = 0L, softEvictionCount = 0L;
+
+   /**
+    * Default maximum total weight (roughly 32MB).
+    */
+   public static final long DEFAULT_MAX_WEIGHT = 32L * 1024L * 1024L;
+
+   public static final int ELEMENT_WEIGHT = 128;
+   public static final int ATTRIBUTE_WEIGHT = 48;
+}
+
+class HTMLDocumentCacheEntry
+{
+   HTMLDocumentCacheEntry(HTMLDocument doc, long weight)
+   {
+      ref = new SoftReference<HTMLDocument>(doc);
+      this.weight = weight;
+   }
+
+   SoftReference<HTMLDocument> ref;
+   long weight;
+}
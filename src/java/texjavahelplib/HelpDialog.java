@@ -25,6 +25,7 @@ import java.awt.BorderLayout;
 import java.awt.Dialog;
 import java.awt.Font;
 import java.awt.Frame;
+import java.awt.Window;
 
 import javax.swing.*;
 import javax.swing.tree.TreePath;
@@ -141,10 +142,29 @@ public class HelpDialog extends JDialog
 
    private void init() throws IOException
    {
-      boolean hasChildren = (pageNode.getChildCount() > 0);
-
       helpPage = new HelpPage(helpLib, this, pageNode);
 
+      initComponents();
+
+      if (pageTargetRef != null)
+      {
+         setPage(pageTargetRef, false);
+      }
+
+      updateNavWidgets();
+
+      setSize(helpLib.getHelpWindowInitialSize());
+   }
+
+   /**
+    * Creates the menu, tool bar and navigation tree for the current
+    * page node. The help page isn't included as it's retained when
+    * the dialog is retargeted.
+    */
+   protected void initComponents()
+   {
+      boolean hasChildren = (pageNode.getChildCount() > 0);
+
       JComponent toolBar = new JPanel(new BorderLayout());
       getContentPane().add(toolBar, BorderLayout.NORTH);
 
@@ -294,15 +314,118 @@ public class HelpDialog extends JDialog
             setVisible(false);
          }
        });
+   }
 
-      if (pageTargetRef != null)
+   /**
+    * Changes the node (and optionally target) that this dialog is
+    * for. The help page and its document are retained, but the
+    * navigation components and history are reset.
+    */
+   public void retarget(NavigationNode node, TargetRef targetRef)
+   {
+      if (node == null)
       {
-         setPage(pageTargetRef, false);
+         if (targetRef == null)
+         {
+            throw new NullPointerException();
+         }
+
+         node = targetRef.getNode();
       }
 
-      updateNavWidgets();
+      if (node.equals(pageNode)
+           && (targetRef == null ? pageTargetRef == null
+                : targetRef.equals(pageTargetRef)))
+      {
+         reset();
+         return;
+      }
 
-      setSize(helpLib.getHelpWindowInitialSize());
+      pageNode = node;
+      pageTargetRef = targetRef;
+
+      setTitle(node.getTitle());
+
+      getContentPane().removeAll();
+
+      navTree = null;
+      splitPane = null;
+      nextAction = null;
+      previousAction = null;
+      upAction = null;
+      popupNextAction = null;
+      popupPreviousAction = null;
+      popupUpAction = null;
+
+      initComponents();
+      helpPage.resetPopupMenu();
+      helpPage.clearHistory();
+
+      reset();
+
+      getContentPane().revalidate();
+      getContentPane().repaint();
+   }
+
+   /**
+    * Gets the help dialog shared by all help actions with the given
+    * owner, creating it if necessary. There's at most one dialog per
+    * owner, which is retargeted to the requested page when it's
+    * reused. The dialog is stored as a client property of the
+    * owner's root pane, so it can be garbage collected along with
+    * the owner.
+    */
+   public static HelpDialog getSharedDialog(TeXJavaHelpLib helpLib,
+     Window owner, NavigationNode pageNode, TargetRef targetRef)
+   throws IOException
+   {
+      JRootPane rootPane = null;
+
+      if (owner instanceof RootPaneContainer)
+      {
+         rootPane = ((RootPaneContainer)owner).getRootPane();
+      }
+
+      HelpDialog dialog = null;
+
+      if (rootPane != null)
+      {
+         Object value = rootPane.getClientProperty(SHARED_DIALOG_KEY);
+
+         if (value instanceof HelpDialog
+              && ((HelpDialog)value).getHelpLib() == helpLib)
+         {
+            dialog = (HelpDialog)value;
+            dialog.retarget(pageNode, targetRef);
+
+            return dialog;
+         }
+      }
+
+      if (pageNode == null)
+      {
+         pageNode = targetRef.getNode();
+      }
+
+      if (owner instanceof Dialog)
+      {
+         dialog = new HelpDialog(helpLib, pageNode, (Dialog)owner,
+           pageNode.getTitle(), false, targetRef);
+      }
+      else
+      {
+         dialog = new HelpDialog(helpLib, pageNode, (Frame)owner,
+           pageNode.getTitle(), false, targetRef);
+      }
+
+      dialog.setLocationRelativeTo(owner);
+
+      if (rootPane != null)
+      {
+         rootPane.putClientProperty(SHARED_DIALOG_KEY, dialog);
+      }
+
+      return dialog;
    }
 
    protected JButton createActionComponent(Action action)
@@ -673,6 +796,8 @@ public class HelpDialog extends JDialog
 
    protected ImageViewer imageViewer;
 
+   private static final String SHARED_DIALOG_KEY = "texjavahelplib.helpdialog";
+
    // null if node has no children
    protected JSplitPane splitPane;
    protected JTree navTree;
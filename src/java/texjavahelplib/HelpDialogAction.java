@@ -20,8 +20,6 @@ package com.dickimawbooks.texjavahelplib;
 
 import java.io.IOException;
 
-import java.awt.Dialog;
-import java.awt.Frame;
 import java.awt.Window;
 
 import javax.swing.JDialog;
@@ -305,40 +303,18 @@ public class HelpDialogAction extends TJHAbstractAction
    @Override
    public void doAction()
    {
-      if (helpDialog == null)
+      // All help actions with the same owner share a dialog, which
+      // is retargeted to this action's page.
+
+      try
       {
-         try
-         {
-            if (owner instanceof Dialog)
-            {
-               if (targetRef == null)
-               {
-                  helpDialog = new HelpDialog(helpLib, pageNode, (Dialog)owner);
-               }
-               else
-               {
-                  helpDialog = new HelpDialog(helpLib, targetRef, (Dialog)owner);
-               }
-            }
-            else if (targetRef == null)
-            {
-               helpDialog = new HelpDialog(helpLib, pageNode, (Frame)owner);
-            }
-            else
-            {
-               helpDialog = new HelpDialog(helpLib, targetRef, (Frame)owner);
-            }
-
-            helpDialog.setLocationRelativeTo(owner);
-         }
-         catch (IOException e)
-         {
-            helpLib.error(e);
-         }
+         helpDialog = HelpDialog.getSharedDialog(helpLib, owner,
+           pageNode, targetRef);
       }
-      else
+      catch (IOException e)
       {
-         helpDialog.reset();
+         helpLib.error(e);
+         return;
       }
 
       helpDialog.display();
@@ -190,15 +190,13 @@ public class HelpFrame extends JFrame
       // search
       navMenu.addSeparator();
 
-      helpSearchFrame = new HelpSearchFrame(this);
-
       TJHAbstractAction searchAction = new TJHAbstractAction(helpLib,
         "menu.helpframe.navigation", "search")
       {
          @Override
          public void doAction()
          {
-            helpSearchFrame.open();
+            getHelpSearchFrame().open();
          }
       };
 
@@ -208,20 +206,24 @@ public class HelpFrame extends JFrame
       // index
 
       NavigationNode indexNode = helpLib.getIndexNode();
-      URL indexNodeURL = (indexNode == null ? null : indexNode.getURL());
+      indexNodeURL = (indexNode == null ? null : indexNode.getURL());
 
       if (indexNodeURL != null)
       {
-         helpIndexFrame = new HelpIndexFrame(this, 
-          helpLib.getIndexGroupData(), indexNodeURL);
-
          TJHAbstractAction indexAction = new TJHAbstractAction(helpLib,
            "menu.helpframe.navigation", "index")
          {
             @Override
             public void doAction()
             {
-               helpIndexFrame.open();
+               try
+               {
+                  getHelpIndexFrame().open();
+               }
+               catch (IOException e)
+               {
+                  helpLib.error(e);
+               }
             }
          };
 
@@ -238,8 +240,6 @@ public class HelpFrame extends JFrame
 
       // history
 
-      helpHistoryFrame = new HelpHistoryFrame(this);
-
       historyAction = new TJHAbstractAction(helpLib,
         "menu.helpframe.navigation", "history")
        {
@@ -326,8 +326,6 @@ public class HelpFrame extends JFrame
       middlePanel.add(createActionComponent(fontDecreaseAction));
       settingsMenu.add(fontDecreaseAction);
 
-      helpFontSettingsFrame = new HelpFontSettingsFrame(this);
-
       TJHAbstractAction fontSelectAction = new TJHAbstractAction(helpLib,
         "menu.helpframe.settings", "font")
       {
@@ -356,8 +354,6 @@ public class HelpFrame extends JFrame
 
       // lower navigation panel settings
 
-      lowerNavSettingsDialog = new HelpLowerNavSettingsDialog(this, navPanel);
-
       TJHAbstractAction lowerNavSettingsAction = new TJHAbstractAction(helpLib,
         "menu.helpframe.settings", "nav")
       {
@@ -380,12 +376,84 @@ public class HelpFrame extends JFrame
 
    public void openFontSettings()
    {
-      helpFontSettingsFrame.open();
+      getHelpFontSettingsFrame().open();
    }
 
    public void openNavSettings()
    {
-      lowerNavSettingsDialog.open(this);
+      getLowerNavSettingsDialog().open(this);
+   }
+
+   // The subsidiary windows are only created when they're first
+   // required.
+
+   public HelpSearchFrame getHelpSearchFrame()
+   {
+      if (helpSearchFrame == null)
+      {
+         helpSearchFrame = new HelpSearchFrame(this);
+         initIcons(helpSearchFrame);
+      }
+
+      return helpSearchFrame;
+   }
+
+   public HelpHistoryFrame getHelpHistoryFrame()
+   {
+      if (helpHistoryFrame == null)
+      {
+         helpHistoryFrame = new HelpHistoryFrame(this);
+         initIcons(helpHistoryFrame);
+      }
+
+      return helpHistoryFrame;
+   }
+
+   public HelpFontSettingsFrame getHelpFontSettingsFrame()
+   {
+      if (helpFontSettingsFrame == null)
+      {
+         helpFontSettingsFrame = new HelpFontSettingsFrame(this);
+         initIcons(helpFontSettingsFrame);
+      }
+
+      return helpFontSettingsFrame;
+   }
+
+   public HelpLowerNavSettingsDialog getLowerNavSettingsDialog()
+   {
+      if (lowerNavSettingsDialog == null)
+      {
+         lowerNavSettingsDialog = new HelpLowerNavSettingsDialog(this, navPanel);
+      }
+
+      return lowerNavSettingsDialog;
+   }
+
+   /**
+    * Gets the index frame.
+    * @return the index frame or null if there's no index
+    */
+   public HelpIndexFrame getHelpIndexFrame() throws IOException
+   {
+      if (helpIndexFrame == null && indexNodeURL != null)
+      {
+         helpIndexFrame = new HelpIndexFrame(this,
+          helpLib.getIndexGroupData(), indexNodeURL);
+         initIcons(helpIndexFrame);
+      }
+
+      return helpIndexFrame;
+   }
+
+   private void initIcons(JFrame frame)
+   {
+      List<Image> icons = getIconImages();
+
+      if (icons != null && !icons.isEmpty())
+      {
+         frame.setIconImages(icons);
+      }
    }
 
    @Override
@@ -393,7 +461,11 @@ public class HelpFrame extends JFrame
    {
       Font f = evt.getSettings().getBodyFont();
       navTree.setFont(f);
-      helpHistoryFrame.update();
+
+      if (helpHistoryFrame != null)
+      {
+         helpHistoryFrame.update();
+      }
    }
 
    private void setHelpFont(int fontSize)
@@ -418,9 +490,21 @@ public class HelpFrame extends JFrame
    public void setIconImage(Image image)
    {
       super.setIconImage(image);
-      helpHistoryFrame.setIconImage(image);
-      helpSearchFrame.setIconImage(image);
-      helpFontSettingsFrame.setIconImage(image);
+
+      if (helpHistoryFrame != null)
+      {
+         helpHistoryFrame.setIconImage(image);
+      }
+
+      if (helpSearchFrame != null)
+      {
+         helpSearchFrame.setIconImage(image);
+      }
+
+      if (helpFontSettingsFrame != null)
+      {
+         helpFontSettingsFrame.setIconImage(image);
+      }
 
       if (helpIndexFrame != null)
       {
@@ -448,9 +532,21 @@ public class HelpFrame extends JFrame
    public void setIconImages(List<? extends Image> icons)
    {
       super.setIconImages(icons);
-      helpHistoryFrame.setIconImages(icons);
-      helpSearchFrame.setIconImages(icons);
-      helpFontSettingsFrame.setIconImages(icons);
+
+      if (helpHistoryFrame != null)
+      {
+         helpHistoryFrame.setIconImages(icons);
+      }
+
+      if (helpSearchFrame != null)
+      {
+         helpSearchFrame.setIconImages(icons);
+      }
+
+      if (helpFontSettingsFrame != null)
+      {
+         helpFontSettingsFrame.setIconImages(icons);
+      }
 
       if (helpIndexFrame != null)
       {
@@ -555,14 +651,16 @@ public class HelpFrame extends JFrame
 
    public void showHistoryFrame()
    {
-      if (helpHistoryFrame.isVisible())
+      HelpHistoryFrame frame = getHelpHistoryFrame();
+
+      if (frame.isVisible())
       {
-         helpHistoryFrame.toFront();
+         frame.toFront();
       }
       else
       {
-         helpHistoryFrame.setLocationRelativeTo(this);
-         helpHistoryFrame.setVisible(true);
+         frame.setLocationRelativeTo(this);
+         frame.setVisible(true);
       }
    }
 
@@ -628,7 +726,7 @@ public class HelpFrame extends JFrame
       popupHistoryBackAction.setEnabled(historyBackAction.isEnabled());
       popupHistoryForwardAction.setEnabled(historyForwardAction.isEnabled());
 
-      if (helpHistoryFrame.isVisible())
+      if (helpHistoryFrame != null && helpHistoryFrame.isVisible())
       {
          helpHistoryFrame.update();
       }
@@ -777,6 +875,8 @@ public class HelpFrame extends JFrame
 
    protected ImageViewer imageViewer;
 
+   protected URL indexNodeURL;
+
    protected TJHAbstractAction previousAction, upAction, nextAction,
     historyAction, historyForwardAction, historyBackAction,
     fontIncreaseAction, fontDecreaseAction, fontSelectAction,
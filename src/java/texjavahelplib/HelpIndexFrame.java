@@ -132,7 +132,8 @@ public class HelpIndexFrame extends JFrame
    {
       String ref = url.getRef();
 
-      if (indexURL.sameFile(url) && ref != null && !ref.isEmpty())
+      if (ref != null && !ref.isEmpty()
+            && ResourceKey.forURL(indexURL).equals(ResourceKey.forURL(url)))
       {
          // likely a cross-reference
          goToIndexRef(ref);
@@ -143,6 +143,27 @@ public class HelpPage extends TJHEditorPane
       return currentNode;
    }
 
+   /**
+    * Clears the history. The current page is retained but won't be
+    * in the history until the next page is set.
+    */
+   public void clearHistory()
+   {
+      history.clear();
+      historyIdx = 0;
+   }
+
+   /**
+    * Rebuilds the popup menu from the container's actions. Used when
+    * the container's actions have changed.
+    */
+   public void resetPopupMenu()
+   {
+      popupMenu.removeAll();
+      popupMenu.add(viewImageAction);
+      helpPageContainer.addActions(popupMenu);
+   }
+
    public boolean hasBackHistory()
    {
       return (historyIdx > 0);
@@ -260,6 +281,8 @@ public class HelpPage extends TJHEditorPane
 
       history.add(new HistoryItem(node, ref));
       historyIdx = history.size()-1;
+
+      helpLib.getPagePrefetcher().prefetch(node);
    }
 
    public void nextPage() throws IOException
@@ -448,24 +471,12 @@ public class HelpPage extends TJHEditorPane
       Document cachedDoc = null;
       String ref = page.getRef();
 
-      if (loaded == null || !loaded.sameFile(page))
-      {
-         URI uri = null;
+      ResourceKey key = ResourceKey.forURL(page);
 
-         try
-         {
-            uri = (new URL(page.getProtocol(), page.getHost(), page.getPath())).toURI();
-
-            if ("file".equals(uri.getScheme()))
-            {
-               uri = uri.normalize();
-
-               cachedDoc = getCachedPage(uri);
-            }
-         }
-         catch (Exception e)
-         {
-         }
+      if ("file".equals(page.getProtocol())
+           && (loaded == null || !key.equals(ResourceKey.forURL(loaded))))
+      {
+         cachedDoc = getCachedPage(key);
       }
 
       if (cachedDoc != null)
@@ -489,18 +500,25 @@ public class HelpPage extends TJHEditorPane
 
    protected Document getCachedPage(URI uri)
    {
-      try
-      {
-         HelpsetFile hsf = helpLib.getHelpSetFile(uri.toURL());
+      return getCachedPage(ResourceKey.valueOf(uri.toString()));
+   }
 
-         if (hsf != null)
+   protected Document getCachedPage(ResourceKey key)
+   {
+      Helpset helpset = helpLib.getHelpset();
+
+      HelpsetFile hsf = (helpset == null ? null : helpset.getForKey(key));
+
+      if (hsf != null)
+      {
+         try
          {
             return hsf.getHTMLDocument();
          }
-      }
-      catch (Exception e)
-      {
-         helpLib.debug(e);
+         catch (Exception e)
+         {
+            helpLib.debug(e);
+         }
       }
 
       return null;
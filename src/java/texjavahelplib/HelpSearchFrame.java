@@ -23,6 +23,7 @@ import java.io.IOException;
 import java.util.TreeSet;
 import java.util.Vector;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Comparator;
 
 import java.text.BreakIterator;
@@ -666,76 +667,151 @@ class SearchWorker extends SwingWorker<TreeSet<SearchResult>,Void>
           });
       }
 
-      TreeSet<SearchResult> results = null;
-
       SearchData searchData = helpLib.getSearchData();
 
-      HashMap<Integer,SearchContext> contexts;
+      SearchIndex index = searchData.getIndex(caseSensitive);
+
+      HashMap<Integer,SearchResult> resultMap
+         = new HashMap<Integer,SearchResult>();
+
+      // Keep track of search items that have already been matched
+      // (identified by context ID and start index) to avoid overlap
+
+      HashSet<Long> matchedItems = exact ? null : new HashSet<Long>();
 
-      HashMap<String,Vector<Integer>> wordToContextMap = searchData.getWordToContextMap(caseSensitive);
+      int n = words.size();
+      int i = 0;
 
-      if (exact)
+      for (String word : words)
       {
-         contexts = new HashMap<Integer,SearchContext>();
+         if (isCancelled())
+         {
+            return null;
+         }
+
+         if (requestStop)
+         {
+            break;
+         }
+
+         if (exact)
+         {
+            int termIdx = index.findTerm(word);
 
-         for (String word : words)
+            if (termIdx > -1)
+            {
+               addResults(helpLib, searchData, index, termIdx, 0, 0,
+                 null, resultMap, null);
+            }
+         }
+         else
          {
-            Vector<Integer> list = wordToContextMap.get(word);
+            int[] found = index.findTermsContaining(word);
 
-            if (list != null)
+            for (int j = 0; j < found.length; j += 2)
             {
-               for (Integer contextId : list)
+               if (requestStop || isCancelled())
                {
-                  if (contexts.get(contextId) == null)
-                  {
-                     contexts.put(contextId,
-                        searchData.getContext(contextId.intValue()));
-                  }
+                  break;
                }
+
+               addResults(helpLib, searchData, index, found[j], found[j+1],
+                 word.length(), word, resultMap, matchedItems);
             }
          }
+
+         setProgress(100 * (++i) / n);
       }
-      else
+
+      if (resultMap.isEmpty())
       {
-         contexts = searchData.getContexts();
+         return null;
       }
 
-      int n = contexts.size();
-      int i = 0;
+      TreeSet<SearchResult> results = new TreeSet<SearchResult>();
 
-      for (Integer key : contexts.keySet())
+      for (SearchResult result : resultMap.values())
       {
-         if (isCancelled())
+         results.add(result);
+
+         matches += result.getItemCount();
+      }
+
+      return results;
+   }
+
+   /**
+    * Adds a result for each posting of the given term. If the
+    * word is null, the entire term is matched, otherwise only the
+    * part of the term starting at the given offset. For a
+    * case-insensitive index, each original form of the term is
+    * used in the results rather than the lower case form.
+    */
+   protected void addResults(TeXJavaHelpLib helpLib, SearchData searchData,
+     SearchIndex index, int termIdx, int offset, int length, String word,
+     HashMap<Integer,SearchResult> resultMap, HashSet<Long> matchedItems)
+    throws UnknownNodeException
+   {
+      SearchIndex csIndex = index.getCaseSensitiveIndex();
+
+      boolean wholeTerm = (word == null
+         || length == index.getTerm(termIdx).length());
+
+      for (int csTermIdx : index.getCaseSensitiveTerms(termIdx))
+      {
+         String term = csIndex.getTerm(csTermIdx);
+         int[] postings = csIndex.getPostings(csTermIdx);
+
+         String matched = word;
+
+         // Lower casing may change the length of the term, in which
+         // case the offset can't be used to find the original form
+         // of the match.
+
+         if (!wholeTerm && offset+length <= term.length()
+              && term.regionMatches(true, offset, word, 0, length))
          {
-            return null;
+            matched = term.substring(offset, offset+length);
          }
 
-         if (requestStop)
+         for (int k = 0; k < postings.length; k += 3)
          {
-            break;
-         }
+            int contextId = postings[k];
+            int startIdx = postings[k+1];
+            int endIdx = postings[k+2];
 
-         SearchContext searchContext = contexts.get(key);
+            if (matchedItems != null
+                 && !matchedItems.add(Long.valueOf((((long)contextId) << 32) | startIdx)))
+            {
+               continue;
+            }
 
-         SearchResult result = searchContext.find(helpLib,
-           words, caseSensitive, exact);
+            SearchContext context = searchData.getContext(contextId);
 
-         if (result != null)
-         {
-            if (results == null)
+            if (context == null) continue;
+
+            Integer key = Integer.valueOf(contextId);
+
+            SearchResult result = resultMap.get(key);
+
+            if (result == null)
             {
-               results = new TreeSet<SearchResult>();
+               result = new SearchResult(context.getNode(helpLib), contextId);
+               resultMap.put(key, result);
             }
 
-            results.add(result);
-
-            matches += result.getItemCount();
+            if (wholeTerm)
+            {
+               result.addItem(new SearchItem(term, startIdx, endIdx,
+                 context.getNodeLabel(), contextId));
+            }
+            else
+            {
+               result.addItem(new SearchItem(matched, startIdx+offset,
+                 startIdx+offset+length, context.getNodeLabel(), contextId));
+            }
          }
-
-         setProgress(100 * (++i) / n);
       }
-
-      return results;
    }
 
    @Override
@@ -21,21 +21,30 @@ package com.dickimawbooks.texjavahelplib;
 
 import java.io.*;
 
+import java.nio.file.Files;
 import java.nio.file.Path;
 
 import java.net.URL;
-import java.net.URI;
+import java.net.MalformedURLException;
 import java.net.URISyntaxException;
 
+import java.util.ArrayDeque;
 import java.util.Comparator;
 import java.util.Dictionary;
+import java.util.Enumeration;
 import java.util.HashMap;
-import java.util.Hashtable;
+import java.util.Iterator;
 import java.util.Locale;
 import java.util.Vector;
 
 import java.util.zip.*;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 
@@ -54,7 +63,7 @@ public class Helpset
       this.helpLib = helpLib;
 
       map = new HashMap<String,HelpsetFile>();
-      urlMap = new HashMap<URL,HelpsetFile>();
+      urlMap = new HashMap<ResourceKey,HelpsetFile>();
       manifest = new Vector<String>();
    }
 
@@ -99,19 +108,20 @@ public class Helpset
          manifest.add(name);
       }
 
-      try
-      {
-         URL url = helpLib.getResourceURL();
-
-         URI uri = url.toURI().resolve(hsf.getRef());
-         url = uri.toURL();
+      ResourceKey baseKey = getBaseKey();
 
-         urlMap.put(url, hsf);
-         hsf.setURL(url);
-      }
-      catch (Exception e)
+      if (baseKey != null)
       {
-         helpLib.debug(e);
+         try
+         {
+            hsf.setURL(baseKey.resolve(hsf.getRef()).toURL());
+
+            urlMap.put(hsf.getResourceKey(), hsf);
+         }
+         catch (MalformedURLException e)
+         {
+            helpLib.debug(e);
+         }
       }
 
       HelpSetLocale hsl = helpLib.getHelpSetLocale();
@@ -134,21 +144,32 @@ public class Helpset
 
    public HelpsetFile getForURL(URL url)
    {
-      String ref = url.getRef();
+      return urlMap.get(ResourceKey.forURL(url));
+   }
 
-      if (ref != null)
+   public HelpsetFile getForKey(ResourceKey key)
+   {
+      return urlMap.get(key);
+   }
+
+   /**
+    * Gets the key identifying the resource base that the helpset
+    * file references are relative to.
+    * @return the key or null if the resource base can't be found
+    */
+   public ResourceKey getBaseKey()
+   {
+      if (baseKey == null)
       {
-         try
-         {
-            url = new URL(url.getProtocol(), url.getHost(), url.getPath());
-         }
-         catch (Exception e)
+         URL url = helpLib.getResourceURL();
+
+         if (url != null)
          {
-            helpLib.debug(e);
+            baseKey = ResourceKey.forURL(url).intern();
          }
       }
 
-      return urlMap.get(url);
+      return baseKey;
    }
 
    public HelpsetFile get(String name)
@@ -214,19 +235,168 @@ public class Helpset
    }
 
    public void writeHelpset(File zipFile) throws IOException
+   {
+      writeHelpset(zipFile, Runtime.getRuntime().availableProcessors());
+   }
+
+   /**
+    * Writes the helpset to a zip file. The files are read and
+    * compressed concurrently by up to the given number of threads
+    * and written in order. Files that are already compressed (PNG
+    * and JPEG) are stored. Helpsets that are too large for a zip
+    * file without zip64 extensions are written sequentially.
+    */
+   public void writeHelpset(File zipFile, int jobs) throws IOException
    {
       helpLib.message(helpLib.getMessageWithFallback(
         "message.writing", "Writing {0}...", zipFile));
 
+      long startTime = System.nanoTime();
+
+      Vector<HelpsetFile> files = new Vector<HelpsetFile>();
+
+      if (licenseFiles != null)
+      {
+         files.addAll(licenseFiles);
+      }
+
+      for (String name : manifest)
+      {
+         files.add(map.get(name));
+      }
+
+      long totalSize = 0L;
+
+      for (HelpsetFile hsf : files)
+      {
+         totalSize += Files.size(hsf.getPath());
+      }
+
+      if (files.size() + 2 >= HelpsetZipOutput.MAX_ENTRIES
+           || totalSize >= HelpsetZipOutput.MAX_SIZE/2)
+      {
+         writeHelpsetSequential(zipFile);
+         return;
+      }
+
+      ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, jobs));
+      ArrayDeque<Future<HelpsetZipEntry>> pending
+         = new ArrayDeque<Future<HelpsetZipEntry>>();
+
+      HelpsetZipOutput zipOut = null;
+
+      try
+      {
+         zipOut = new HelpsetZipOutput(new FileOutputStream(zipFile));
+
+         long now = System.currentTimeMillis();
+
+         zipOut.write(HelpsetZipEntry.createStored("mimetype",
+           ZIP_HELPSET_MIME_TYPE.getBytes(), now));
+
+         ByteArrayOutputStream manifestOut = new ByteArrayOutputStream();
+         writeManifest(manifestOut);
+
+         zipOut.write(HelpsetZipEntry.createDeflated(MANIFEST_XML,
+           manifestOut.toByteArray(), now));
+
+         // Limit the number of compressed entries held in memory
+         // while waiting to be written.
+
+         int window = 4*Math.max(1, jobs);
+         Iterator<HelpsetFile> it = files.iterator();
+
+         while (it.hasNext() || !pending.isEmpty())
+         {
+            while (it.hasNext() && pending.size() < window)
+            {
+               final HelpsetFile hsf = it.next();
+
+               pending.add(executor.submit(new Callable<HelpsetZipEntry>()
+               {
+                  @Override
+                  public HelpsetZipEntry call() throws IOException
+                  {
+                     return HelpsetZipEntry.create(hsf.getName(),
+                       hsf.getPath(), !hsf.isCompressedContent());
+                  }
+               }));
+            }
+
+            zipOut.write(getZipEntry(pending.poll()));
+         }
+
+         zipOut.close();
+
+         double secs = (System.nanoTime()-startTime)/1.0e9;
+
+         helpLib.message(helpLib.getMessageWithFallback(
+           "message.helpset_written",
+           "Wrote {0} entries ({1} bytes compressed to {2} bytes) in {3,number,0.00}s ({4,number,0.0} MB/s)",
+           zipOut.getEntryCount(), zipOut.getUncompressedSize(),
+           zipOut.getCompressedSize(), secs,
+           secs > 0 ? zipOut.getUncompressedSize()/1.0e6/secs : 0.0));
+
+         zipOut = null;
+      }
+      finally
+      {
+         executor.shutdownNow();
+
+         if (zipOut != null)
+         {
+            try
+            {
+               zipOut.close();
+            }
+            catch (IOException e)
+            {
+            }
+
+            zipFile.delete();
+         }
+      }
+   }
+
+   private HelpsetZipEntry getZipEntry(Future<HelpsetZipEntry> future)
+    throws IOException
+   {
+      try
+      {
+         return future.get();
+      }
+      catch (InterruptedException e)
+      {
+         throw new InterruptedIOException(e.getMessage());
+      }
+      catch (ExecutionException e)
+      {
+         Throwable cause = e.getCause();
+
+         if (cause instanceof IOException)
+         {
+            throw (IOException)cause;
+         }
+
+         throw new IOException(cause);
+      }
+   }
+
+   /**
+    * Writes the helpset to a zip file one file at a time. This
+    * supports zip64, which is required for very large helpsets.
+    */
+   protected void writeHelpsetSequential(File zipFile) throws IOException
+   {
       FileOutputStream fout = null;
       ZipOutputStream zipOut = null;
-      FileInputStream fin = null;
 
       try
       {
          fout = new FileOutputStream(zipFile);
 
-         zipOut = new ZipOutputStream(fout);
+         zipOut = new ZipOutputStream(
+           new BufferedOutputStream(fout, HelpsetZipOutput.BUFFER_SIZE));
 
          ZipEntry zipEntry = new ZipEntry("mimetype");
          zipEntry.setMethod(ZipEntry.STORED);
@@ -251,23 +421,10 @@ public class Helpset
          {
             for (HelpsetFile hsf : licenseFiles)
             {
-               Path path = hsf.getPath();
-
-               fin = new FileInputStream(path.toFile());
-
                zipEntry = new ZipEntry(hsf.getName());
                zipOut.putNextEntry(zipEntry);
 
-               byteArray = new byte[1024];
-               int length;
-
-               while ((length = fin.read(byteArray)) >= 0)
-               {
-                  zipOut.write(byteArray, 0, length);
-               }
-
-               fin.close();
-               fin = null;
+               Files.copy(hsf.getPath(), zipOut);
             }
          }
 
@@ -275,57 +432,44 @@ public class Helpset
          {
             HelpsetFile hsf = map.get(name);
 
-            Path path = hsf.getPath();
-
-            fin = new FileInputStream(path.toFile());
-
             zipEntry = new ZipEntry(hsf.getName());
             zipOut.putNextEntry(zipEntry);
 
-            byteArray = new byte[1024];
-            int length;
-
-            while ((length = fin.read(byteArray)) >= 0)
-            {
-               zipOut.write(byteArray, 0, length);
-            }
-
-            fin.close();
-            fin = null;
+            Files.copy(hsf.getPath(), zipOut);
          }
       }
       finally
       {
-         if (fin != null)
-         {
-            fin.close();
-         }
-
          if (zipOut != null)
          {
             zipOut.close();
          }
-
-         if (fout != null)
+         else if (fout != null)
          {
             fout.close();
          }
       }
-
    }
 
+   /**
+    * Loads the helpset from the given stream. Each entry is
+    * extracted as it's read from the stream, so the stream only
+    * needs to be read once. If the tjh file is available as a
+    * file, {@link #load(TeXJavaHelpLib,File)} should be used
+    * instead, as that only extracts entries when they're needed.
+    */
    public static Helpset load(TeXJavaHelpLib helpLib, String zipName, InputStream in)
    throws IOException
    {
-      helpLib.debug(helpLib.getMessageWithFallback(
-        "message.reading", "Reading {0}...", "[...]"+zipName));
+      helpLib.debugMessage(
+        "message.reading", "Reading {0}...", "[...]"+zipName);
 
       ZipInputStream zipIn = null;
       ZipEntry zipEntry;
       byte[] byteArray;
 
       Helpset hs = null;
-      String manifestContent = null;
+      boolean manifestFound = false;
 
       try
       {
@@ -337,19 +481,9 @@ public class Helpset
 
             if (name.equals("mimetype"))
             {
-               byteArray = new byte[(int)zipEntry.getSize()];
-
-               zipIn.read(byteArray, 0, byteArray.length);
-
-               String mimetype = new String(byteArray);
+               byteArray = readEntry(zipIn, zipEntry);
 
-               if (!mimetype.equals(ZIP_HELPSET_MIME_TYPE))
-               {
-                  throw new ZipIOException(helpLib, zipName, name,
-                    helpLib.getMessage("error.invalid_mime_type", mimetype));
-               }
-
-               hs = new Helpset(helpLib);
+               hs = createHelpset(helpLib, zipName, name, byteArray);
             }
             else if (hs == null)
             {
@@ -358,135 +492,341 @@ public class Helpset
             }
             else if (name.equals(MANIFEST_XML))
             {
-               ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
-
-               byteArray = new byte[1024];
-               int len = -1;
-               String encoding = null;
-
-               while ((len = zipIn.read(byteArray, 0, byteArray.length)) != -1)
+               hs.readManifest(zipName, readEntry(zipIn, zipEntry));
+               manifestFound = true;
+            }
+            else if (!manifestFound)
+            {
+               throw new ZipIOException(helpLib, zipName,
+                 helpLib.getMessage("error.zip_missing_entry", MANIFEST_XML));
+            }
+            else
+            {
+               try
                {
-                  byteStream.write(byteArray, 0, len);
+                  HelpsetFile hsf = hs.getHelpsetFileForEntry(name);
 
-                  if (encoding == null)
+                  if (hsf != null)
                   {
-                     Matcher m = XML_HEADER_ENCODING_PATTERN.matcher(
-                       byteStream.toString("US-ASCII"));
-
-                     if (m.lookingAt())
-                     {
-                        encoding = m.group(1);
-                     }
-                     else
-                     {
-                        encoding = "UTF-8";
-                     }
-                  }
-               }
+                     helpLib.debugMessage(
+                       "message.extracting", "Extracting {0}...", hsf);
 
-               if (encoding == null)
-               {
-                  // Most likely an empty file
-                  manifestContent = byteStream.toString();
+                     hsf.setByteContent(readEntry(zipIn, zipEntry));
+
+                     hs.addContent(hsf);
+                  }
                }
-               else
+               catch (Exception e)
                {
-                  manifestContent = byteStream.toString(encoding);
+                  throw new ZipIOException(helpLib,
+                    zipName, name, e.getLocalizedMessage(), e);
                }
-
-               zipIn.closeEntry();
-               zipIn.close();
-               zipIn = null;
-
-               break;
             }
 
             zipIn.closeEntry();
          }
+      }
+      finally
+      {
+         if (zipIn != null)
+         {
+            zipIn.close();
+         }
+      }
+
+      if (!manifestFound)
+      {
+         throw new ZipIOException(helpLib, zipName,
+           helpLib.getMessage("error.zip_missing_entry", MANIFEST_XML));
+      }
+
+      hs.finishLoading();
+
+      return hs;
+   }
+
+   /**
+    * Loads the helpset from the given tjh file. Only the central
+    * directory, the mimetype and the manifest are read. The content
+    * of each file is only extracted when it's first required.
+    * The file is memory-mapped, so stored entries are read directly
+    * from the mapping. The mapping is retained until {@link #close()}
+    * is called.
+    */
+   public static Helpset load(TeXJavaHelpLib helpLib, File file)
+   throws IOException
+   {
+      helpLib.debugMessage(
+        "message.reading", "Reading {0}...", file);
+
+      MappedZipFile mappedZipFile;
+
+      try
+      {
+         mappedZipFile = MappedZipFile.open(file);
+      }
+      catch (ZipException e)
+      {
+         // zip64 or too large to map
+
+         helpLib.debug(e);
+
+         return loadZipFile(helpLib, file);
+      }
+
+      String zipName = file.getName();
+      Helpset hs = null;
+
+      try
+      {
+         MappedZipEntry zipEntry = mappedZipFile.getEntry("mimetype");
+
+         if (zipEntry == null)
+         {
+            throw new ZipIOException(helpLib, zipName,
+               helpLib.getMessage("error.missing_entry", "mimetype"));
+         }
+
+         hs = createHelpset(helpLib, zipName, zipEntry.getName(),
+           mappedZipFile.readAll(zipEntry));
 
-         if (manifestContent == null)
+         zipEntry = mappedZipFile.getEntry(MANIFEST_XML);
+
+         if (zipEntry == null)
          {
             throw new ZipIOException(helpLib, zipName,
               helpLib.getMessage("error.zip_missing_entry", MANIFEST_XML));
          }
 
-         try
+         hs.readManifest(zipName, mappedZipFile.readAll(zipEntry));
+
+         for (MappedZipEntry entry : mappedZipFile.getEntries())
          {
-            helpLib.debug(helpLib.getMessageWithFallback(
-              "message.reading", "Reading {0}...", MANIFEST_XML));
+            String name = entry.getName();
+
+            if (!entry.isDirectory()
+                 && !name.equals("mimetype") && !name.equals(MANIFEST_XML))
+            {
+               HelpsetFile hsf = hs.getHelpsetFileForEntry(name);
 
-            ManifestReader mReader = new ManifestReader(hs);
+               if (hsf != null)
+               {
+                  hsf.setMappedSource(mappedZipFile, entry);
 
-            mReader.parse(new InputSource(new StringReader(manifestContent)));
+                  hs.addContent(hsf);
+               }
+            }
          }
-         catch (Exception e)
+
+         hs.mappedZipFile = mappedZipFile;
+      }
+      finally
+      {
+         if (hs == null || hs.mappedZipFile == null)
          {
-            throw new ZipIOException(helpLib,
-              zipName, MANIFEST_XML, e.getLocalizedMessage(), e);
+            mappedZipFile.close();
          }
+      }
+
+      hs.finishLoading();
+
+      return hs;
+   }
 
-         in.close();
+   /**
+    * Loads the helpset from the given tjh file using ZipFile. This
+    * is used for files that can't be memory-mapped.
+    */
+   protected static Helpset loadZipFile(TeXJavaHelpLib helpLib, File file)
+   throws IOException
+   {
+      String zipName = file.getName();
 
-         hs.createFilteredLocaleList();
+      ZipFile zipFile = new ZipFile(file);
+      Helpset hs = null;
 
-         File zipFile = helpLib.getHelpSetZipFile();
+      try
+      {
+         ZipEntry zipEntry = zipFile.getEntry("mimetype");
 
-         if (zipFile == null)
+         if (zipEntry == null)
          {
-            in = helpLib.getClass().getResourceAsStream(zipName);
-         }
-         else if (zipFile.exists())
-         {
-            in = new FileInputStream(zipFile);
-         }
-         else
-         {
-            throw new FileNotFoundException(
-              helpLib.getMessage("error.file_not_found", zipFile));
+            throw new ZipIOException(helpLib, zipName,
+               helpLib.getMessage("error.missing_entry", "mimetype"));
          }
 
-         if (in == null)
+         hs = createHelpset(helpLib, zipName, zipEntry.getName(),
+           readEntry(zipFile, zipEntry));
+
+         zipEntry = zipFile.getEntry(MANIFEST_XML);
+
+         if (zipEntry == null)
          {
-            throw new FileNotFoundException(
-               helpLib.getMessage("error.missing_resource", zipName));
+            throw new ZipIOException(helpLib, zipName,
+              helpLib.getMessage("error.zip_missing_entry", MANIFEST_XML));
          }
 
-         zipIn = new ZipInputStream(in);
+         hs.readManifest(zipName, readEntry(zipFile, zipEntry));
 
-         while ((zipEntry = zipIn.getNextEntry()) != null)
+         Enumeration<? extends ZipEntry> entries = zipFile.entries();
+
+         while (entries.hasMoreElements())
          {
+            zipEntry = entries.nextElement();
+
             String name = zipEntry.getName();
 
-            if (!name.equals("mimetype") && !name.equals(MANIFEST_XML))
+            if (!zipEntry.isDirectory()
+                 && !name.equals("mimetype") && !name.equals(MANIFEST_XML))
             {
-               try
-               {
-                  hs.readHelpsetFile(zipIn, zipEntry);
-               }
-               catch (Exception e)
+               HelpsetFile hsf = hs.getHelpsetFileForEntry(name);
+
+               if (hsf != null)
                {
-                  throw new ZipIOException(helpLib,
-                    zipName, name, e.getLocalizedMessage(), e);
+                  hsf.setZipSource(zipFile, zipEntry);
+
+                  hs.addContent(hsf);
                }
             }
+         }
 
-            zipIn.closeEntry();
+         hs.zipFile = zipFile;
+      }
+      finally
+      {
+         if (hs == null || hs.zipFile == null)
+         {
+            zipFile.close();
          }
       }
+
+      hs.finishLoading();
+
+      return hs;
+   }
+
+   private static Helpset createHelpset(TeXJavaHelpLib helpLib,
+      String zipName, String entryName, byte[] byteArray)
+   throws IOException
+   {
+      String mimetype = new String(byteArray);
+
+      if (!mimetype.equals(ZIP_HELPSET_MIME_TYPE))
+      {
+         throw new ZipIOException(helpLib, zipName, entryName,
+           helpLib.getMessage("error.invalid_mime_type", mimetype));
+      }
+
+      return new Helpset(helpLib);
+   }
+
+   private static byte[] readEntry(InputStream in, ZipEntry zipEntry)
+   throws IOException
+   {
+      return readAll(in, zipEntry.getSize());
+   }
+
+   /**
+    * Reads the remainder of the stream. The stream isn't closed.
+    * @param in the input stream
+    * @param size the expected number of bytes or -1 if not known
+    */
+   static byte[] readAll(InputStream in, long size)
+   throws IOException
+   {
+      ByteArrayOutputStream byteStream = new ByteArrayOutputStream(
+        size > 0 && size < Integer.MAX_VALUE ? (int)size : 8192);
+
+      byte[] byteArray = new byte[8192];
+      int len;
+
+      while ((len = in.read(byteArray, 0, byteArray.length)) != -1)
+      {
+         byteStream.write(byteArray, 0, len);
+      }
+
+      return byteStream.toByteArray();
+   }
+
+   private static byte[] readEntry(ZipFile zipFile, ZipEntry zipEntry)
+   throws IOException
+   {
+      InputStream in = null;
+
+      try
+      {
+         in = zipFile.getInputStream(zipEntry);
+
+         return readEntry(in, zipEntry);
+      }
       finally
       {
-         if (zipIn != null)
+         if (in != null)
          {
-            zipIn.close();
+            in.close();
          }
       }
+   }
+
+   protected void readManifest(String zipName, byte[] byteArray)
+   throws IOException
+   {
+      String encoding = "UTF-8";
 
-      if (hs.licenseFiles != null && hs.licenseFiles.size() > 1)
+      Matcher m = XML_HEADER_ENCODING_PATTERN.matcher(
+        new String(byteArray, 0, Math.min(byteArray.length, 256), "US-ASCII"));
+
+      if (m.lookingAt())
       {
-         hs.licenseFiles.sort(new HelpsetFileLocaleComparator());
+         encoding = m.group(1);
       }
 
-      return hs;
+      String manifestContent = new String(byteArray, encoding);
+
+      try
+      {
+         helpLib.debugMessage(
+           "message.reading", "Reading {0}...", MANIFEST_XML);
+
+         ManifestReader mReader = new ManifestReader(this);
+
+         mReader.parse(new InputSource(new StringReader(manifestContent)));
+      }
+      catch (Exception e)
+      {
+         throw new ZipIOException(helpLib,
+           zipName, MANIFEST_XML, e.getLocalizedMessage(), e);
+      }
+
+      createFilteredLocaleList();
+   }
+
+   protected void finishLoading()
+   {
+      if (licenseFiles != null && licenseFiles.size() > 1)
+      {
+         licenseFiles.sort(new HelpsetFileLocaleComparator());
+      }
+   }
+
+   /**
+    * Closes the tjh file if the helpset was loaded lazily. Any
+    * content that hasn't already been extracted will no longer
+    * be available.
+    */
+   public void close() throws IOException
+   {
+      if (zipFile != null)
+      {
+         zipFile.close();
+         zipFile = null;
+      }
+
+      if (mappedZipFile != null)
+      {
+         mappedZipFile.close();
+         mappedZipFile = null;
+      }
    }
 
    public HelpsetFile getLicense()
@@ -499,8 +839,12 @@ public class Helpset
       return null;
    }
 
-   protected void readHelpsetFile(ZipInputStream zipIn, ZipEntry zipEntry)
-      throws IOException
+   /**
+    * Gets the helpset file corresponding to the given zip entry
+    * name or null if the entry isn't required (for example, if it's
+    * for a locale that has been filtered out).
+    */
+   protected HelpsetFile getHelpsetFileForEntry(String entryName)
    {
       String name = helpLib.getResourcePath();
 
@@ -509,7 +853,7 @@ public class Helpset
          name += "/";
       }
 
-      name += zipEntry.getName();
+      name += entryName;
 
       HelpsetFile hsf = map.get(name);
 
@@ -519,7 +863,7 @@ public class Helpset
       {
          for (HelpsetFile licenseFile : licenseFiles)
          {
-            if (licenseFile.getRef().equals(zipEntry.getName()))
+            if (licenseFile.getRef().equals(entryName))
             {
                hsf = licenseFile;
                license = true;
@@ -538,59 +882,31 @@ public class Helpset
                licenseFiles.remove(hsf);
             }
 
-            return;
+            return null;
          }
 
          String dir = helpLib.getHelpsetDirName();
 
          if (!hsf.getRef().startsWith(dir) && hsf.hasLocale() && !license)
          {
-            return;
+            return null;
          }
+      }
 
-         helpLib.debug(helpLib.getMessageWithFallback(
-           "message.extracting", "Extracting {0}...", hsf));
-
-         ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
-
-         byte[] byteArray = new byte[1024];
-         int len = -1;
+      return hsf;
+   }
 
-         while ((len = zipIn.read(byteArray, 0, byteArray.length)) != -1)
+   protected void addContent(HelpsetFile hsf)
+   {
+      if (hsf.isStyleSheetContent())
+      {
+         if (cssFiles == null)
          {
-            byteStream.write(byteArray, 0, len);
+            cssFiles = new Vector<HelpsetFile>();
          }
 
-         hsf.setByteContent(byteStream.toByteArray());
-
-         if (hsf.isStyleSheetContent())
-         {
-            if (cssFiles == null)
-            {
-               cssFiles = new Vector<HelpsetFile>();
-            }
-
-            cssFiles.add(hsf);
-         }
-         else if (hsf.isImageContent())
-         {
-            URL url = hsf.getURL();
-
-            if (url != null)
-            {
-               Image image = hsf.getImage();
-
-               if (image != null)
-               {
-                  if (imageCache == null)
-                  {
-                     imageCache = new Hashtable<URL,Image>();
-                  }
-
-                  imageCache.put(url, image);
-               }
-            }
-         }
+         cssFiles.add(hsf);
+         styleSheets = null;
       }
    }
 
@@ -649,10 +965,10 @@ public class Helpset
 
       if (helpLib.getApplication().isDebuggingOn())
       {
-         helpLib.debug(helpLib.getMessageWithFallback(
+         helpLib.debugMessage(
           "message.helpset.filtered_locales",
           "{0} helpset {0,choice,0#locales|1#locale|1<locales} established",
-          filteredLocales == null ? 0 : filteredLocales.size()));
+          filteredLocales == null ? 0 : filteredLocales.size());
 
          if (filteredLocales != null)
          {
@@ -664,41 +980,117 @@ public class Helpset
       }
    }
 
-   public StyleSheet getStyleSheet()
+   /**
+    * Gets the style sheets parsed from the helpset CSS files, in
+    * the order the files were added. Each CSS file is only parsed
+    * once and the same style sheets are shared by all documents, so
+    * they mustn't be modified. Use {@link #createStyleSheet(StyleSheet)}
+    * to obtain a style sheet that links to them.
+    *
+    * The shared style sheets may be read by the page prefetch
+    * thread at the same time as the event dispatch thread. This is
+    * safe because they're fully parsed before this synchronized
+    * method returns them and no rules are added to them after that.
+    * Linking a style sheet only changes the style sheet it's linked
+    * to, and a linked style sheet is only read through
+    * StyleSheet.getRule(String), which is synchronized on that
+    * style sheet while it updates its cache of resolved rules. The
+    * kit's default style sheet is already shared across threads in
+    * the same way.
+    */
+   public synchronized Vector<StyleSheet> getStyleSheets()
    {
-      StyleSheet styleSheet = null;
-
-      if (cssFiles != null)
+      if (styleSheets == null)
       {
-         for (HelpsetFile hsf : cssFiles)
-         {
-            StyleSheet s = null;
+         styleSheets = new Vector<StyleSheet>();
 
-            try
+         if (cssFiles != null)
+         {
+            for (HelpsetFile hsf : cssFiles)
             {
-               s = hsf.getStyleSheet();
-
-               if (styleSheet == null)
+               try
                {
-                  styleSheet = s;
+                  styleSheets.add(hsf.getStyleSheet());
                }
-               else
+               catch (IOException e)
                {
-                  styleSheet.addStyleSheet(s);
+                  helpLib.debug(e);
                }
             }
-            catch (IOException e)
-            {
-               helpLib.debug(e);
-            }
          }
       }
 
+      return styleSheets;
+   }
+
+   /**
+    * Creates a new style sheet that links to the shared helpset
+    * style sheets and the given default style sheet. The linked
+    * style sheets have the same precedence as when the helpset CSS
+    * files were parsed into each document's style sheet: the first
+    * CSS file, then the defaults and then the remaining CSS files,
+    * with later files taking precedence over earlier ones.
+    *
+    * Rules added to the new style sheet take precedence over all
+    * the linked style sheets, regardless of the specificity of the
+    * linked rules. For helpset pages these are the font settings
+    * rules, as texjavahelpmk writes the CSS to separate files rather
+    * than style elements. This means the user's font settings are
+    * always applied, whereas previously a more specific selector
+    * in the first CSS file could override them. Parsing the first
+    * CSS file into each document's style sheet to keep the old
+    * behaviour would undo most of the saving, as helpsets usually
+    * have a single CSS file.
+    * @param defaults the default style sheet or null if none
+    */
+   public StyleSheet createStyleSheet(StyleSheet defaults)
+   {
+      Vector<StyleSheet> sheets = getStyleSheets();
+
+      StyleSheet styleSheet = new StyleSheet();
+
+      // Style sheets added later take precedence over those
+      // added earlier.
+
+      for (int i = 1; i < sheets.size(); i++)
+      {
+         styleSheet.addStyleSheet(sheets.get(i));
+      }
+
+      if (defaults != null)
+      {
+         styleSheet.addStyleSheet(defaults);
+      }
+
+      if (!sheets.isEmpty())
+      {
+         styleSheet.addStyleSheet(sheets.firstElement());
+      }
+
       return styleSheet;
    }
 
+   /**
+    * Gets a new style sheet that links to all the helpset CSS
+    * style sheets.
+    */
+   public StyleSheet getStyleSheet()
+   {
+      return createStyleSheet(null);
+   }
+
+   /**
+    * Gets the image cache for the "imageCache" document property.
+    * Helpset images are decoded in the background on first request.
+    */
    public Dictionary<URL,Image> getImageCache()
    {
+      if (imageCache == null)
+      {
+         imageCache = new HelpsetImageCache(this,
+           helpLib.getHelpSetImageCacheLimit());
+      }
+
       return imageCache;
    }
 
@@ -709,7 +1101,8 @@ public class Helpset
 
    TeXJavaHelpLib helpLib;
 
-   HashMap<URL,HelpsetFile> urlMap;
+   HashMap<ResourceKey,HelpsetFile> urlMap;
+   ResourceKey baseKey;
    HashMap<String,HelpsetFile> map;
    Vector<String> manifest;
 
@@ -717,10 +1110,14 @@ public class Helpset
    Vector<HelpSetLocale> filteredLocales;
 
    Vector<HelpsetFile> cssFiles;
-   Dictionary<URL,Image> imageCache;
+   Vector<StyleSheet> styleSheets;
+   HelpsetImageCache imageCache;
 
    Vector<HelpsetFile> licenseFiles;
 
+   ZipFile zipFile;
+   MappedZipFile mappedZipFile;
+
    public static final String MANIFEST_XML = "manifest.xml";
 
    public static final Pattern XML_HEADER_ENCODING_PATTERN =
@@ -766,11 +1163,11 @@ class ManifestReader extends XMLReaderAdapter
 
          if (root != null && !root.equals(helpLib.getHelpsetDirName()))
          {
-            helpLib.debug(helpLib.getMessageWithFallback(
+            helpLib.debugMessage(
                "message.helpset.manifest_root_overriding_helpsetdir",
                "Manifest root {0} overriding helpset dir {1}",
                 root, helpLib.getHelpsetDirName()
-             ));
+             );
 
             helpLib.setHelpsetDirName(root);
          }
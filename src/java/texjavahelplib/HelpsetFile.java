@@ -28,12 +28,16 @@ import java.io.BufferedReader;
 import java.io.StringReader;
 import java.io.UnsupportedEncodingException;
 
+import java.lang.ref.SoftReference;
+
 import java.net.URL;
 
 import java.awt.image.BufferedImage;
 import javax.imageio.ImageIO;
 import javax.swing.text.html.StyleSheet;
 
+import java.nio.ByteBuffer;
+
 import java.nio.file.Path;
 import java.nio.file.Files;
 
@@ -46,6 +50,9 @@ import java.util.Vector;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
 import javax.swing.text.BadLocationException;
 import javax.swing.text.html.HTMLDocument;
 import javax.swing.text.html.HTMLEditorKit;
@@ -128,6 +135,7 @@ public class HelpsetFile
    public void setURL(URL url)
    {
       this.url = url;
+      resourceKey = (url == null ? null : ResourceKey.forURL(url).intern());
    }
 
    public URL getURL()
@@ -135,6 +143,11 @@ public class HelpsetFile
       return url;
    }
 
+   public ResourceKey getResourceKey()
+   {
+      return resourceKey;
+   }
+
    public void setName(String name)
    {
       this.name = name;
@@ -294,9 +307,95 @@ public class HelpsetFile
       byteContent = content;
    }
 
+   /**
+    * Identifies the zip entry that contains this file's content.
+    * The content won't be extracted until it's required. Lazily
+    * extracted content is only softly referenced, so content that
+    * hasn't been used recently may be evicted and then extracted
+    * again if it's required later.
+    */
+   public void setZipSource(ZipFile zipFile, ZipEntry zipEntry)
+   {
+      this.zipFile = zipFile;
+      this.zipEntry = zipEntry;
+   }
+
+   /**
+    * Identifies the entry in a memory-mapped tjh file that contains
+    * this file's content. Stored entries are read directly from
+    * the mapping, so they don't take up any heap space until
+    * they're decoded.
+    */
+   void setMappedSource(MappedZipFile zipFile, MappedZipEntry zipEntry)
+   {
+      mappedZipFile = zipFile;
+      mappedZipEntry = zipEntry;
+   }
+
+   public boolean isLazy()
+   {
+      return (zipEntry != null || mappedZipEntry != null)
+        && byteContent == null;
+   }
+
    public boolean hasContent()
    {
-      return byteContent != null;
+      return byteContent != null || zipEntry != null || mappedZipEntry != null;
+   }
+
+   /**
+    * Determines whether the content is read directly from a
+    * memory-mapped tjh file.
+    */
+   public boolean isMapped()
+   {
+      return mappedZipEntry != null && byteContent == null;
+   }
+
+   /**
+    * Gets the raw content, extracting it from the zip file if
+    * necessary.
+    */
+   public byte[] getByteContent() throws IOException
+   {
+      if (byteContent != null || !isLazy()) return byteContent;
+
+      byte[] content = softByteContent == null ? null : softByteContent.get();
+
+      if (content == null && mappedZipEntry != null)
+      {
+         helpLib.debugMessage(
+           "message.extracting", "Extracting {0}...", this);
+
+         content = mappedZipFile.readAll(mappedZipEntry);
+
+         softByteContent = new SoftReference<byte[]>(content);
+      }
+      else if (content == null)
+      {
+         helpLib.debugMessage(
+           "message.extracting", "Extracting {0}...", this);
+
+         InputStream in = null;
+
+         try
+         {
+            in = zipFile.getInputStream(zipEntry);
+
+            content = Helpset.readAll(in, zipEntry.getSize());
+         }
+         finally
+         {
+            if (in != null)
+            {
+               in.close();
+            }
+         }
+
+         softByteContent = new SoftReference<byte[]>(content);
+      }
+
+      return content;
    }
 
    public boolean isTextContent()
@@ -309,17 +408,68 @@ public class HelpsetFile
       return type.startsWith("image/");
    }
 
-   public String getStringContent()
-     throws InvalidContentTypeException,UnsupportedEncodingException
+   /**
+    * Determines whether the content is in a format that's already
+    * compressed, in which case there's no benefit in compressing it
+    * again when creating a zip file.
+    */
+   public boolean isCompressedContent()
+   {
+      return type.equals(TYPE_PNG) || type.equals(TYPE_JPEG);
+   }
+
+   public String getStringContent() throws IOException
    {
       if (textContent != null || !hasContent()) return textContent;
 
+      String text = softTextContent == null ? null : softTextContent.get();
+
+      if (text != null) return text;
+
+      text = decodeStringContent();
+
+      if (isLazy())
+      {
+         softTextContent = new SoftReference<String>(text);
+      }
+      else
+      {
+         textContent = text;
+      }
+
+      return text;
+   }
+
+   /**
+    * Decodes the text content without retaining it.
+    */
+   protected String decodeStringContent() throws IOException
+   {
       if (isTextContent())
       {
-         textContent = 
-           new String(byteContent, encoding == null ? "UTF-8" : encoding);
+         Charset charset = StandardCharsets.UTF_8;
+
+         if (encoding != null)
+         {
+            try
+            {
+               charset = Charset.forName(encoding);
+            }
+            catch (IllegalArgumentException e)
+            {
+               throw new UnsupportedEncodingException(encoding);
+            }
+         }
 
-         return textContent;
+         if (isMapped() && mappedZipEntry.isStored())
+         {
+            // decode straight from the mapping
+
+            return charset.decode(
+              mappedZipFile.getByteBuffer(mappedZipEntry)).toString();
+         }
+
+         return new String(getByteContent(), charset);
       }
       else
       {
@@ -335,11 +485,43 @@ public class HelpsetFile
    {
       if (image != null || !hasContent()) return image;
 
+      BufferedImage img = softImage == null ? null : softImage.get();
+
+      if (img != null) return img;
+
+      img = decodeImage();
+
+      if (isLazy())
+      {
+         softImage = new SoftReference<BufferedImage>(img);
+      }
+      else
+      {
+         image = img;
+      }
+
+      return img;
+   }
+
+   /**
+    * Decodes the image without retaining it.
+    */
+   public BufferedImage decodeImage() throws IOException
+   {
+      if (image != null || !hasContent()) return image;
+
       if (isImageContent())
       {
-         image = ImageIO.read(getInputStream());
+         InputStream in = getInputStream();
 
-         return image;
+         try
+         {
+            return ImageIO.read(in);
+         }
+         finally
+         {
+            in.close();
+         }
       }
       else
       {
@@ -361,25 +543,32 @@ public class HelpsetFile
       return type.equals(TYPE_HTML);
    }
 
+   /**
+    * Gets the parsed HTML document. Parsed documents are held in
+    * the shared document cache rather than by this object, so a
+    * page that hasn't been viewed for a while may need to be parsed
+    * again. The decoded text isn't retained as it's only needed
+    * by the parser.
+    */
    public HTMLDocument getHTMLDocument() throws IOException
    {
       if (isHTMLContent())
       {
-         if (htmlDocument == null)
-         {
-            StringReader reader = getStringReader();
-            TJHEditorKit htmlKit = new TJHEditorKit(helpLib);
+         HTMLDocumentCache cache = helpLib.getHTMLDocumentCache();
 
-            htmlDocument = (HTMLDocument)htmlKit.createDefaultDocument();
-            htmlDocument.putProperty("IgnoreCharsetDirective", Boolean.TRUE);
+         HTMLDocument htmlDocument;
 
-            try
+         // The page may be being parsed in the background, in which
+         // case wait for it rather than parse it again.
+
+         synchronized (this)
+         {
+            htmlDocument = cache.get(this);
+
+            if (htmlDocument == null)
             {
-               htmlKit.read(reader, htmlDocument, 0);
-            }
-            catch (BadLocationException e)
-            {// shouldn't happen
-               helpLib.debug(e);
+               htmlDocument = parseHTMLDocument();
+               cache.put(this, htmlDocument);
             }
          }
 
@@ -395,6 +584,47 @@ public class HelpsetFile
       }
    }
 
+   protected HTMLDocument parseHTMLDocument() throws IOException
+   {
+      String text = textContent;
+
+      if (text == null && softTextContent != null)
+      {
+         text = softTextContent.get();
+      }
+
+      if (text == null)
+      {
+         text = decodeStringContent();
+      }
+
+      long startTime = System.nanoTime();
+
+      StringReader reader = new StringReader(text);
+      TJHEditorKit htmlKit = new TJHEditorKit(helpLib);
+
+      HTMLDocument htmlDocument
+         = (HTMLDocument)htmlKit.createDefaultDocument();
+      htmlDocument.putProperty("IgnoreCharsetDirective", Boolean.TRUE);
+
+      try
+      {
+         htmlKit.read(reader, htmlDocument, 0);
+      }
+      catch (BadLocationException e)
+      {// shouldn't happen
+         helpLib.debug(e);
+      }
+
+      if (helpLib.isDebuggingOn())
+      {
+         helpLib.debug(String.format("Parsed %s in %.2fms", this,
+           (System.nanoTime()-startTime)/1.0e6));
+      }
+
+      return htmlDocument;
+   }
+
    public boolean isStyleSheetContent()
    {
       return type.equals(TYPE_CSS);
@@ -420,15 +650,41 @@ public class HelpsetFile
       }
    }
 
-   public StringReader getStringReader()
-     throws InvalidContentTypeException,UnsupportedEncodingException
+   public StringReader getStringReader() throws IOException
    {
       return new StringReader(getStringContent());
    }
 
-   public InputStream getInputStream()
+   public InputStream getInputStream() throws IOException
    {
-      return new ByteArrayInputStream(byteContent);
+      if (isMapped())
+      {
+         byte[] content = softByteContent == null ? null : softByteContent.get();
+
+         if (content != null)
+         {
+            return new ByteArrayInputStream(content);
+         }
+
+         return mappedZipFile.getInputStream(mappedZipEntry);
+      }
+
+      byte[] content = getByteContent();
+
+      return content == null ? null : new ByteArrayInputStream(content);
+   }
+
+   public ByteBuffer getByteBuffer() throws IOException
+   {
+      if (isMapped() && mappedZipEntry.isStored())
+      {
+         return mappedZipFile.getByteBuffer(mappedZipEntry);
+      }
+
+      byte[] content = getByteContent();
+
+      return content == null ? null
+        : ByteBuffer.wrap(content).asReadOnlyBuffer();
    }
 
    public static boolean isSupportedType(String mimetype)
@@ -439,7 +695,8 @@ public class HelpsetFile
           || mimetype.equals(TYPE_XML)
           || mimetype.equals(TYPE_APPLICATION_XML)
           || mimetype.equals(TYPE_PNG)
-          || mimetype.equals(TYPE_JPEG));
+          || mimetype.equals(TYPE_JPEG)
+          || mimetype.equals(TYPE_SEARCH_INDEX));
    }
 
    public void writeManifestEntry(OutputStream out)
@@ -479,11 +736,19 @@ public class HelpsetFile
 
    Path path;
    URL url;
+   ResourceKey resourceKey;
    byte[] byteContent;
 
+   ZipFile zipFile;
+   ZipEntry zipEntry;
+   MappedZipFile mappedZipFile;
+   MappedZipEntry mappedZipEntry;
+   SoftReference<byte[]> softByteContent;
+   SoftReference<String> softTextContent;
+   SoftReference<BufferedImage> softImage;
+
    BufferedImage image = null;
    String textContent = null;
-   HTMLDocument htmlDocument = null;
 
    NavigationNode node = null;
 
@@ -496,7 +761,8 @@ public class HelpsetFile
    public static final String TYPE_HTML="text/html",
     TYPE_CSS="text/css", TYPE_XML="text/xml",
     TYPE_APPLICATION_XML = "application/xml",
-    TYPE_PNG="image/png", TYPE_JPEG="image/jpeg";
+    TYPE_PNG="image/png", TYPE_JPEG="image/jpeg",
+    TYPE_SEARCH_INDEX="application/x-texjavahelp-search";
 
    public static final Pattern CSS_CHARSET_PATTERN = 
      Pattern.compile("\\@charset\\s+\"([^\"]+)\"\\s+;");
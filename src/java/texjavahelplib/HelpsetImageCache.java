@@ -0,0 +1,470 @@
+/*
+    Copyright (C) 2024 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+
+package com.dickimawbooks.texjavahelplib;
+
+import java.io.IOException;
+
+import java.net.URL;
+
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Vector;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import java.awt.Image;
+import java.awt.Toolkit;
+import java.awt.image.BufferedImage;
+import java.awt.image.ImageConsumer;
+import java.awt.image.ImageProducer;
+
+/**
+ * Image cache that decodes helpset images when they are first
+ * requested rather than when the helpset is loaded. This is a
+ * Dictionary keyed by URL, as required for the "imageCache"
+ * document property, but the images are stored against the
+ * resource key.
+ *
+ * Helpset images are returned straight away and decoded in the
+ * background. They are loaded through the usual image observer
+ * mechanism, so the image view paints its loading placeholder
+ * until the image is ready. The decoded images are weighted by the
+ * number of bytes used by their pixels. The least recently used
+ * images are dropped from the cache once the total weight exceeds
+ * the maximum. An image that's dropped is decoded again the next
+ * time it's requested.
+ *
+ * Images added with put (such as the documentation icons) aren't
+ * subject to the weight limit.
+ */
+class HelpsetImageCache extends Dictionary<URL,Image>
+{
+   HelpsetImageCache(Helpset helpset)
+   {
+      this(helpset, DEFAULT_MAX_WEIGHT);
+   }
+
+   HelpsetImageCache(Helpset helpset, long maxWeight)
+   {
+      this.helpset = helpset;
+      this.maxWeight = maxWeight;
+      images = new HashMap<ResourceKey,Image>();
+      urls = new HashMap<ResourceKey,URL>();
+      decoded = new LinkedHashMap<ResourceKey,HelpsetImageCacheEntry>(
+        16, 0.75f, true);
+   }
+
+   @Override
+   public Image get(Object key)
+   {
+      if (!(key instanceof URL))
+      {
+         return null;
+      }
+
+      ResourceKey resourceKey = ResourceKey.forURL((URL)key);
+
+      synchronized (this)
+      {
+         Image image = images.get(resourceKey);
+
+         if (image != null)
+         {
+            return image;
+         }
+
+         HelpsetImageCacheEntry entry = decoded.get(resourceKey);
+
+         if (entry != null)
+         {
+            return entry.image;
+         }
+      }
+
+      HelpsetFile hsf = helpset.getForKey(resourceKey);
+
+      if (hsf == null || !hsf.isImageContent() || !hsf.hasContent())
+      {
+         return null;
+      }
+
+      resourceKey = resourceKey.intern();
+
+      synchronized (this)
+      {
+         HelpsetImageCacheEntry entry = decoded.get(resourceKey);
+
+         if (entry == null)
+         {
+            entry = new HelpsetImageCacheEntry(
+              Toolkit.getDefaultToolkit().createImage(
+                new HelpsetImageProducer(this, resourceKey, hsf)));
+
+            decoded.put(resourceKey, entry);
+            urls.put(resourceKey, (URL)key);
+         }
+
+         return entry.image;
+      }
+   }
+
+   protected synchronized ExecutorService getExecutor()
+   {
+      if (executor == null)
+      {
+         executor = Executors.newFixedThreadPool(DECODER_THREADS,
+          new ThreadFactory()
+          {
+             @Override
+             public Thread newThread(Runnable r)
+             {
+                Thread thread = new Thread(r, "TeXJavaHelpLib image decoder");
+                thread.setDaemon(true);
+
+                return thread;
+             }
+          });
+      }
+
+      return executor;
+   }
+
+   /**
+    * Queues the image for decoding.
+    */
+   void decode(final HelpsetImageProducer producer)
+   {
+      getExecutor().execute(new Runnable()
+       {
+          @Override
+          public void run()
+          {
+             BufferedImage image = null;
+
+             try
+             {
+                image = producer.getHelpsetFile().decodeImage();
+             }
+             catch (IOException e)
+             {
+                helpset.getHelpLib().debug(e);
+             }
+
+             if (image != null)
+             {
+                decoded(producer.getKey(), image);
+             }
+
+             producer.imageDecoded(image);
+          }
+       });
+   }
+
+   /**
+    * Records the weight of the decoded image and evicts least
+    * recently used images if necessary.
+    */
+   protected synchronized void decoded(ResourceKey key, BufferedImage image)
+   {
+      HelpsetImageCacheEntry entry = decoded.get(key);
+
+      if (entry == null) return;
+
+      long weight = estimateWeight(image);
+
+      totalWeight += weight - entry.weight;
+      entry.weight = weight;
+      decodeCount++;
+
+      trim();
+   }
+
+   protected void trim()
+   {
+      Iterator<Map.Entry<ResourceKey,HelpsetImageCacheEntry>> it
+         = decoded.entrySet().iterator();
+
+      while (totalWeight > maxWeight && it.hasNext())
+      {
+         Map.Entry<ResourceKey,HelpsetImageCacheEntry> mapEntry = it.next();
+         HelpsetImageCacheEntry entry = mapEntry.getValue();
+
+         if (entry.weight == 0L) continue;
+
+         it.remove();
+         urls.remove(mapEntry.getKey());
+         totalWeight -= entry.weight;
+         evictionCount++;
+      }
+   }
+
+   /**
+    * Estimates the number of bytes used by the decoded image. The
+    * toolkit image holds the pixels in ARGB form.
+    */
+   public static long estimateWeight(BufferedImage image)
+   {
+      return 4L * image.getWidth() * image.getHeight();
+   }
+
+   @Override
+   public synchronized Image put(URL key, Image value)
+   {
+      if (key == null || value == null)
+      {
+         throw new NullPointerException();
+      }
+
+      ResourceKey resourceKey = ResourceKey.forURL(key).intern();
+
+      urls.put(resourceKey, key);
+
+      return images.put(resourceKey, value);
+   }
+
+   @Override
+   public synchronized Image remove(Object key)
+   {
+      if (!(key instanceof URL))
+      {
+         return null;
+      }
+
+      ResourceKey resourceKey = ResourceKey.forURL((URL)key);
+
+      urls.remove(resourceKey);
+
+      HelpsetImageCacheEntry entry = decoded.remove(resourceKey);
+
+      if (entry != null)
+      {
+         totalWeight -= entry.weight;
+
+         return entry.image;
+      }
+
+      return images.remove(resourceKey);
+   }
+
+   @Override
+   public synchronized int size()
+   {
+      return images.size() + decoded.size();
+   }
+
+   @Override
+   public synchronized boolean isEmpty()
+   {
+      return images.isEmpty() && decoded.isEmpty();
+   }
+
+   @Override
+   public synchronized Enumeration<URL> keys()
+   {
+      return Collections.enumeration(new Vector<URL>(urls.values()));
+   }
+
+   @Override
+   public synchronized Enumeration<Image> elements()
+   {
+      Vector<Image> list = new Vector<Image>(images.values());
+
+      for (HelpsetImageCacheEntry entry : decoded.values())
+      {
+         list.add(entry.image);
+      }
+
+      return Collections.enumeration(list);
+   }
+
+   public synchronized void setMaximumWeight(long maxWeight)
+   {
+      this.maxWeight = maxWeight;
+      trim();
+   }
+
+   public synchronized long getMaximumWeight()
+   {
+      return maxWeight;
+   }
+
+   public synchronized long getTotalWeight()
+   {
+      return totalWeight;
+   }
+
+   public synchronized long getDecodeCount()
+   {
+      return decodeCount;
+   }
+
+   public synchronized long getEvictionCount()
+   {
+      return evictionCount;
+   }
+
+   @Override
+   public synchronized String toString()
+   {
+      return String.format(
+        "%s[images=%d,decoded=%d,weight=%d,max=%d,decodes=%d,evictions=%d]",
+        getClass().getSimpleName(), images.size(), decoded.size(),
+        totalWeight, maxWeight, decodeCount, evictionCount);
+   }
+
+   private Helpset helpset;
+   private HashMap<ResourceKey,Image> images;
+   private HashMap<ResourceKey,URL> urls;
+   private LinkedHashMap<ResourceKey,HelpsetImageCacheEntry> decoded;
+   private ExecutorService executor;
+
+   private long maxWeight, totalWeight = 0L;
+   private long decodeCount = 0L, evictionCount = 0L;
+
+   /**
+    * Default maximum total size (in bytes) of decoded helpset images.
+    */
+   public static final long DEFAULT_MAX_WEIGHT = 64L*1024L*1024L;
+
+   private static final int DECODER_THREADS = 2;
+}
+
+class HelpsetImageCacheEntry
+{
+   HelpsetImageCacheEntry(Image image)
+   {
+      this.image = image;
+   }
+
+   Image image;
+   long weight = 0L;
+}
+
+/**
+ * Supplies the pixels of a helpset image once it has been decoded
+ * in the background. The decoded image isn't retained, as the
+ * toolkit image keeps its own copy of the pixels. If the toolkit
+ * image is flushed, the image is decoded again.
+ */
+class HelpsetImageProducer implements ImageProducer
+{
+   HelpsetImageProducer(HelpsetImageCache cache, ResourceKey key,
+     HelpsetFile hsf)
+   {
+      this.cache = cache;
+      this.key = key;
+      this.hsf = hsf;
+      consumers = new Vector<ImageConsumer>();
+   }
+
+   @Override
+   public synchronized void addConsumer(ImageConsumer ic)
+   {
+      if (!consumers.contains(ic))
+      {
+         consumers.add(ic);
+      }
+   }
+
+   @Override
+   public synchronized boolean isConsumer(ImageConsumer ic)
+   {
+      return consumers.contains(ic);
+   }
+
+   @Override
+   public synchronized void removeConsumer(ImageConsumer ic)
+   {
+      consumers.remove(ic);
+   }
+
+   @Override
+   public void startProduction(ImageConsumer ic)
+   {
+      synchronized (this)
+      {
+         addConsumer(ic);
+
+         if (pending) return;
+
+         pending = true;
+      }
+
+      cache.decode(this);
+   }
+
+   @Override
+   public void requestTopDownLeftRightResend(ImageConsumer ic)
+   {
+      // The image is always sent in that order.
+   }
+
+   /**
+    * Sends the decoded image to all the current consumers.
+    * @param image the decoded image or null if it couldn't be
+    * decoded
+    */
+   void imageDecoded(BufferedImage image)
+   {
+      Vector<ImageConsumer> list;
+
+      synchronized (this)
+      {
+         pending = false;
+         list = new Vector<ImageConsumer>(consumers);
+         consumers.clear();
+      }
+
+      for (ImageConsumer ic : list)
+      {
+         if (image == null)
+         {
+            ic.imageComplete(ImageConsumer.IMAGEERROR);
+         }
+         else
+         {
+            image.getSource().startProduction(ic);
+         }
+      }
+   }
+
+   HelpsetFile getHelpsetFile()
+   {
+      return hsf;
+   }
+
+   ResourceKey getKey()
+   {
+      return key;
+   }
+
+   private HelpsetImageCache cache;
+   private ResourceKey key;
+   private HelpsetFile hsf;
+   private Vector<ImageConsumer> consumers;
+   private boolean pending = false;
+}
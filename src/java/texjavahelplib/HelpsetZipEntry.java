@@ -0,0 +1,173 @@
+/*
+    Copyright (C) 2024 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+
+package com.dickimawbooks.texjavahelplib;
+
+import java.io.IOException;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * A zip entry with its compressed data.
+ */
+class HelpsetZipEntry
+{
+   private HelpsetZipEntry(String name, long time)
+   {
+      nameBytes = name.getBytes(StandardCharsets.UTF_8);
+      isAscii = (nameBytes.length == name.length());
+      dosTime = toDosTime(time);
+   }
+
+   /**
+    * Creates an entry that's stored without compression.
+    */
+   public static HelpsetZipEntry createStored(String name, byte[] bytes,
+     long time)
+   {
+      HelpsetZipEntry entry = new HelpsetZipEntry(name, time);
+
+      entry.method = ZipEntry.STORED;
+      entry.data = bytes;
+      entry.size = bytes.length;
+      entry.compressedSize = bytes.length;
+      entry.crc = computeCrc(bytes);
+
+      return entry;
+   }
+
+   /**
+    * Creates a compressed entry. The entry is stored instead if
+    * compression doesn't reduce the size.
+    */
+   public static HelpsetZipEntry createDeflated(String name, byte[] bytes,
+     long time)
+   {
+      Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+      byte[] buffer = new byte[bytes.length/2 + 64];
+      int n = 0;
+
+      try
+      {
+         deflater.setInput(bytes);
+         deflater.finish();
+
+         while (!deflater.finished())
+         {
+            if (n == buffer.length)
+            {
+               if (n >= bytes.length)
+               {
+                  return createStored(name, bytes, time);
+               }
+
+               buffer = Arrays.copyOf(buffer, 2*buffer.length);
+            }
+
+            n += deflater.deflate(buffer, n, buffer.length-n);
+         }
+      }
+      finally
+      {
+         deflater.end();
+      }
+
+      if (n >= bytes.length)
+      {
+         return createStored(name, bytes, time);
+      }
+
+      HelpsetZipEntry entry = new HelpsetZipEntry(name, time);
+
+      entry.method = ZipEntry.DEFLATED;
+      entry.data = buffer;
+      entry.size = bytes.length;
+      entry.compressedSize = n;
+      entry.crc = computeCrc(bytes);
+
+      return entry;
+   }
+
+   /**
+    * Reads the given file and creates an entry. Files that are
+    * already compressed are stored.
+    */
+   public static HelpsetZipEntry create(String name, Path path,
+     boolean compress)
+   throws IOException
+   {
+      byte[] bytes = Files.readAllBytes(path);
+      long time = Files.getLastModifiedTime(path).toMillis();
+
+      if (compress)
+      {
+         return createDeflated(name, bytes, time);
+      }
+      else
+      {
+         return createStored(name, bytes, time);
+      }
+   }
+
+   private static long computeCrc(byte[] bytes)
+   {
+      CRC32 crc = new CRC32();
+      crc.update(bytes, 0, bytes.length);
+
+      return crc.getValue();
+   }
+
+   private static long toDosTime(long time)
+   {
+      LocalDateTime dt = LocalDateTime.ofInstant(Instant.ofEpochMilli(time),
+        ZoneId.systemDefault());
+
+      int year = dt.getYear();
+
+      if (year < 1980)
+      {
+         return (1 << 21) | (1 << 16);
+      }
+
+      return ((long)(year - 1980) << 25)
+           | (dt.getMonthValue() << 21)
+           | (dt.getDayOfMonth() << 16)
+           | (dt.getHour() << 11)
+           | (dt.getMinute() << 5)
+           | (dt.getSecond() >> 1);
+   }
+
+   byte[] nameBytes;
+   boolean isAscii;
+   int method;
+   byte[] data;
+   int compressedSize;
+   long size, crc, dosTime;
+}
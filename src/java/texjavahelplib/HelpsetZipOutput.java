@@ -0,0 +1,166 @@
+/*
+    Copyright (C) 2024 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+
+package com.dickimawbooks.texjavahelplib;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Writes zip entries that have already been compressed. This allows
+ * the entries to be compressed concurrently and then written in
+ * order. ZipOutputStream can't be used for this as it always
+ * compresses the data itself. Zip64 isn't supported, so the total
+ * size must be less than 4GB and there must be fewer than 65535
+ * entries.
+ */
+class HelpsetZipOutput
+{
+   HelpsetZipOutput(OutputStream out)
+   {
+      this.out = new BufferedOutputStream(out, BUFFER_SIZE);
+      centralDirectory = new ByteArrayOutputStream();
+   }
+
+   public void write(HelpsetZipEntry entry) throws IOException
+   {
+      if (entryCount == MAX_ENTRIES
+           || offset + entry.compressedSize + 30L
+               + entry.nameBytes.length > MAX_SIZE)
+      {
+         throw new ZipException("Helpset too large for zip without zip64");
+      }
+
+      int flags = entry.isAscii ? 0 : UTF8_FLAG;
+      int version = entry.method == ZipEntry.STORED ? 10 : 20;
+
+      // local file header
+
+      writeInt(out, 0x04034b50L);
+      writeShort(out, version);
+      writeShort(out, flags);
+      writeShort(out, entry.method);
+      writeInt(out, entry.dosTime);
+      writeInt(out, entry.crc);
+      writeInt(out, entry.compressedSize);
+      writeInt(out, entry.size);
+      writeShort(out, entry.nameBytes.length);
+      writeShort(out, 0);
+      out.write(entry.nameBytes);
+      out.write(entry.data, 0, entry.compressedSize);
+
+      // central directory header
+
+      writeInt(centralDirectory, 0x02014b50L);
+      writeShort(centralDirectory, 20);
+      writeShort(centralDirectory, version);
+      writeShort(centralDirectory, flags);
+      writeShort(centralDirectory, entry.method);
+      writeInt(centralDirectory, entry.dosTime);
+      writeInt(centralDirectory, entry.crc);
+      writeInt(centralDirectory, entry.compressedSize);
+      writeInt(centralDirectory, entry.size);
+      writeShort(centralDirectory, entry.nameBytes.length);
+      writeShort(centralDirectory, 0);// extra field length
+      writeShort(centralDirectory, 0);// comment length
+      writeShort(centralDirectory, 0);// disk number
+      writeShort(centralDirectory, 0);// internal attributes
+      writeInt(centralDirectory, 0);// external attributes
+      writeInt(centralDirectory, offset);
+      centralDirectory.write(entry.nameBytes);
+
+      offset += 30L + entry.nameBytes.length + entry.compressedSize;
+      entryCount++;
+      uncompressedTotal += entry.size;
+   }
+
+   /**
+    * Writes the central directory and closes the stream.
+    */
+   public void close() throws IOException
+   {
+      if (offset + centralDirectory.size() > MAX_SIZE)
+      {
+         throw new ZipException("Helpset too large for zip without zip64");
+      }
+
+      centralDirectory.writeTo(out);
+
+      writeInt(out, 0x06054b50L);
+      writeShort(out, 0);
+      writeShort(out, 0);
+      writeShort(out, entryCount);
+      writeShort(out, entryCount);
+      writeInt(out, centralDirectory.size());
+      writeInt(out, offset);
+      writeShort(out, 0);
+
+      offset += centralDirectory.size() + 22L;
+
+      out.close();
+   }
+
+   public int getEntryCount()
+   {
+      return entryCount;
+   }
+
+   public long getUncompressedSize()
+   {
+      return uncompressedTotal;
+   }
+
+   public long getCompressedSize()
+   {
+      return offset;
+   }
+
+   private static void writeShort(OutputStream out, int value)
+    throws IOException
+   {
+      out.write(value & 0xFF);
+      out.write((value >>> 8) & 0xFF);
+   }
+
+   private static void writeInt(OutputStream out, long value)
+    throws IOException
+   {
+      out.write((int)(value & 0xFF));
+      out.write((int)((value >>> 8) & 0xFF));
+      out.write((int)((value >>> 16) & 0xFF));
+      out.write((int)((value >>> 24) & 0xFF));
+   }
+
+   private OutputStream out;
+   private ByteArrayOutputStream centralDirectory;
+   private long offset = 0L, uncompressedTotal = 0L;
+   private int entryCount = 0;
+
+   public static final int MAX_ENTRIES = 0xFFFF;
+   public static final long MAX_SIZE = 0xFFFFFFFFL;
+
+   public static final int BUFFER_SIZE = 256*1024;
+
+   private static final int UTF8_FLAG = 0x0800;
+}
@@ -0,0 +1,454 @@
+/*
+    Copyright (C) 2024 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+
+package com.dickimawbooks.texjavahelplib;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.Vector;
+
+import java.util.regex.Pattern;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.RasterFormatException;
+
+import javax.imageio.ImageIO;
+import javax.swing.ImageIcon;
+
+/**
+ * A set of icons packed into a single image. The atlas consists of
+ * the image and a map file in the Properties format. The map
+ * file's "atlas" property is the name of the image file, relative
+ * to the map file, and every other property is the name of an icon
+ * file with the value x,y,width,height giving the icon's location
+ * in the image. Atlases are created by tjhcreateiconpdf with
+ * --atlas-dir or by {@link #main(String[])}.
+ *
+ * The image is only decoded when the first icon is requested. The
+ * icons share the atlas image's pixels, so the memory used is just
+ * that of the atlas image.
+ */
+public class IconAtlas
+{
+   protected IconAtlas(URL mapURL, String imageName,
+     LinkedHashMap<String,Rectangle> regions)
+   {
+      this.mapURL = mapURL;
+      this.imageName = imageName;
+      this.regions = regions;
+      icons = new HashMap<String,ImageIcon>();
+   }
+
+   /**
+    * Reads the atlas map file. The image isn't loaded at this point.
+    */
+   public static IconAtlas load(URL mapURL) throws IOException
+   {
+      Properties props = new Properties();
+
+      InputStream in = null;
+      BufferedReader reader = null;
+
+      try
+      {
+         in = mapURL.openStream();
+         reader = new BufferedReader(
+            new InputStreamReader(in, StandardCharsets.UTF_8));
+
+         props.load(reader);
+      }
+      finally
+      {
+         if (reader != null)
+         {
+            reader.close();
+         }
+         else if (in != null)
+         {
+            in.close();
+         }
+      }
+
+      String imageName = props.getProperty(ATLAS_IMAGE_KEY);
+
+      if (imageName == null)
+      {
+         throw new IOException(String.format(
+           "Missing '%s' property in icon atlas map %s", ATLAS_IMAGE_KEY, mapURL));
+      }
+
+      LinkedHashMap<String,Rectangle> regions
+         = new LinkedHashMap<String,Rectangle>();
+
+      for (String name : props.stringPropertyNames())
+      {
+         if (name.equals(ATLAS_IMAGE_KEY)) continue;
+
+         String value = props.getProperty(name);
+
+         String[] split = value.split(" *, *");
+
+         try
+         {
+            if (split.length != 4)
+            {
+               throw new NumberFormatException(value);
+            }
+
+            regions.put(name, new Rectangle(
+              Integer.parseInt(split[0].trim()),
+              Integer.parseInt(split[1].trim()),
+              Integer.parseInt(split[2].trim()),
+              Integer.parseInt(split[3].trim())));
+         }
+         catch (NumberFormatException e)
+         {
+            throw new IOException(String.format(
+              "Invalid region '%s' for '%s' in icon atlas map %s",
+              value, name, mapURL), e);
+         }
+      }
+
+      return new IconAtlas(mapURL, imageName, regions);
+   }
+
+   public URL getMapURL()
+   {
+      return mapURL;
+   }
+
+   /**
+    * Gets the names of the icon files in this atlas.
+    */
+   public Set<String> getNames()
+   {
+      return Collections.unmodifiableSet(regions.keySet());
+   }
+
+   public boolean contains(String name)
+   {
+      return regions.containsKey(name);
+   }
+
+   /**
+    * Gets the URL that the given icon file would have if it was in
+    * the same location as the map file.
+    */
+   public URL getURL(String name) throws MalformedURLException
+   {
+      return new URL(mapURL, name);
+   }
+
+   /**
+    * Gets the icon with the given file name.
+    * @return the icon or null if not in this atlas
+    */
+   public synchronized ImageIcon getIcon(String name) throws IOException
+   {
+      ImageIcon ic = icons.get(name);
+
+      if (ic != null) return ic;
+
+      Rectangle region = regions.get(name);
+
+      if (region == null) return null;
+
+      if (image == null)
+      {
+         URL imageURL = new URL(mapURL, imageName);
+
+         image = ImageIO.read(imageURL);
+
+         if (image == null)
+         {
+            throw new IOException("Can't read icon atlas image "+imageURL);
+         }
+      }
+
+      try
+      {
+         ic = new ImageIcon(image.getSubimage(
+           region.x, region.y, region.width, region.height));
+      }
+      catch (RasterFormatException e)
+      {
+         throw new IOException(String.format(
+           "Region %s for '%s' outside of icon atlas image %s",
+           region, name, imageName), e);
+      }
+
+      icons.put(name, ic);
+
+      return ic;
+   }
+
+   /**
+    * Packs the given images into a single image and writes the atlas
+    * image and map files. The images are placed in rows, tallest
+    * first, with the row width chosen to make the atlas roughly
+    * square.
+    * @param imageFiles map of icon file names to the image files
+    * @param imageFile the atlas image file (PNG)
+    * @param mapFile the atlas map file
+    * @return the number of icons in the atlas
+    */
+   public static int write(Map<String,File> imageFiles, File imageFile,
+     File mapFile)
+   throws IOException
+   {
+      Vector<AtlasItem> items = new Vector<AtlasItem>(imageFiles.size());
+
+      long area = 0L;
+      int maxWidth = 0;
+
+      for (Map.Entry<String,File> entry : imageFiles.entrySet())
+      {
+         BufferedImage image = ImageIO.read(entry.getValue());
+
+         if (image == null)
+         {
+            throw new IOException("Can't read image "+entry.getValue());
+         }
+
+         items.add(new AtlasItem(entry.getKey(), image));
+
+         area += (long)image.getWidth() * image.getHeight();
+         maxWidth = Math.max(maxWidth, image.getWidth());
+      }
+
+      Collections.sort(items, new Comparator<AtlasItem>()
+       {
+          @Override
+          public int compare(AtlasItem item1, AtlasItem item2)
+          {
+             int h1 = item1.image.getHeight();
+             int h2 = item2.image.getHeight();
+
+             if (h1 != h2)
+             {
+                return h2 - h1;
+             }
+
+             return item1.name.compareTo(item2.name);
+          }
+       });
+
+      int rowLimit = Math.max(maxWidth, (int)Math.ceil(Math.sqrt(area)));
+
+      int x = 0, y = 0, rowHeight = 0, atlasWidth = 0;
+
+      for (AtlasItem item : items)
+      {
+         int w = item.image.getWidth();
+         int h = item.image.getHeight();
+
+         if (x > 0 && x + w > rowLimit)
+         {
+            x = 0;
+            y += rowHeight;
+            rowHeight = 0;
+         }
+
+         item.x = x;
+         item.y = y;
+
+         x += w;
+         rowHeight = Math.max(rowHeight, h);
+         atlasWidth = Math.max(atlasWidth, x);
+      }
+
+      int atlasHeight = y + rowHeight;
+
+      BufferedImage atlas = new BufferedImage(Math.max(1, atlasWidth),
+        Math.max(1, atlasHeight), BufferedImage.TYPE_INT_ARGB);
+
+      Graphics2D g = atlas.createGraphics();
+
+      try
+      {
+         for (AtlasItem item : items)
+         {
+            g.drawImage(item.image, item.x, item.y, null);
+         }
+      }
+      finally
+      {
+         g.dispose();
+      }
+
+      if (!ImageIO.write(atlas, "png", imageFile))
+      {
+         throw new IOException("No PNG writer available for "+imageFile);
+      }
+
+      Collections.sort(items, new Comparator<AtlasItem>()
+       {
+          @Override
+          public int compare(AtlasItem item1, AtlasItem item2)
+          {
+             return item1.name.compareTo(item2.name);
+          }
+       });
+
+      BufferedWriter writer = null;
+
+      try
+      {
+         writer = Files.newBufferedWriter(mapFile.toPath(),
+           StandardCharsets.UTF_8);
+
+         writer.write(ATLAS_IMAGE_KEY+"="+imageFile.getName());
+         writer.newLine();
+
+         for (AtlasItem item : items)
+         {
+            writer.write(String.format("%s=%d,%d,%d,%d",
+              escapeKey(item.name), item.x, item.y,
+              item.image.getWidth(), item.image.getHeight()));
+            writer.newLine();
+         }
+      }
+      finally
+      {
+         if (writer != null)
+         {
+            writer.close();
+         }
+      }
+
+      return items.size();
+   }
+
+   private static String escapeKey(String key)
+   {
+      return key.replaceAll("([=: \\\\#!])", "\\\\$1");
+   }
+
+   @Override
+   public String toString()
+   {
+      return String.format("%s[map=%s,image=%s,icons=%d,loaded=%s]",
+        getClass().getSimpleName(), mapURL, imageName, regions.size(),
+        image != null);
+   }
+
+   /**
+    * Creates an atlas in the given icon directory for each of the
+    * given sizes, from the images named &lt;name&gt;-&lt;size&gt;.png
+    * (or jpg/jpeg). The atlas image is named
+    * &lt;base&gt;-&lt;size&gt;-atlas.png and the map
+    * &lt;base&gt;-&lt;size&gt;.atlas. This is used by the build to
+    * create the library's icon atlases.
+    */
+   public static void main(String[] args)
+   {
+      if (args.length < 3)
+      {
+         System.err.println(
+          "Syntax: IconAtlas <icon-dir> <base> <size>...");
+         System.exit(1);
+      }
+
+      File dir = new File(args[0]);
+      String base = args[1];
+
+      try
+      {
+         File[] list = dir.listFiles();
+
+         if (list == null)
+         {
+            throw new IOException("Not a directory: "+dir);
+         }
+
+         Arrays.sort(list);
+
+         for (int i = 2; i < args.length; i++)
+         {
+            Pattern pattern = Pattern.compile(
+              ".+-"+Pattern.quote(args[i])+"\\.(png|jpe?g)");
+
+            LinkedHashMap<String,File> files = new LinkedHashMap<String,File>();
+
+            for (File file : list)
+            {
+               if (pattern.matcher(file.getName()).matches())
+               {
+                  files.put(file.getName(), file);
+               }
+            }
+
+            write(files, new File(dir, base+"-"+args[i]+"-atlas.png"),
+              new File(dir, base+"-"+args[i]+"."+ATLAS_MAP_EXT));
+         }
+      }
+      catch (Exception e)
+      {
+         System.err.println(e.getMessage());
+         System.exit(2);
+      }
+   }
+
+   private URL mapURL;
+   private String imageName;
+   private LinkedHashMap<String,Rectangle> regions;
+   private BufferedImage image;
+   private HashMap<String,ImageIcon> icons;
+
+   public static final String ATLAS_IMAGE_KEY = "atlas";
+
+   /**
+    * File extension for atlas map files.
+    */
+   public static final String ATLAS_MAP_EXT = "atlas";
+}
+
+class AtlasItem
+{
+   AtlasItem(String name, BufferedImage image)
+   {
+      this.name = name;
+      this.image = image;
+   }
+
+   String name;
+   BufferedImage image;
+   int x, y;
+}
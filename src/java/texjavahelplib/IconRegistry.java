@@ -0,0 +1,547 @@
+/*
+    Copyright (C) 2024 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+
+package com.dickimawbooks.texjavahelplib;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+
+import java.nio.charset.StandardCharsets;
+
+import java.util.HashMap;
+import java.util.HashSet;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import java.awt.image.BufferedImage;
+
+import javax.imageio.ImageIO;
+import javax.swing.ImageIcon;
+
+/**
+ * Cache of icon resources. Resource lookups (including failed
+ * lookups) are remembered, and each icon image is only loaded once,
+ * regardless of how many icon sets or components use it. Icon sets
+ * are cached by the caller against their base name, size and
+ * extensions.
+ *
+ * If an icon directory contains an index file (see
+ * {@link #ICON_INDEX_NAME}) that lists the names of the files in the
+ * directory, one per line, lookups in that directory are answered
+ * from the index without probing the class path. The Makefile
+ * creates this index for the texjavahelplib icons. Applications
+ * may also supply an index for their own icon directory, but it
+ * must be kept up to date as any file not listed will be treated as
+ * missing.
+ *
+ * The index may also list icon atlas map files (with the extension
+ * {@link IconAtlas#ATLAS_MAP_EXT}), which are loaded with the index.
+ * Icons in an atlas are taken from the atlas image rather than
+ * loaded from their own image files. Atlases in directories without
+ * an index can be added with {@link #loadAtlas(String)}.
+ */
+public class IconRegistry
+{
+   public IconRegistry(TeXJavaHelpLib helpLib)
+   {
+      this.helpLib = helpLib;
+      urls = new HashMap<String,URL>();
+      indexes = new HashMap<String,HashSet<String>>();
+      icons = new HashMap<String,ImageIcon>();
+      iconSets = new HashMap<String,IconSet>();
+      atlasPaths = new HashMap<String,IconAtlas>();
+      atlasURLs = new HashMap<String,IconAtlas>();
+      atlases = new HashMap<String,IconAtlas>();
+   }
+
+   /**
+    * Gets the URL of the given resource.
+    * @param path the absolute resource path
+    * @return the URL or null if not found
+    */
+   public URL getResource(String path)
+   {
+      synchronized (urls)
+      {
+         if (urls.containsKey(path))
+         {
+            return urls.get(path);
+         }
+      }
+
+      URL url = null;
+
+      int idx = path.lastIndexOf('/');
+
+      HashSet<String> index = null;
+
+      if (idx > -1)
+      {
+         index = getIndex(path.substring(0, idx+1));
+      }
+
+      IconAtlas atlas;
+
+      synchronized (atlasPaths)
+      {
+         atlas = atlasPaths.get(path);
+      }
+
+      if (atlas != null)
+      {
+         try
+         {
+            url = atlas.getURL(path.substring(idx+1));
+         }
+         catch (MalformedURLException e)
+         {
+            helpLib.debug(e);
+         }
+      }
+
+      if (url == null
+           && (index == null || index.contains(path.substring(idx+1))))
+      {
+         url = getClass().getResource(path);
+      }
+
+      synchronized (urls)
+      {
+         urls.put(path, url);
+      }
+
+      return url;
+   }
+
+   /**
+    * Gets the index of the given directory.
+    * @param dir the directory path including the trailing slash
+    * @return the set of file names or null if the directory
+    * doesn't have an index
+    */
+   protected HashSet<String> getIndex(String dir)
+   {
+      synchronized (indexes)
+      {
+         if (indexes.containsKey(dir))
+         {
+            return indexes.get(dir);
+         }
+      }
+
+      HashSet<String> index = null;
+      InputStream in = getClass().getResourceAsStream(dir+ICON_INDEX_NAME);
+
+      if (in != null)
+      {
+         BufferedReader reader = null;
+
+         try
+         {
+            reader = new BufferedReader(
+              new InputStreamReader(in, StandardCharsets.UTF_8));
+
+            index = new HashSet<String>();
+
+            String line;
+
+            while ((line = reader.readLine()) != null)
+            {
+               line = line.trim();
+
+               if (!line.isEmpty())
+               {
+                  index.add(line);
+               }
+            }
+
+            helpLib.debug(String.format("Loaded icon index %s%s (%d)",
+              dir, ICON_INDEX_NAME, index.size()));
+         }
+         catch (IOException e)
+         {
+            helpLib.debug(e);
+            index = null;
+         }
+         finally
+         {
+            try
+            {
+               if (reader == null)
+               {
+                  in.close();
+               }
+               else
+               {
+                  reader.close();
+               }
+            }
+            catch (IOException e)
+            {
+               helpLib.debug(e);
+            }
+         }
+      }
+
+      if (index != null)
+      {
+         for (String name : index)
+         {
+            if (name.endsWith("."+IconAtlas.ATLAS_MAP_EXT))
+            {
+               loadAtlas(dir+name);
+            }
+         }
+      }
+
+      synchronized (indexes)
+      {
+         indexes.put(dir, index);
+      }
+
+      return index;
+   }
+
+   /**
+    * Loads the icon atlas map file. Icons listed in the map will be
+    * taken from the atlas image.
+    * @param resourcePath the absolute resource path of the map file
+    * @return true if the map file was loaded
+    */
+   public boolean loadAtlas(String resourcePath)
+   {
+      URL mapURL = getClass().getResource(resourcePath);
+
+      if (mapURL == null)
+      {
+         helpLib.debug("Can't find icon atlas "+resourcePath);
+         return false;
+      }
+
+      // The same atlas may be found through different paths (such as
+      // a relative and absolute path).
+
+      IconAtlas atlas;
+
+      synchronized (atlases)
+      {
+         atlas = atlases.get(mapURL.toString());
+      }
+
+      if (atlas == null)
+      {
+         try
+         {
+            atlas = IconAtlas.load(mapURL);
+         }
+         catch (IOException e)
+         {
+            helpLib.debug(e);
+            return false;
+         }
+
+         synchronized (atlases)
+         {
+            atlases.put(mapURL.toString(), atlas);
+         }
+      }
+
+      String dir = resourcePath.substring(0, resourcePath.lastIndexOf('/')+1);
+
+      for (String name : atlas.getNames())
+      {
+         synchronized (atlasPaths)
+         {
+            atlasPaths.put(dir+name, atlas);
+         }
+
+         try
+         {
+            synchronized (atlasURLs)
+            {
+               atlasURLs.put(atlas.getURL(name).toString(), atlas);
+            }
+         }
+         catch (MalformedURLException e)
+         {
+            helpLib.debug(e);
+         }
+      }
+
+      synchronized (urls)
+      {
+         urls.clear();
+      }
+
+      helpLib.debug(String.format("Loaded icon atlas %s (%d)",
+        resourcePath, atlas.getNames().size()));
+
+      return true;
+   }
+
+   /**
+    * Gets the icon from an atlas.
+    * @param key the icon URL as a string
+    * @return the icon or null if it's not in an atlas
+    */
+   protected ImageIcon getAtlasIcon(String key)
+   {
+      IconAtlas atlas;
+
+      synchronized (atlasURLs)
+      {
+         atlas = atlasURLs.get(key);
+      }
+
+      if (atlas == null) return null;
+
+      try
+      {
+         return atlas.getIcon(key.substring(key.lastIndexOf('/')+1));
+      }
+      catch (IOException e)
+      {
+         helpLib.debug(e);
+      }
+
+      return null;
+   }
+
+   /**
+    * Gets the icon for the given URL. The image is loaded the first
+    * time the icon is requested.
+    */
+   public ImageIcon getImageIcon(URL url)
+   {
+      if (url == null) return null;
+
+      String key = url.toString();
+
+      synchronized (icons)
+      {
+         ImageIcon ic = icons.get(key);
+
+         if (ic != null) return ic;
+      }
+
+      ImageIcon ic = getAtlasIcon(key);
+
+      if (ic == null)
+      {
+         ic = new ImageIcon(url);
+      }
+
+      synchronized (icons)
+      {
+         ImageIcon other = icons.get(key);
+
+         if (other != null) return other;
+
+         icons.put(key, ic);
+      }
+
+      return ic;
+   }
+
+   /**
+    * Gets the icon for the given resource path, which is read with
+    * ImageIO rather than the toolkit.
+    * @param path the absolute resource path
+    * @return the icon or null if not found or can't be read
+    */
+   public ImageIcon getImageIOIcon(String path)
+   {
+      URL url = getResource(path);
+
+      if (url == null) return null;
+
+      String key = url.toString();
+
+      synchronized (icons)
+      {
+         if (icons.containsKey(key))
+         {
+            return icons.get(key);
+         }
+      }
+
+      ImageIcon ic = getAtlasIcon(key);
+
+      if (ic != null)
+      {
+         synchronized (icons)
+         {
+            icons.put(key, ic);
+         }
+
+         return ic;
+      }
+
+      try
+      {
+         BufferedImage image = ImageIO.read(url);
+
+         if (image != null)
+         {
+            ic = new ImageIcon(image);
+         }
+      }
+      catch (IOException e)
+      {
+         helpLib.debug(e);
+      }
+
+      synchronized (icons)
+      {
+         icons.put(key, ic);
+      }
+
+      return ic;
+   }
+
+   /**
+    * Identifies whether an icon set has been cached for the given
+    * key. The cached value may be null if no icon set was found.
+    */
+   public boolean hasIconSet(String key)
+   {
+      synchronized (iconSets)
+      {
+         return iconSets.containsKey(key);
+      }
+   }
+
+   public IconSet getIconSet(String key)
+   {
+      synchronized (iconSets)
+      {
+         return iconSets.get(key);
+      }
+   }
+
+   public void putIconSet(String key, IconSet icSet)
+   {
+      synchronized (iconSets)
+      {
+         iconSets.put(key, icSet);
+      }
+   }
+
+   public static String getIconSetKey(String base, String size,
+      String... extensions)
+   {
+      StringBuilder builder = new StringBuilder(base);
+      builder.append('|');
+      builder.append(size);
+
+      for (String ext : extensions)
+      {
+         builder.append('|');
+         builder.append(ext);
+      }
+
+      return builder.toString();
+   }
+
+   /**
+    * Loads the small and large icon sets with the given base names
+    * in the background, so that they're already cached when the
+    * menus and tool bars are created.
+    */
+   public void preload(final String... bases)
+   {
+      getExecutor().execute(new Runnable()
+       {
+          @Override
+          public void run()
+          {
+             for (String base : bases)
+             {
+                try
+                {
+                   helpLib.getSmallIconSet(base);
+                   helpLib.getLargeIconSet(base);
+                }
+                catch (Throwable e)
+                {
+                   helpLib.debug(e);
+                }
+             }
+          }
+       });
+   }
+
+   protected synchronized ExecutorService getExecutor()
+   {
+      if (executor == null)
+      {
+         executor = Executors.newSingleThreadExecutor(new ThreadFactory()
+          {
+             @Override
+             public Thread newThread(Runnable r)
+             {
+                Thread thread = new Thread(r, "TeXJavaHelpLib icon preload");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+
+                return thread;
+             }
+          });
+      }
+
+      return executor;
+   }
+
+   /**
+    * Clears the cached icon sets and failed lookups. This is
+    * needed if the icon path or suffixes change.
+    */
+   public void clear()
+   {
+      synchronized (iconSets)
+      {
+         iconSets.clear();
+      }
+
+      synchronized (urls)
+      {
+         urls.clear();
+      }
+   }
+
+   private TeXJavaHelpLib helpLib;
+   private HashMap<String,URL> urls;
+   private HashMap<String,HashSet<String>> indexes;
+   private HashMap<String,ImageIcon> icons;
+   private HashMap<String,IconSet> iconSets;
+   private HashMap<String,IconAtlas> atlasPaths, atlasURLs, atlases;
+   private ExecutorService executor;
+
+   /**
+    * Name of the optional icon index file.
+    */
+   public static final String ICON_INDEX_NAME = "icons.idx";
+}
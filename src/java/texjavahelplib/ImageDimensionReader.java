@@ -0,0 +1,377 @@
+/*
+    Copyright (C) 2024 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+
+package com.dickimawbooks.texjavahelplib;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import java.util.HashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import java.awt.Dimension;
+
+/**
+ * Obtains image dimensions from the file header without decoding
+ * the image. PNG, JPEG and GIF files are identified by their
+ * signature. For PDF files, only a simple uncompressed MediaBox
+ * near the start of the file is recognised, otherwise null is
+ * returned so that the caller can fall back on an external tool,
+ * such as pdfinfo. The PDF dimensions are in PostScript points.
+ *
+ * Results are remembered for each file and are only read again if
+ * the file's modification time or size changes.
+ */
+public class ImageDimensionReader
+{
+   public ImageDimensionReader()
+   {
+      memo = new HashMap<String,ImageDimensionEntry>();
+   }
+
+   /**
+    * Gets the dimensions of the given image file.
+    * @return the dimensions or null if the format isn't recognised
+    * or the dimensions couldn't be found in the header
+    */
+   public Dimension getDimension(File file) throws IOException
+   {
+      String key = file.getAbsolutePath();
+      long modified = file.lastModified();
+      long size = file.length();
+
+      synchronized (memo)
+      {
+         ImageDimensionEntry entry = memo.get(key);
+
+         if (entry != null && entry.modified == modified && entry.size == size)
+         {
+            return entry.dim == null ? null : new Dimension(entry.dim);
+         }
+      }
+
+      Dimension dim = readDimension(file);
+
+      synchronized (memo)
+      {
+         memo.put(key, new ImageDimensionEntry(modified, size, dim));
+      }
+
+      return dim == null ? null : new Dimension(dim);
+   }
+
+   public void clear()
+   {
+      synchronized (memo)
+      {
+         memo.clear();
+      }
+   }
+
+   /**
+    * Reads the dimensions from the file without using the memo.
+    */
+   public static Dimension readDimension(File file) throws IOException
+   {
+      DataInputStream in = null;
+
+      try
+      {
+         in = new DataInputStream(new BufferedInputStream(
+           Files.newInputStream(file.toPath())));
+
+         in.mark(8);
+
+         byte[] sig = new byte[8];
+         int n = readFully(in, sig);
+
+         in.reset();
+
+         if (n >= 8 && startsWith(sig, PNG_SIGNATURE))
+         {
+            return readPngDimension(in);
+         }
+         else if (n >= 3 && (sig[0] & 0xFF) == 0xFF && (sig[1] & 0xFF) == 0xD8)
+         {
+            return readJpegDimension(in);
+         }
+         else if (n >= 6 && startsWith(sig, GIF_SIGNATURE))
+         {
+            return readGifDimension(in);
+         }
+         else if (n >= 5 && startsWith(sig, PDF_SIGNATURE))
+         {
+            return readPdfDimension(in);
+         }
+      }
+      catch (EOFException e)
+      {// truncated file
+      }
+      finally
+      {
+         if (in != null)
+         {
+            in.close();
+         }
+      }
+
+      return null;
+   }
+
+   protected static Dimension readPngDimension(DataInputStream in)
+     throws IOException
+   {
+      in.skipBytes(8);
+
+      int length = in.readInt();
+      int type = in.readInt();
+
+      if (type != PNG_IHDR || length < 8)
+      {
+         return null;
+      }
+
+      int width = in.readInt();
+      int height = in.readInt();
+
+      return new Dimension(width, height);
+   }
+
+   protected static Dimension readGifDimension(DataInputStream in)
+     throws IOException
+   {
+      in.skipBytes(6);
+
+      int width = in.readUnsignedByte() | (in.readUnsignedByte() << 8);
+      int height = in.readUnsignedByte() | (in.readUnsignedByte() << 8);
+
+      return new Dimension(width, height);
+   }
+
+   /**
+    * Reads JPEG segments until a start of frame marker is found.
+    * Segments (such as EXIF data) are skipped without being read.
+    */
+   protected static Dimension readJpegDimension(DataInputStream in)
+     throws IOException
+   {
+      in.skipBytes(2);
+
+      while (true)
+      {
+         int marker = in.readUnsignedByte();
+
+         if (marker != 0xFF)
+         {
+            return null;
+         }
+
+         // skip fill bytes
+
+         while ((marker = in.readUnsignedByte()) == 0xFF)
+         {
+         }
+
+         if (marker == 0xD9 || marker == 0xDA)
+         {
+            // end of image or start of scan before a frame header
+            return null;
+         }
+
+         if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7))
+         {
+            // standalone marker
+            continue;
+         }
+
+         int length = in.readUnsignedShort();
+
+         if (length < 2)
+         {
+            return null;
+         }
+
+         if (marker >= 0xC0 && marker <= 0xCF
+              && marker != 0xC4 && marker != 0xC8 && marker != 0xCC)
+         {
+            in.skipBytes(1);// precision
+
+            int height = in.readUnsignedShort();
+            int width = in.readUnsignedShort();
+
+            return new Dimension(width, height);
+         }
+
+         skipFully(in, length-2);
+      }
+   }
+
+   /**
+    * Searches the start of the PDF file for an uncompressed MediaBox.
+    * This is only used if all the MediaBox entries found have the
+    * same size and there are no CropBox, Rotate or object stream
+    * entries that could change or hide the page size.
+    * @return the dimensions in PostScript points or null if they
+    * couldn't be determined this way
+    */
+   protected static Dimension readPdfDimension(InputStream in)
+     throws IOException
+   {
+      byte[] buffer = new byte[PDF_SCAN_LIMIT];
+      int n = readFully(in, buffer);
+
+      String content = new String(buffer, 0, n, StandardCharsets.ISO_8859_1);
+
+      if (PDF_UNSUPPORTED.matcher(content).find())
+      {
+         return null;
+      }
+
+      Dimension dim = null;
+
+      Matcher m = PDF_MEDIABOX.matcher(content);
+
+      while (m.find())
+      {
+         try
+         {
+            double x1 = Double.parseDouble(m.group(1));
+            double y1 = Double.parseDouble(m.group(2));
+            double x2 = Double.parseDouble(m.group(3));
+            double y2 = Double.parseDouble(m.group(4));
+
+            Dimension boxDim = new Dimension(
+              (int)Math.round(Math.abs(x2-x1)),
+              (int)Math.round(Math.abs(y2-y1)));
+
+            if (dim == null)
+            {
+               dim = boxDim;
+            }
+            else if (!dim.equals(boxDim))
+            {
+               return null;
+            }
+         }
+         catch (NumberFormatException e)
+         {
+            return null;
+         }
+      }
+
+      return dim;
+   }
+
+   private static boolean startsWith(byte[] bytes, byte[] prefix)
+   {
+      for (int i = 0; i < prefix.length; i++)
+      {
+         if (bytes[i] != prefix[i]) return false;
+      }
+
+      return true;
+   }
+
+   private static int readFully(InputStream in, byte[] buffer)
+     throws IOException
+   {
+      int n = 0;
+
+      while (n < buffer.length)
+      {
+         int count = in.read(buffer, n, buffer.length-n);
+
+         if (count == -1) break;
+
+         n += count;
+      }
+
+      return n;
+   }
+
+   private static void skipFully(InputStream in, long n) throws IOException
+   {
+      while (n > 0)
+      {
+         long skipped = in.skip(n);
+
+         if (skipped <= 0)
+         {
+            if (in.read() == -1)
+            {
+               throw new EOFException();
+            }
+
+            skipped = 1;
+         }
+
+         n -= skipped;
+      }
+   }
+
+   /**
+    * Remembered dimensions for a file.
+    */
+   private static class ImageDimensionEntry
+   {
+      ImageDimensionEntry(long modified, long size, Dimension dim)
+      {
+         this.modified = modified;
+         this.size = size;
+         this.dim = dim;
+      }
+
+      long modified, size;
+      Dimension dim;
+   }
+
+   private HashMap<String,ImageDimensionEntry> memo;
+
+   /**
+    * Maximum number of bytes to search at the start of a PDF file.
+    */
+   public static final int PDF_SCAN_LIMIT = 64*1024;
+
+   private static final byte[] PNG_SIGNATURE = new byte[]
+    {(byte)0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+   private static final byte[] GIF_SIGNATURE = new byte[]
+    {'G', 'I', 'F', '8'};
+
+   private static final byte[] PDF_SIGNATURE = new byte[]
+    {'%', 'P', 'D', 'F', '-'};
+
+   private static final int PNG_IHDR = 0x49484452;
+
+   private static final String PDF_NUM = "\\s*([+-]?\\d*\\.?\\d+)";
+
+   private static final Pattern PDF_MEDIABOX = Pattern.compile(
+     "/MediaBox\\s*\\["+PDF_NUM+PDF_NUM+PDF_NUM+PDF_NUM+"\\s*\\]");
+
+   private static final Pattern PDF_UNSUPPORTED = Pattern.compile(
+     "/CropBox\\b|/Rotate\\b|/Type\\s*/ObjStm\\b");
+}
@@ -29,10 +29,13 @@ import java.net.URL;
 import java.nio.charset.Charset;
 
 import java.util.Vector;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Enumeration;
 import java.util.Iterator;
 
+import java.util.regex.Pattern;
+
 import org.xml.sax.SAXException;
 import org.xml.sax.Attributes;
 import org.xml.sax.InputSource;
@@ -149,6 +152,113 @@ public class IndexItem implements Comparable<IndexItem>
       return filename;
    }
 
+   /**
+    * Sets the ID of the navigation node that contains the target,
+    * as resolved by texjavahelpmk.
+    */
+   public void setNodeId(String nodeId)
+   {
+      this.nodeId = nodeId;
+   }
+
+   public String getNodeId()
+   {
+      return nodeId;
+   }
+
+   /**
+    * Sets the name to use instead of the name provided by the
+    * document, as resolved by texjavahelpmk. This is null if the
+    * name doesn't need changing.
+    */
+   public void setDisplayName(String displayName)
+   {
+      this.displayName = displayName;
+   }
+
+   public String getDisplayName()
+   {
+      return displayName;
+   }
+
+   /**
+    * Gets the name that should be used for this item, given the
+    * node containing the target. Glossary entries use the node
+    * title and items without any text (or with just a section
+    * number) have the node title appended.
+    * @return the new name or null if the name doesn't need
+    * changing
+    */
+   public String resolveDisplayName(NavigationNode node)
+   {
+      if (target != null && WRGLOSSARY_TARGET_PATTERN.matcher(target).matches())
+      {
+         return node.getTitle();
+      }
+
+      String text = brief();
+
+      if (text.isEmpty() || SECTION_NUMBER_PATTERN.matcher(text).matches())
+      {
+         return text+" "+node.getTitle();
+      }
+
+      return null;
+   }
+
+   /**
+    * Resolves the node ID and display name of each item with a
+    * filename, so that they don't have to be worked out when the
+    * helpset is loaded. The node for a file is found in the same
+    * way as when the helpset is loaded.
+    */
+   public static void resolveNodes(Collection<IndexItem> items,
+     NavigationNode rootNode)
+   {
+      HashMap<String,NavigationNode> refMap = new HashMap<String,NavigationNode>();
+      HashMap<String,NavigationNode> fileMap = new HashMap<String,NavigationNode>();
+
+      addToMaps(rootNode, refMap, fileMap);
+
+      for (IndexItem item : items)
+      {
+         if (item.filename == null) continue;
+
+         NavigationNode node = refMap.get(item.filename);
+
+         if (node == null)
+         {
+            node = fileMap.get(item.filename);
+         }
+
+         if (node != null)
+         {
+            item.nodeId = node.getKey();
+            item.displayName = item.resolveDisplayName(node);
+         }
+      }
+   }
+
+   private static void addToMaps(NavigationNode node,
+     HashMap<String,NavigationNode> refMap,
+     HashMap<String,NavigationNode> fileMap)
+   {
+      refMap.put(node.getRef(), node);
+
+      if (node.getFileName() != null)
+      {
+         fileMap.put(node.getFileName(), node);
+      }
+
+      if (!node.isLeaf())
+      {
+         for (NavigationNode childNode : node.getChildren())
+         {
+            addToMaps(childNode, refMap, fileMap);
+         }
+      }
+   }
+
    protected void save(PrintWriter out)
      throws IOException
    {
@@ -164,6 +274,16 @@ public class IndexItem implements Comparable<IndexItem>
          out.format(" filename=\"%s\"", TeXJavaHelpLib.encodeHTML(filename, true));
       }
 
+      if (nodeId != null)
+      {
+         out.format(" node=\"%s\"", TeXJavaHelpLib.encodeHTML(nodeId, true));
+      }
+
+      if (displayName != null)
+      {
+         out.format(" display=\"%s\"", TeXJavaHelpLib.encodeHTML(displayName, true));
+      }
+
       out.println(">");
 
       if (name != null)
@@ -353,9 +473,9 @@ public class IndexItem implements Comparable<IndexItem>
    @Override
    public String toString()
    {
-      return String.format("%s[key=%s,target=%s,filename=%s,name=%s,description=%s,short=%s,long=%s]",
-        getClass().getSimpleName(), key, target, filename, name, description,
-         shortValue, longValue);
+      return String.format("%s[key=%s,target=%s,filename=%s,node=%s,display=%s,name=%s,description=%s,short=%s,long=%s]",
+        getClass().getSimpleName(), key, target, filename, nodeId, displayName,
+         name, description, shortValue, longValue);
    }
 
    @Override
@@ -374,11 +494,17 @@ public class IndexItem implements Comparable<IndexItem>
 
    protected final String key;
    protected String target, filename;
+   protected String nodeId, displayName;
    protected String name, description, shortValue, longValue;
 
    protected MessageSystem messageSystem;
 
    public static final int BRIEF_MAX_CHARS=60;
+
+   public static final Pattern WRGLOSSARY_TARGET_PATTERN
+     = Pattern.compile("wrglossary\\.\\d+");
+   public static final Pattern SECTION_NUMBER_PATTERN
+     = Pattern.compile("\\d+(\\.\\d+)*");
 }
 
 class IndexReader extends XMLReaderAdapter
@@ -452,6 +578,11 @@ class IndexReader extends XMLReaderAdapter
          String filename = attrs.getValue("filename");
 
          currentItem = new IndexItem(messageSystem, key, target, filename);
+
+         // These are only present if resolved by texjavahelpmk.
+
+         currentItem.setNodeId(attrs.getValue("node"));
+         currentItem.setDisplayName(attrs.getValue("display"));
       }
       else if ("name".equals(qName) || "description".equals(qName)
               || "long".equals(qName) || "short".equals(qName)
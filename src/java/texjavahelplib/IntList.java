@@ -0,0 +1,76 @@
+/*
+    Copyright (C) 2024 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+
+package com.dickimawbooks.texjavahelplib;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of primitive integers.
+ */
+class IntList
+{
+   public IntList()
+   {
+      this(16);
+   }
+
+   public IntList(int capacity)
+   {
+      values = new int[Math.max(1, capacity)];
+   }
+
+   public void add(int value)
+   {
+      if (size == values.length)
+      {
+         values = Arrays.copyOf(values, Math.max(16, size*2));
+      }
+
+      values[size++] = value;
+   }
+
+   public int get(int idx)
+   {
+      if (idx >= size)
+      {
+         throw new ArrayIndexOutOfBoundsException(idx);
+      }
+
+      return values[idx];
+   }
+
+   public int size()
+   {
+      return size;
+   }
+
+   public void copyInto(int[] dest, int offset)
+   {
+      System.arraycopy(values, 0, dest, offset, size);
+   }
+
+   public int[] toArray()
+   {
+      return Arrays.copyOf(values, size);
+   }
+
+   private int[] values;
+   private int size = 0;
+}
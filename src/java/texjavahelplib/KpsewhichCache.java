@@ -0,0 +1,581 @@
+/*
+    Copyright (C) 2024 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+
+package com.dickimawbooks.texjavahelplib;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Vector;
+import java.util.regex.Pattern;
+
+/**
+ * Results of kpsewhich lookups. Results may optionally be saved to
+ * a file so that they can be reused by later runs. The saved
+ * results are only used if the TeX configuration fingerprint
+ * matches. The fingerprint is formed from the current directory,
+ * the kpathsea environment variables and the location and
+ * modification time of the kpsewhich executable. A found file is
+ * only reused if it still has the same modification time. A file
+ * that wasn't found is only assumed to still be missing if the
+ * current directory, the ls-R databases and the directories in the
+ * TEXMFHOME tree haven't been modified. The results are only
+ * written to the file when save() is called, which should be done
+ * at the end of the run.
+ *
+ * The file format is plain text with tab-separated fields:
+ * <pre>
+ * fingerprint &lt;hash&gt;
+ * &lt;arg&gt; &lt;modified&gt; [&lt;result&gt;]
+ * </pre>
+ */
+public class KpsewhichCache
+{
+   public KpsewhichCache(TeXJavaHelpLib helpLib)
+   {
+      this.helpLib = helpLib;
+      entries = new HashMap<String,KpsewhichEntry>();
+   }
+
+   /**
+    * Sets the file used to save the results between runs and loads
+    * any valid results from it.
+    */
+   public synchronized void setFile(File file)
+   {
+      this.file = file;
+
+      if (file != null && file.isFile())
+      {
+         load();
+      }
+   }
+
+   public synchronized File getFile()
+   {
+      return file;
+   }
+
+   protected void load()
+   {
+      BufferedReader in = null;
+      int count = 0;
+
+      try
+      {
+         in = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8);
+
+         String line = in.readLine();
+
+         if (line == null || !line.equals("fingerprint\t"+getFingerprint()))
+         {
+            helpLib.debug(String.format("Ignoring %s (configuration changed)",
+              file));
+            return;
+         }
+
+         // Files that weren't found are checked after the other
+         // results have been loaded as the check may need the
+         // cached values of TEXMFDBS and TEXMFHOME.
+
+         HashMap<String,KpsewhichEntry> missing
+            = new HashMap<String,KpsewhichEntry>();
+
+         while ((line = in.readLine()) != null)
+         {
+            String[] fields = line.split("\t", 3);
+
+            if (fields.length < 2) continue;
+
+            KpsewhichEntry entry = new KpsewhichEntry(
+              fields.length == 3 ? fields[2] : null,
+              Long.parseLong(fields[1]));
+
+            if (entry.result == null)
+            {
+               missing.put(fields[0], entry);
+            }
+            else if (isValid(fields[0], entry)
+                      && !entries.containsKey(fields[0]))
+            {
+               entries.put(fields[0], entry);
+               count++;
+            }
+         }
+
+         for (Map.Entry<String,KpsewhichEntry> e : missing.entrySet())
+         {
+            if (isValid(e.getKey(), e.getValue())
+                 && !entries.containsKey(e.getKey()))
+            {
+               entries.put(e.getKey(), e.getValue());
+               count++;
+            }
+         }
+
+         helpLib.debug(String.format("Loaded %d kpsewhich result(s) from %s",
+           count, file));
+      }
+      catch (IOException | NumberFormatException e)
+      {
+         helpLib.debug(e);
+      }
+      finally
+      {
+         if (in != null)
+         {
+            try
+            {
+               in.close();
+            }
+            catch (IOException e)
+            {
+            }
+         }
+      }
+   }
+
+   /**
+    * Saves the results to the file, if set.
+    */
+   public synchronized void save()
+   {
+      if (file == null || !modified) return;
+
+      PrintWriter out = null;
+      Path tmp = null;
+
+      try
+      {
+         File dir = file.getAbsoluteFile().getParentFile();
+
+         Files.createDirectories(dir.toPath());
+
+         tmp = Files.createTempFile(dir.toPath(), file.getName(), ".tmp");
+
+         out = new PrintWriter(Files.newBufferedWriter(tmp,
+           StandardCharsets.UTF_8));
+
+         out.println("fingerprint\t"+getFingerprint());
+
+         for (Map.Entry<String,KpsewhichEntry> e : entries.entrySet())
+         {
+            KpsewhichEntry entry = e.getValue();
+
+            if (entry.result == null)
+            {
+               out.format("%s\t%d%n", e.getKey(), entry.modified);
+            }
+            else
+            {
+               out.format("%s\t%d\t%s%n", e.getKey(), entry.modified,
+                 entry.result);
+            }
+         }
+
+         out.close();
+         out = null;
+
+         try
+         {
+            Files.move(tmp, file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+         }
+         catch (AtomicMoveNotSupportedException e)
+         {
+            Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+         }
+
+         tmp = null;
+         modified = false;
+      }
+      catch (IOException e)
+      {
+         helpLib.debug(e);
+      }
+      finally
+      {
+         if (out != null)
+         {
+            out.close();
+         }
+
+         if (tmp != null)
+         {
+            tmp.toFile().delete();
+         }
+      }
+   }
+
+   /**
+    * Determines whether or not there's a valid result for the given
+    * argument. Note that the result may be null, which indicates
+    * that kpsewhich didn't find anything.
+    */
+   public synchronized boolean contains(String arg)
+   {
+      KpsewhichEntry entry = entries.get(arg);
+
+      if (entry == null)
+      {
+         return false;
+      }
+
+      if (!isValid(arg, entry))
+      {
+         entries.remove(arg);
+         modified = true;
+         return false;
+      }
+
+      return true;
+   }
+
+   public synchronized String get(String arg)
+   {
+      KpsewhichEntry entry = entries.get(arg);
+
+      return entry == null ? null : entry.result;
+   }
+
+   public synchronized void put(String arg, String result)
+   {
+      long mtime;
+
+      if (result == null)
+      {
+         mtime = getMissingTimeStamp();
+      }
+      else if (isFileLookup(arg))
+      {
+         mtime = new File(result).lastModified();
+      }
+      else
+      {
+         mtime = 0L;
+      }
+
+      entries.put(arg, new KpsewhichEntry(result, mtime));
+      modified = true;
+   }
+
+   protected boolean isValid(String arg, KpsewhichEntry entry)
+   {
+      if (entry.result == null)
+      {
+         return getMissingTimeStamp() == entry.modified;
+      }
+      else if (isFileLookup(arg))
+      {
+         return new File(entry.result).lastModified() == entry.modified;
+      }
+      else
+      {
+         return true;
+      }
+   }
+
+   /**
+    * Determines whether the argument is a file name (rather than an
+    * option such as -var-value=TEXMFHOME).
+    */
+   public static boolean isFileLookup(String arg)
+   {
+      return !arg.startsWith("-");
+   }
+
+   protected File getCurrentDirectory()
+   {
+      return new File(System.getProperty("user.dir"));
+   }
+
+   /**
+    * Gets the time stamp that's stored with a file that wasn't
+    * found. This is the latest modification time of the current
+    * directory, the ls-R databases listed in TEXMFDBS and the
+    * directories in the TEXMFHOME tree (which doesn't usually have
+    * a database). It's only calculated once per run.
+    */
+   protected synchronized long getMissingTimeStamp()
+   {
+      if (missingTimeStamp != -1L)
+      {
+         return missingTimeStamp;
+      }
+
+      long stamp = getCurrentDirectory().lastModified();
+
+      String dbs = getVariable("TEXMFDBS");
+
+      if (dbs != null)
+      {
+         for (String dir : dbs.replaceAll("[{}]|!!", "").split(
+              ",|"+Pattern.quote(File.pathSeparator)))
+         {
+            if (!dir.isEmpty())
+            {
+               stamp = Math.max(stamp, new File(dir, "ls-R").lastModified());
+               stamp = Math.max(stamp, new File(dir, "ls-r").lastModified());
+            }
+         }
+      }
+
+      String home = getVariable("TEXMFHOME");
+
+      if (home != null)
+      {
+         stamp = Math.max(stamp, getLatestDirectoryModified(new File(home)));
+      }
+
+      missingTimeStamp = stamp;
+
+      return stamp;
+   }
+
+   private String getVariable(String name)
+   {
+      try
+      {
+         String value = helpLib.kpsewhich("-var-value="+name);
+
+         return value == null ? null : value.trim();
+      }
+      catch (IOException | InterruptedException e)
+      {
+         helpLib.debug(e);
+      }
+
+      return null;
+   }
+
+   private static long getLatestDirectoryModified(File dir)
+   {
+      long latest = dir.lastModified();
+
+      File[] subDirs = dir.listFiles(new FileFilter()
+       {
+          @Override
+          public boolean accept(File file)
+          {
+             return file.isDirectory();
+          }
+       });
+
+      if (subDirs != null)
+      {
+         for (File subDir : subDirs)
+         {
+            latest = Math.max(latest, getLatestDirectoryModified(subDir));
+         }
+      }
+
+      return latest;
+   }
+
+   /**
+    * Looks up all the given file names that don't already have a
+    * result with a single kpsewhich process. Arguments that aren't
+    * file names are ignored.
+    */
+   public void lookup(long maxProcessTime, String... args)
+     throws IOException,InterruptedException
+   {
+      Vector<String> pending = new Vector<String>();
+
+      for (String arg : args)
+      {
+         if (isFileLookup(arg) && arg.indexOf("\\") == -1
+              && !contains(arg) && !pending.contains(arg))
+         {
+            pending.add(arg);
+         }
+      }
+
+      if (pending.isEmpty()) return;
+
+      String[] cmd = new String[pending.size()+1];
+      cmd[0] = "kpsewhich";
+
+      for (int i = 0; i < pending.size(); i++)
+      {
+         cmd[i+1] = pending.get(i);
+      }
+
+      StringBuilder result = new StringBuilder();
+
+      int exitCode = helpLib.execCommandAndWaitFor(false, result,
+        maxProcessTime, pending.size(), cmd);
+
+      // kpsewhich exits with 1 if any of the files weren't found.
+      // Any other non-zero exit code indicates it couldn't be run
+      // properly so the results shouldn't be cached.
+
+      if (exitCode != 0 && exitCode != 1)
+      {
+         return;
+      }
+
+      // kpsewhich lists the files it finds in the order of the
+      // arguments, omitting any that aren't found
+
+      String[] lines = result.length() == 0 ?
+        new String[0] : result.toString().split("\\R");
+
+      int lineIdx = 0;
+
+      synchronized (this)
+      {
+         for (String arg : pending)
+         {
+            String found = null;
+
+            if (lineIdx < lines.length && matches(arg, lines[lineIdx]))
+            {
+               found = lines[lineIdx++];
+            }
+
+            put(arg, found);
+         }
+      }
+   }
+
+   private static boolean matches(String arg, String path)
+   {
+      String name = new File(arg).getName();
+      String foundName = new File(path).getName();
+
+      return foundName.equals(name) || foundName.startsWith(name+".");
+   }
+
+   /**
+    * Gets the fingerprint of the current TeX configuration.
+    */
+   public synchronized String getFingerprint()
+   {
+      if (fingerprint != null)
+      {
+         return fingerprint;
+      }
+
+      try
+      {
+         MessageDigest md = MessageDigest.getInstance("SHA-256");
+
+         update(md, getCurrentDirectory().getAbsolutePath());
+
+         for (String name : ENV_VARIABLES)
+         {
+            update(md, name);
+            update(md, System.getenv(name));
+         }
+
+         String path = System.getenv("PATH");
+
+         if (path != null)
+         {
+            for (String dir : path.split(File.pathSeparator))
+            {
+               File exe = new File(dir, "kpsewhich");
+
+               if (!exe.isFile())
+               {
+                  exe = new File(dir, "kpsewhich.exe");
+               }
+
+               if (exe.isFile())
+               {
+                  update(md, exe.getAbsolutePath());
+                  update(md, ""+exe.lastModified());
+                  break;
+               }
+            }
+         }
+
+         byte[] digest = md.digest();
+         StringBuilder builder = new StringBuilder(2*digest.length);
+
+         for (byte b : digest)
+         {
+            builder.append(String.format("%02x", b & 0xFF));
+         }
+
+         fingerprint = builder.toString();
+      }
+      catch (NoSuchAlgorithmException e)
+      {// shouldn't happen, all platforms must support SHA-256
+         throw new IllegalStateException(e);
+      }
+
+      return fingerprint;
+   }
+
+   private static void update(MessageDigest md, String value)
+   {
+      if (value == null)
+      {
+         md.update((byte)1);
+      }
+      else
+      {
+         md.update((byte)0);
+         md.update(value.getBytes(StandardCharsets.UTF_8));
+      }
+   }
+
+   private TeXJavaHelpLib helpLib;
+   private HashMap<String,KpsewhichEntry> entries;
+   private File file;
+   private String fingerprint;
+   private boolean modified = false;
+   private long missingTimeStamp = -1L;
+
+   /**
+    * Environment variables that may affect kpsewhich results.
+    */
+   public static final String[] ENV_VARIABLES = new String[]
+   {
+      "TEXMFHOME", "TEXMFLOCAL", "TEXMFCNF", "TEXMFVAR", "TEXMFCONFIG",
+      "TEXMFDOTDIR", "TEXINPUTS", "BIBINPUTS", "BSTINPUTS", "KPSE_DOT"
+   };
+}
+
+class KpsewhichEntry
+{
+   KpsewhichEntry(String result, long modified)
+   {
+      this.result = result;
+      this.modified = modified;
+   }
+
+   String result;
+   long modified;
+}
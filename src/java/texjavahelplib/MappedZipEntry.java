@@ -0,0 +1,70 @@
+/*
+    Copyright (C) 2024 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+
+package com.dickimawbooks.texjavahelplib;
+
+import java.util.zip.ZipEntry;
+
+/**
+ * An entry in a memory mapped zip file.
+ */
+class MappedZipEntry
+{
+   MappedZipEntry(String name, int method, long crc, long compressedSize,
+     long size, long localOffset)
+   {
+      this.name = name;
+      this.method = method;
+      this.crc = crc;
+      this.compressedSize = compressedSize;
+      this.size = size;
+      this.localOffset = localOffset;
+   }
+
+   public String getName()
+   {
+      return name;
+   }
+
+   public long getSize()
+   {
+      return size;
+   }
+
+   public boolean isDirectory()
+   {
+      return name.endsWith("/");
+   }
+
+   public boolean isStored()
+   {
+      return method == ZipEntry.STORED;
+   }
+
+   @Override
+   public String toString()
+   {
+      return name;
+   }
+
+   String name;
+   int method;
+   long crc, compressedSize, size, localOffset;
+   volatile long dataOffset = -1;
+}
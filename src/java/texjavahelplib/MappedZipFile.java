@@ -0,0 +1,420 @@
+/*
+    Copyright (C) 2024 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+
+package com.dickimawbooks.texjavahelplib;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+import java.util.LinkedHashMap;
+import java.util.Collection;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Read-only zip file that's memory-mapped rather than read into
+ * the heap. Only the central directory is parsed when the file is
+ * opened. Stored entries are provided as slices of the mapping and
+ * deflated entries are inflated directly from the mapping.
+ *
+ * Zip64 files and files larger than 2GB aren't supported. A
+ * ZipException is thrown by {@link #open(File)} for such files, so
+ * that the caller can use ZipFile instead.
+ */
+class MappedZipFile
+{
+   private MappedZipFile(File file, ByteBuffer buffer)
+   {
+      this.file = file;
+      this.buffer = buffer;
+      entries = new LinkedHashMap<String,MappedZipEntry>();
+   }
+
+   public static MappedZipFile open(File file) throws IOException
+   {
+      FileChannel channel = null;
+      ByteBuffer buffer;
+
+      try
+      {
+         channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+
+         long size = channel.size();
+
+         if (size > Integer.MAX_VALUE)
+         {
+            throw new ZipException(file+": too large to map");
+         }
+
+         // The mapping remains valid after the channel is closed.
+
+         buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      }
+      finally
+      {
+         if (channel != null)
+         {
+            channel.close();
+         }
+      }
+
+      buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+      MappedZipFile zipFile = new MappedZipFile(file, buffer);
+      zipFile.readCentralDirectory();
+
+      return zipFile;
+   }
+
+   private void readCentralDirectory() throws IOException
+   {
+      int limit = buffer.limit();
+      int end = -1;
+
+      // The end of central directory record is at least 22 bytes and
+      // may be followed by a comment of up to 65535 bytes.
+
+      for (int i = limit - 22; i >= 0 && i >= limit - 22 - 0xFFFF; i--)
+      {
+         if (buffer.getInt(i) == END_SIG)
+         {
+            end = i;
+            break;
+         }
+      }
+
+      if (end == -1)
+      {
+         throw new ZipException(file+": end of central directory not found");
+      }
+
+      int count = buffer.getShort(end+10) & 0xFFFF;
+      long dirSize = buffer.getInt(end+12) & 0xFFFFFFFFL;
+      long dirOffset = buffer.getInt(end+16) & 0xFFFFFFFFL;
+
+      if (count == 0xFFFF || dirSize == 0xFFFFFFFFL || dirOffset == 0xFFFFFFFFL)
+      {
+         throw new ZipException(file+": zip64 not supported");
+      }
+
+      if (dirOffset + dirSize > end)
+      {
+         throw new ZipException(file+": invalid central directory");
+      }
+
+      int idx = (int)dirOffset;
+
+      for (int i = 0; i < count; i++)
+      {
+         if (idx + 46 > end || buffer.getInt(idx) != CEN_SIG)
+         {
+            throw new ZipException(file+": invalid central directory");
+         }
+
+         int flags = buffer.getShort(idx+8) & 0xFFFF;
+         int method = buffer.getShort(idx+10) & 0xFFFF;
+         long crc = buffer.getInt(idx+16) & 0xFFFFFFFFL;
+         long compressedSize = buffer.getInt(idx+20) & 0xFFFFFFFFL;
+         long size = buffer.getInt(idx+24) & 0xFFFFFFFFL;
+         int nameLength = buffer.getShort(idx+28) & 0xFFFF;
+         int extraLength = buffer.getShort(idx+30) & 0xFFFF;
+         int commentLength = buffer.getShort(idx+32) & 0xFFFF;
+         long localOffset = buffer.getInt(idx+42) & 0xFFFFFFFFL;
+
+         if (compressedSize == 0xFFFFFFFFL || size == 0xFFFFFFFFL
+              || localOffset == 0xFFFFFFFFL)
+         {
+            throw new ZipException(file+": zip64 not supported");
+         }
+
+         if ((flags & 1) != 0)
+         {
+            throw new ZipException(file+": encrypted entries not supported");
+         }
+
+         byte[] nameBytes = new byte[nameLength];
+
+         ByteBuffer dup = buffer.duplicate();
+         dup.position(idx+46);
+         dup.get(nameBytes);
+
+         String name = new String(nameBytes, StandardCharsets.UTF_8);
+
+         entries.put(name, new MappedZipEntry(name, method, crc,
+           compressedSize, size, localOffset));
+
+         idx += 46 + nameLength + extraLength + commentLength;
+      }
+   }
+
+   public MappedZipEntry getEntry(String name)
+   {
+      return entries.get(name);
+   }
+
+   /**
+    * Gets all the entries in central directory order.
+    */
+   public Collection<MappedZipEntry> getEntries()
+   {
+      return entries.values();
+   }
+
+   /**
+    * Gets the entry's compressed data as a slice of the mapping.
+    */
+   private ByteBuffer getRawData(MappedZipEntry entry) throws IOException
+   {
+      ByteBuffer buf = buffer;
+
+      if (buf == null)
+      {
+         throw new ZipException(file+": closed");
+      }
+
+      if (entry.dataOffset == -1)
+      {
+         int idx = (int)entry.localOffset;
+
+         if (idx + 30 > buf.limit() || buf.getInt(idx) != LOC_SIG)
+         {
+            throw new ZipException(file+": invalid local header for "
+              + entry.getName());
+         }
+
+         int nameLength = buf.getShort(idx+26) & 0xFFFF;
+         int extraLength = buf.getShort(idx+28) & 0xFFFF;
+
+         entry.dataOffset = idx + 30 + nameLength + extraLength;
+      }
+
+      long dataEnd = entry.dataOffset + entry.compressedSize;
+
+      if (dataEnd > buf.limit())
+      {
+         throw new EOFException(file+": truncated entry "+entry.getName());
+      }
+
+      ByteBuffer dup = buf.duplicate();
+      dup.position((int)entry.dataOffset);
+      dup.limit((int)dataEnd);
+
+      return dup.slice();
+   }
+
+   /**
+    * Gets the entry's content. For a stored entry, this is a
+    * read-only slice of the mapping. A deflated entry is inflated
+    * into a new buffer.
+    */
+   public ByteBuffer getByteBuffer(MappedZipEntry entry) throws IOException
+   {
+      if (entry.method == ZipEntry.STORED)
+      {
+         return getRawData(entry).asReadOnlyBuffer();
+      }
+
+      return ByteBuffer.wrap(readAll(entry)).asReadOnlyBuffer();
+   }
+
+   /**
+    * Gets the entry's content as a new byte array.
+    */
+   public byte[] readAll(MappedZipEntry entry) throws IOException
+   {
+      if (entry.size > Integer.MAX_VALUE)
+      {
+         throw new ZipException(file+": entry too large "+entry.getName());
+      }
+
+      byte[] content = new byte[(int)entry.size];
+
+      if (entry.method == ZipEntry.STORED)
+      {
+         getRawData(entry).get(content);
+
+         return content;
+      }
+
+      InputStream in = getInputStream(entry);
+
+      try
+      {
+         int n = 0;
+
+         while (n < content.length)
+         {
+            int count = in.read(content, n, content.length-n);
+
+            if (count == -1)
+            {
+               throw new EOFException(file+": truncated entry "+entry.getName());
+            }
+
+            n += count;
+         }
+      }
+      finally
+      {
+         in.close();
+      }
+
+      return content;
+   }
+
+   public InputStream getInputStream(MappedZipEntry entry) throws IOException
+   {
+      switch (entry.method)
+      {
+         case ZipEntry.STORED:
+           return new ByteBufferInputStream(getRawData(entry));
+         case ZipEntry.DEFLATED:
+           return new MappedInflaterInputStream(
+             new ByteBufferInputStream(getRawData(entry)));
+         default:
+           throw new ZipException(String.format(
+             "%s: unsupported compression method %d for %s",
+             file, entry.method, entry.getName()));
+      }
+   }
+
+   /**
+    * Releases the mapping. The memory is unmapped once the mapping
+    * and all slices are no longer referenced.
+    */
+   public void close()
+   {
+      buffer = null;
+   }
+
+   public File getFile()
+   {
+      return file;
+   }
+
+   private File file;
+   private volatile ByteBuffer buffer;
+   private LinkedHashMap<String,MappedZipEntry> entries;
+
+   private static final int LOC_SIG = 0x04034b50;
+   private static final int CEN_SIG = 0x02014b50;
+   private static final int END_SIG = 0x06054b50;
+}
+
+class ByteBufferInputStream extends InputStream
+{
+   ByteBufferInputStream(ByteBuffer buffer)
+   {
+      this.buffer = buffer;
+   }
+
+   @Override
+   public int read()
+   {
+      return buffer.hasRemaining() ? (buffer.get() & 0xFF) : -1;
+   }
+
+   @Override
+   public int read(byte[] bytes, int offset, int length)
+   {
+      if (length == 0) return 0;
+
+      if (!buffer.hasRemaining()) return -1;
+
+      length = Math.min(length, buffer.remaining());
+
+      buffer.get(bytes, offset, length);
+
+      return length;
+   }
+
+   @Override
+   public long skip(long n)
+   {
+      int count = (int)Math.max(0L, Math.min(n, buffer.remaining()));
+
+      buffer.position(buffer.position()+count);
+
+      return count;
+   }
+
+   @Override
+   public int available()
+   {
+      return buffer.remaining();
+   }
+
+   private ByteBuffer buffer;
+}
+
+/**
+ * Inflates raw deflate data. As with ZipFile, a dummy byte is
+ * supplied at the end of the input, which the inflater may require
+ * when there's no zlib header.
+ */
+class MappedInflaterInputStream extends InflaterInputStream
+{
+   MappedInflaterInputStream(InputStream in)
+   {
+      super(in, new Inflater(true), 8192);
+   }
+
+   @Override
+   protected void fill() throws IOException
+   {
+      if (eof)
+      {
+         throw new EOFException("Unexpected end of deflated entry");
+      }
+
+      len = in.read(buf, 0, buf.length);
+
+      if (len == -1)
+      {
+         buf[0] = 0;
+         len = 1;
+         eof = true;
+      }
+
+      inf.setInput(buf, 0, len);
+   }
+
+   @Override
+   public void close() throws IOException
+   {
+      if (!closed)
+      {
+         closed = true;
+         inf.end();
+         in.close();
+      }
+   }
+
+   private boolean eof = false, closed = false;
+}
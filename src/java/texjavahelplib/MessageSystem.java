@@ -19,14 +19,17 @@
 package com.dickimawbooks.texjavahelplib;
 
 import java.util.ArrayDeque;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.Vector;
 
+import java.util.concurrent.ConcurrentHashMap;
+
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -51,9 +54,14 @@ import java.net.URISyntaxException;
 import java.net.URI;
 
 /**
- * Class for localised messages.
+ * Class for localised messages. The message patterns are held in an
+ * immutable map that's replaced whenever a dictionary is loaded, so
+ * look-ups don't require a lock. Each pattern is only compiled into
+ * a MessageFormat when the message is first used. Compiled formats
+ * are shared, so formatting is synchronized on the format object as
+ * MessageFormat isn't thread-safe.
  */
-public class MessageSystem extends Hashtable<String,MessageFormat>
+public class MessageSystem
 {
    public MessageSystem(TeXJavaHelpLib helpLib)
        throws IOException
@@ -70,10 +78,11 @@ public class MessageSystem extends Hashtable<String,MessageFormat>
    public MessageSystem(TeXJavaHelpLib helpLib,  HelpSetLocale hsLocale)
      throws IOException
    {
-      super();
-
       this.helpLib = helpLib;
       this.hsLocale = hsLocale;
+
+      formats = new ConcurrentHashMap<String,CompiledFormat>();
+      fallbackFormats = new ConcurrentHashMap<String,MessageFormat>();
    }
 
    protected void initDictPattern()
@@ -309,6 +318,14 @@ public class MessageSystem extends Hashtable<String,MessageFormat>
          }
       }
 
+      // The compiled form of the most specific dictionary already
+      // includes the more general dictionaries.
+
+      if (loadCompiledDictionary(deque.peekLast()))
+      {
+         return;
+      }
+
       InputStream in = null;
 
       try
@@ -331,10 +348,7 @@ public class MessageSystem extends Hashtable<String,MessageFormat>
             helpLib.dictionaryLoaded(url);
          }
 
-         for (Object key : dictionary.keySet())
-         {
-            put((String)key, new MessageFormat((String)dictionary.get(key)));
-         }
+         addPatterns(dictionary);
       }
       finally
       {
@@ -348,6 +362,11 @@ public class MessageSystem extends Hashtable<String,MessageFormat>
    public void loadDictionary(URL url)
       throws IOException
    {
+      if (loadCompiledDictionary(url))
+      {
+         return;
+      }
+
       InputStream in = null;
 
       try
@@ -365,24 +384,240 @@ public class MessageSystem extends Hashtable<String,MessageFormat>
 
          helpLib.dictionaryLoaded(url);
 
-         for (Object key : dictionary.keySet())
+         addPatterns(dictionary);
+      }
+      finally
+      {
+         if (in != null)
          {
-            put((String)key, new MessageFormat((String)dictionary.get(key)));
+            in.close();
          }
       }
+   }
+
+   /**
+    * Loads the compiled form of the given XML dictionary, if it
+    * exists.
+    * @return true if the compiled dictionary was loaded or false if
+    * the XML dictionary should be loaded instead
+    */
+   protected boolean loadCompiledDictionary(URL xmlURL)
+   {
+      URL url = CompiledDictionary.getCompiledURL(xmlURL);
+
+      if (url == null)
+      {
+         return false;
+      }
+
+      InputStream in = null;
+
+      try
+      {
+         in = url.openStream();
+
+         helpLib.message("Loading "+url);
+
+         Vector<String> sources = new Vector<String>();
+
+         HashMap<String,String> dictionary = CompiledDictionary.read(in, sources);
+
+         // report the XML files the dictionary was compiled from
+         // rather than the compiled file
+
+         if (sources.isEmpty())
+         {
+            helpLib.dictionaryLoaded(url);
+         }
+         else
+         {
+            for (String source : sources)
+            {
+               helpLib.dictionaryLoaded(new URL(url, source));
+            }
+         }
+
+         addPatterns(dictionary);
+
+         return true;
+      }
+      catch (FileNotFoundException e)
+      {// no compiled form
+      }
+      catch (IOException e)
+      {
+         helpLib.debug(e);
+      }
       finally
       {
          if (in != null)
          {
-            in.close();
+            try
+            {
+               in.close();
+            }
+            catch (IOException e)
+            {
+            }
+         }
+      }
+
+      return false;
+   }
+
+   /**
+    * Adds the patterns from the given dictionary. The patterns
+    * aren't compiled until they're needed.
+    */
+   protected synchronized void addPatterns(Properties dictionary)
+   {
+      HashMap<String,String> map = new HashMap<String,String>(patterns);
+
+      for (String key : dictionary.stringPropertyNames())
+      {
+         map.put(key, dictionary.getProperty(key));
+         formats.remove(key);
+      }
+
+      patterns = Collections.unmodifiableMap(map);
+   }
+
+   protected synchronized void addPatterns(Map<String,String> dictionary)
+   {
+      HashMap<String,String> map = new HashMap<String,String>(patterns);
+
+      map.putAll(dictionary);
+
+      for (String key : dictionary.keySet())
+      {
+         formats.remove(key);
+      }
+
+      patterns = Collections.unmodifiableMap(map);
+   }
+
+   /**
+    * Adds or replaces a message.
+    */
+   public synchronized void put(String label, String pattern)
+   {
+      HashMap<String,String> map = new HashMap<String,String>(patterns);
+
+      map.put(label, pattern);
+      formats.remove(label);
+
+      patterns = Collections.unmodifiableMap(map);
+   }
+
+   public boolean containsKey(String label)
+   {
+      return patterns.containsKey(label);
+   }
+
+   /**
+    * Gets the message pattern (before compilation) or null if not
+    * defined.
+    */
+   public String getPattern(String label)
+   {
+      return patterns.get(label);
+   }
+
+   public Set<String> keySet()
+   {
+      return patterns.keySet();
+   }
+
+   public int size()
+   {
+      return patterns.size();
+   }
+
+   /**
+    * Gets the compiled format for the given label or null if not
+    * defined. The returned object is shared, so it shouldn't be
+    * modified and any use should be synchronized on it.
+    */
+   protected MessageFormat getFormat(String label)
+   {
+      String pattern = patterns.get(label);
+
+      if (pattern == null)
+      {
+         return null;
+      }
+
+      // The format is only reused if it was compiled from the
+      // current pattern, in case it was compiled from a pattern
+      // that has since been replaced.
+
+      CompiledFormat compiled = formats.get(label);
+
+      if (compiled == null || !compiled.pattern.equals(pattern))
+      {
+         compiled = new CompiledFormat(pattern);
+         formats.put(label, compiled);
+      }
+
+      return compiled.format;
+   }
+
+   /**
+    * Gets the compiled format for the given label or null if not
+    * defined.
+    * @deprecated MessageSystem no longer extends
+    * Hashtable&lt;String,MessageFormat&gt;. Use getMessage or
+    * getPattern instead. The returned format is shared, so any use
+    * should be synchronized on it.
+    */
+   @Deprecated
+   public MessageFormat get(String label)
+   {
+      return getFormat(label);
+   }
+
+   /**
+    * Gets the compiled format for the given fallback pattern.
+    * Fallback patterns are usually string literals, so there
+    * shouldn't be many of them, but the cache is cleared if it
+    * becomes too large.
+    */
+   protected MessageFormat getFallbackFormat(String pattern)
+   {
+      MessageFormat fmt = fallbackFormats.get(pattern);
+
+      if (fmt == null)
+      {
+         if (fallbackFormats.size() >= MAX_FALLBACK_FORMATS)
+         {
+            fallbackFormats.clear();
          }
+
+         fmt = new MessageFormat(pattern);
+
+         MessageFormat existing = fallbackFormats.putIfAbsent(pattern, fmt);
+
+         if (existing != null)
+         {
+            fmt = existing;
+         }
+      }
+
+      return fmt;
+   }
+
+   protected static String format(MessageFormat fmt, Object... params)
+   {
+      synchronized (fmt)
+      {
+         return fmt.format(params);
       }
    }
 
    public String getMessageWithFallback(String label,
        String fallbackFormat, Object... params)
    {
-      MessageFormat fmt = get(label);
+      MessageFormat fmt = getFormat(label);
 
       if (fmt == null)
       {
@@ -391,34 +626,34 @@ public class MessageSystem extends Hashtable<String,MessageFormat>
             return fallbackFormat;
          }
 
-         fmt = new MessageFormat(fallbackFormat);
+         fmt = getFallbackFormat(fallbackFormat);
       }
 
-      return fmt.format(params);
+      return format(fmt, params);
    }
 
    public String getMessageIfExists(String label, Object... args)
    {
-      MessageFormat msg = get(label);
+      MessageFormat msg = getFormat(label);
 
       if (msg == null)
       {
          return null;
       }
 
-      return msg.format(args);
+      return format(msg, args);
    }
 
    public String getMessage(String label, Object... args)
    {
-      MessageFormat msg = get(label);
+      MessageFormat msg = getFormat(label);
 
       if (msg == null)
       {
          return null;
       }
 
-      return msg.format(args);
+      return format(msg, args);
    }
 
    public String getChoiceMessage(String label, int argIdx,
@@ -432,7 +667,7 @@ public class MessageSystem extends Hashtable<String,MessageFormat>
       {
          String tag = String.format("message.%d.%s", i, choiceLabel);
 
-         MessageFormat fmt = get(tag);
+         MessageFormat fmt = getFormat(tag);
 
          if (fmt == null)
          {
@@ -440,18 +675,27 @@ public class MessageSystem extends Hashtable<String,MessageFormat>
              "Invalid message label: "+tag);
          }
 
-         part[i] = fmt.toPattern();
+         synchronized (fmt)
+         {
+            part[i] = fmt.toPattern();
+         }
+
          limits[i] = i;
       }
 
-      MessageFormat fmt = get(label);
+      String pattern = patterns.get(label);
 
-      if (fmt == null)
+      if (pattern == null)
       {
          throw new IllegalArgumentException(
           "Invalid message label: "+label);
       }
 
+      // a new format is needed as the choice format is specific to
+      // this call
+
+      MessageFormat fmt = new MessageFormat(pattern);
+
       ChoiceFormat choiceFmt = new ChoiceFormat(limits, part);
 
       fmt.setFormatByArgumentIndex(argIdx, choiceFmt);
@@ -474,4 +718,27 @@ public class MessageSystem extends Hashtable<String,MessageFormat>
    protected String tagPrefix;
    protected Pattern dictionaryPattern;
    protected Vector<HelpSetLocale> availableDictionaries;
+
+   private volatile Map<String,String> patterns
+     = Collections.<String,String>emptyMap();
+
+   /**
+    * A compiled format and the pattern it was compiled from.
+    */
+   private static class CompiledFormat
+   {
+      CompiledFormat(String pattern)
+      {
+         this.pattern = pattern;
+         format = new MessageFormat(pattern);
+      }
+
+      final String pattern;
+      final MessageFormat format;
+   }
+
+   private ConcurrentHashMap<String,CompiledFormat> formats;
+   private ConcurrentHashMap<String,MessageFormat> fallbackFormats;
+
+   public static final int MAX_FALLBACK_FORMATS = 512;
 }
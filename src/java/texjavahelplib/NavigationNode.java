@@ -397,6 +397,7 @@ public class NavigationNode implements TreeNode
    public void setURL(URL url)
    {
       this.url = url;
+      resourceKey = (url == null ? null : ResourceKey.forURL(url).intern());
    }
 
    public URL getURL()
@@ -404,6 +405,11 @@ public class NavigationNode implements TreeNode
       return url;
    }
 
+   public ResourceKey getResourceKey()
+   {
+      return resourceKey;
+   }
+
    public boolean isAncestorOf(NavigationNode node)
    {
       if (getChildCount() == 0) return false;
@@ -444,6 +450,7 @@ public class NavigationNode implements TreeNode
    protected String title;
    protected String filename;
    protected URL url;
+   protected ResourceKey resourceKey;
 
    protected TreePath treePath;
 
@@ -51,7 +51,7 @@ public class NavigationTree
    {
       idToNodeMap = new HashMap<String,NavigationNode>();
       refToNodeMap = new HashMap<String,NavigationNode>();
-      urlToNodeMap = new HashMap<URL,NavigationNode>();
+      urlToNodeMap = new HashMap<ResourceKey,NavigationNode>();
 
       addToMaps(rootNode);
    }
@@ -65,7 +65,7 @@ public class NavigationTree
       {
          URL url = helpLib.getHelpSetResource(node.getFileName());
          node.setURL(url);
-         urlToNodeMap.put(url, node);
+         urlToNodeMap.put(node.getResourceKey(), node);
       }
       catch (Exception e)
       {
@@ -96,26 +96,26 @@ public class NavigationTree
 
    public NavigationNode getNodeByURL(URL url)
    {
-      NavigationNode node = urlToNodeMap.get(url);
+      return getNodeByKey(ResourceKey.forURL(url), url.getRef());
+   }
 
-      if (node == null)
+   /**
+    * Gets the node for the given resource. If the reference is
+    * not null, the node with that ID is returned if it's in the
+    * given resource.
+    */
+   public NavigationNode getNodeByKey(ResourceKey key, String ref)
+   {
+      if (ref == null)
       {
-         String ref = url.getRef();
-
-         if (ref != null)
-         {
-            node = getNodeById(ref);
+         return urlToNodeMap.get(key);
+      }
 
-            if (node != null)
-            {
-               URL otherURL = node.getURL();
+      NavigationNode node = getNodeById(ref);
 
-               if (otherURL == null || !url.sameFile(otherURL))
-               {
-                  node = null;
-               }
-            }
-         }
+      if (node != null && !key.equals(node.getResourceKey()))
+      {
+         node = null;
       }
 
       return node;
@@ -158,5 +158,5 @@ public class NavigationTree
    protected TeXJavaHelpLib helpLib;
    protected NavigationNode rootNode;
    protected HashMap<String,NavigationNode> idToNodeMap, refToNodeMap;
-   protected HashMap<URL,NavigationNode> urlToNodeMap;
+   protected HashMap<ResourceKey,NavigationNode> urlToNodeMap;
 }
@@ -0,0 +1,191 @@
+/*
+    Copyright (C) 2024 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+
+package com.dickimawbooks.texjavahelplib;
+
+import java.util.Vector;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Parses the pages adjacent to the current page in the background
+ * so that they're already in the document cache when the user
+ * navigates to them. Only helpset pages (rather than external URLs)
+ * are prefetched. Each call to prefetch(NavigationNode) cancels any
+ * pending requests for the previous page.
+ */
+public class PagePrefetcher
+{
+   public PagePrefetcher(TeXJavaHelpLib helpLib)
+   {
+      this.helpLib = helpLib;
+      pending = new Vector<Future<?>>();
+   }
+
+   protected synchronized ExecutorService getExecutor()
+   {
+      if (executor == null)
+      {
+         executor = Executors.newSingleThreadExecutor(new ThreadFactory()
+          {
+             @Override
+             public Thread newThread(Runnable r)
+             {
+                Thread thread = new Thread(r, "TeXJavaHelpLib page prefetch");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+
+                return thread;
+             }
+          });
+      }
+
+      return executor;
+   }
+
+   /**
+    * Queues the next, previous, parent and first child of the given
+    * node for parsing. Any outstanding requests are cancelled.
+    */
+   public synchronized void prefetch(NavigationNode node)
+   {
+      cancel();
+
+      if (!enabled || node == null || shutdown) return;
+
+      int currentGeneration = generation;
+
+      queue(node.getNextNode(), currentGeneration);
+      queue(node.getPreviousNode(), currentGeneration);
+      queue(node.getParentNode(), currentGeneration);
+
+      if (node.getChildCount() > 0)
+      {
+         queue((NavigationNode)node.getChildAt(0), currentGeneration);
+      }
+   }
+
+   /**
+    * Cancels all outstanding requests. A page that's already being
+    * parsed will be allowed to finish.
+    */
+   public synchronized void cancel()
+   {
+      generation++;
+
+      for (Future<?> future : pending)
+      {
+         future.cancel(false);
+      }
+
+      pending.clear();
+   }
+
+   protected void queue(NavigationNode node, final int requestGeneration)
+   {
+      if (node == null) return;
+
+      final HelpsetFile hsf = getHelpSetFile(node);
+
+      if (hsf == null || !hsf.isHTMLContent() || !hsf.hasContent()
+           || helpLib.getHTMLDocumentCache().contains(hsf))
+      {
+         return;
+      }
+
+      pending.add(getExecutor().submit(new Runnable()
+       {
+          @Override
+          public void run()
+          {
+             if (isStale(requestGeneration)) return;
+
+             try
+             {
+                hsf.getHTMLDocument();
+             }
+             catch (Throwable e)
+             {
+                helpLib.debug(e);
+             }
+          }
+       }));
+   }
+
+   protected synchronized boolean isStale(int requestGeneration)
+   {
+      return requestGeneration != generation;
+   }
+
+   protected HelpsetFile getHelpSetFile(NavigationNode node)
+   {
+      HelpsetFile hsf = node.getHelpSetFile();
+
+      if (hsf == null)
+      {
+         if (node.getURL() == null)
+         {
+            hsf = helpLib.getHelpSetFile(node.getFileName());
+         }
+         else
+         {
+            hsf = helpLib.getHelpSetFile(node.getURL());
+         }
+      }
+
+      return hsf;
+   }
+
+   public synchronized void setEnabled(boolean enabled)
+   {
+      this.enabled = enabled;
+
+      if (!enabled)
+      {
+         cancel();
+      }
+   }
+
+   public synchronized boolean isEnabled()
+   {
+      return enabled;
+   }
+
+   public synchronized void shutdown()
+   {
+      cancel();
+
+      shutdown = true;
+
+      if (executor != null)
+      {
+         executor.shutdown();
+         executor = null;
+      }
+   }
+
+   private TeXJavaHelpLib helpLib;
+   private ExecutorService executor;
+   private Vector<Future<?>> pending;
+   private int generation = 0;
+   private boolean enabled = true, shutdown = false;
+}
@@ -0,0 +1,291 @@
+/*
+    Copyright (C) 2024 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+
+package com.dickimawbooks.texjavahelplib;
+
+import java.lang.ref.WeakReference;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+
+import java.util.Vector;
+import java.util.WeakHashMap;
+
+/**
+ * Identifies a helpset resource. This is used as a map key instead
+ * of URL, as URL.equals and URL.hashCode may try to resolve the
+ * host name. The key is the resource location without the fragment,
+ * with the scheme in lower case and any "." or ".." path segments
+ * removed. The hash code is computed when the key is created.
+ */
+public final class ResourceKey
+{
+   private ResourceKey(String location)
+   {
+      this.location = location;
+      hash = location.hashCode();
+   }
+
+   /**
+    * Gets the key for the given location, which may include a
+    * fragment.
+    */
+   public static ResourceKey valueOf(String location)
+   {
+      return new ResourceKey(normalize(location));
+   }
+
+   /**
+    * Gets the key for the given URL. This doesn't require any
+    * network access.
+    */
+   public static ResourceKey forURL(URL url)
+   {
+      return url == null ? null : valueOf(url.toExternalForm());
+   }
+
+   /**
+    * Gets the key for the given path relative to this key. If the
+    * path starts with a slash, it's relative to the root of the
+    * jar file (for a jar location) or the root of the authority.
+    */
+   public ResourceKey resolve(String path)
+   {
+      if (getSchemeEnd(path) > 0)
+      {
+         return valueOf(path);
+      }
+
+      if (path.startsWith("/"))
+      {
+         return valueOf(location.substring(0, getRootEnd(location))+path);
+      }
+
+      int idx = location.lastIndexOf('/');
+
+      if (idx < getRootEnd(location))
+      {
+         return valueOf(location+"/"+path);
+      }
+
+      return valueOf(location.substring(0, idx+1)+path);
+   }
+
+   /**
+    * Gets the canonical instance of this key. Keys that are
+    * retained, for example in lookup tables, should be interned so
+    * that equal keys can be identified by reference.
+    */
+   public ResourceKey intern()
+   {
+      synchronized (POOL)
+      {
+         WeakReference<ResourceKey> ref = POOL.get(this);
+         ResourceKey key = (ref == null ? null : ref.get());
+
+         if (key == null)
+         {
+            POOL.put(this, new WeakReference<ResourceKey>(this));
+            key = this;
+         }
+
+         return key;
+      }
+   }
+
+   public URL toURL() throws MalformedURLException
+   {
+      return new URL(location);
+   }
+
+   public String getLocation()
+   {
+      return location;
+   }
+
+   @Override
+   public int hashCode()
+   {
+      return hash;
+   }
+
+   @Override
+   public boolean equals(Object other)
+   {
+      if (this == other) return true;
+
+      if (!(other instanceof ResourceKey)) return false;
+
+      ResourceKey key = (ResourceKey)other;
+
+      return hash == key.hash && location.equals(key.location);
+   }
+
+   @Override
+   public String toString()
+   {
+      return location;
+   }
+
+   /**
+    * Normalizes the location. The fragment is removed, the scheme
+    * is converted to lower case and dot segments are removed from
+    * the path.
+    */
+   public static String normalize(String location)
+   {
+      int idx = location.indexOf('#');
+
+      if (idx > -1)
+      {
+         location = location.substring(0, idx);
+      }
+
+      int schemeEnd = getSchemeEnd(location);
+
+      if (schemeEnd > 0)
+      {
+         String scheme = location.substring(0, schemeEnd);
+         String lc = scheme.toLowerCase();
+
+         if (!lc.equals(scheme))
+         {
+            location = lc + location.substring(schemeEnd);
+         }
+      }
+
+      if (location.indexOf("/.") == -1)
+      {
+         return location;
+      }
+
+      int rootEnd = getRootEnd(location);
+
+      return location.substring(0, rootEnd)
+        + removeDotSegments(location.substring(rootEnd));
+   }
+
+   private static String removeDotSegments(String path)
+   {
+      String[] segments = path.split("/", -1);
+      Vector<String> result = new Vector<String>(segments.length);
+
+      for (int i = 0; i < segments.length; i++)
+      {
+         String segment = segments[i];
+         boolean last = (i == segments.length-1);
+
+         if (segment.equals("."))
+         {
+            if (last) result.add("");
+         }
+         else if (segment.equals(".."))
+         {
+            if (result.size() > 1)
+            {
+               result.remove(result.size()-1);
+            }
+
+            if (last) result.add("");
+         }
+         else
+         {
+            result.add(segment);
+         }
+      }
+
+      StringBuilder builder = new StringBuilder(path.length());
+
+      for (int i = 0; i < result.size(); i++)
+      {
+         if (i > 0)
+         {
+            builder.append('/');
+         }
+
+         builder.append(result.get(i));
+      }
+
+      return builder.toString();
+   }
+
+   /**
+    * Gets the index of the colon after the scheme or -1 if there's
+    * no scheme.
+    */
+   private static int getSchemeEnd(String location)
+   {
+      int n = location.length();
+
+      for (int i = 0; i < n; i++)
+      {
+         char c = location.charAt(i);
+
+         if (c == ':')
+         {
+            return i > 1 ? i : -1;
+         }
+         else if (!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                    || (i > 0 && ((c >= '0' && c <= '9')
+                                   || c == '+' || c == '-' || c == '.'))))
+         {
+            return -1;
+         }
+      }
+
+      return -1;
+   }
+
+   /**
+    * Gets the index of the start of the path that may be resolved
+    * against. For a jar location, this is the entry name after the
+    * "!". Otherwise it's the path after the scheme and authority.
+    */
+   private static int getRootEnd(String location)
+   {
+      int idx = location.indexOf("!/");
+
+      if (idx > -1)
+      {
+         return idx+1;
+      }
+
+      int schemeEnd = getSchemeEnd(location);
+
+      if (schemeEnd < 0)
+      {
+         return 0;
+      }
+
+      if (location.startsWith("//", schemeEnd+1))
+      {
+         idx = location.indexOf('/', schemeEnd+3);
+
+         return idx > -1 ? idx : location.length();
+      }
+
+      return schemeEnd+1;
+   }
+
+   private final String location;
+   private final int hash;
+
+   private static final WeakHashMap<ResourceKey,WeakReference<ResourceKey>> POOL
+     = new WeakHashMap<ResourceKey,WeakReference<ResourceKey>>();
+}
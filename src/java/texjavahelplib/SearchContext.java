@@ -29,6 +29,12 @@ public class SearchContext
       this.context = context;
    }
 
+   public SearchContext(int contextId, CharSequence context, String nodeLabel)
+   {
+      this(contextId, context);
+      this.nodeLabel = nodeLabel;
+   }
+
    public void addItem(SearchItem item)
    {
       if (items == null)
@@ -37,6 +43,34 @@ public class SearchContext
       }
 
       items.add(item);
+
+      if (nodeLabel == null)
+      {
+         nodeLabel = item.getNodeLabel();
+      }
+   }
+
+   public String getNodeLabel()
+   {
+      return nodeLabel;
+   }
+
+   public NavigationNode getNode(TeXJavaHelpLib helpLib)
+    throws UnknownNodeException
+   {
+      if (node == null && nodeLabel != null)
+      {
+         node = helpLib.getNavigationTree().getNodeById(nodeLabel);
+
+         if (node == null)
+         {
+            throw new UnknownNodeException(helpLib.getMessageWithFallback(
+              "error.node_id_not_found", "Node with ID ''{0}'' not found",
+              nodeLabel));
+         }
+      }
+
+      return node;
    }
 
    public CharSequence getText()
@@ -131,4 +165,6 @@ public class SearchContext
    protected CharSequence context;
    protected int contextId;
    protected Vector<SearchItem> items;
+   protected String nodeLabel;
+   protected NavigationNode node;
 }
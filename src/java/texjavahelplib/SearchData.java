@@ -26,10 +26,13 @@ import java.util.Comparator;
 
 import java.text.BreakIterator;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.Reader;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset; 
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -50,8 +53,31 @@ public class SearchData
       lcWordToContextMap = new HashMap<String,Vector<Integer>>();
    }
 
+   /**
+    * Creates search data backed by the compact binary index. No
+    * search items are created and each context is only decoded
+    * when it's first requested.
+    */
+   protected SearchData(BinarySearchIndex binaryIndex)
+   {
+      this.binaryIndex = binaryIndex;
+      index = binaryIndex;
+
+      contexts = new HashMap<Integer,SearchContext>();
+   }
+
+   public boolean isBinary()
+   {
+      return binaryIndex != null;
+   }
+
    public void add(SearchItem item, CharSequence context)
    {
+      if (binaryIndex != null)
+      {
+         copyBinaryIndex();
+      }
+
       items.add(item);
 
       Integer contextId = Integer.valueOf(item.getContextId());
@@ -66,6 +92,9 @@ public class SearchData
       searchContext.addItem(item);
 
       addWordToContextMap(item.getWord(), contextId);
+
+      index = null;
+      lcIndex = null;
    }
 
    protected void addWordToContextMap(String word, Integer contextId)
@@ -102,6 +131,11 @@ public class SearchData
    protected void add(Vector<SearchItem> itemList, Vector<SearchContext> contextList)
      throws UnknownContextException
    {
+      if (binaryIndex != null)
+      {
+         copyBinaryIndex();
+      }
+
       for (SearchContext searchContext : contextList)
       {
          Integer contextId = Integer.valueOf(searchContext.getId());
@@ -124,21 +158,139 @@ public class SearchData
       }
 
       items.addAll(itemList);
+
+      index = null;
+      lcIndex = null;
    }
 
-   public HashMap<String,Vector<Integer>> getWordToContextMap(boolean caseSensitive)
+   /**
+    * Copies the binary index into the search items and contexts so
+    * that the data can be modified. The binary index is no longer
+    * used after this.
+    */
+   protected synchronized void copyBinaryIndex()
    {
+      if (binaryIndex == null) return;
+
+      getContexts();
+
+      items = new Vector<SearchItem>();
+      wordToContextMap = new HashMap<String,Vector<Integer>>();
+      lcWordToContextMap = new HashMap<String,Vector<Integer>>();
+
+      for (int i = 0, n = binaryIndex.getTermCount(); i < n; i++)
+      {
+         String word = binaryIndex.getTerm(i);
+         int[] postings = binaryIndex.getPostings(i);
+
+         for (int j = 0; j < postings.length; j += 3)
+         {
+            Integer contextId = Integer.valueOf(postings[j]);
+            SearchContext searchContext = contexts.get(contextId);
+
+            SearchItem item = new SearchItem(word, postings[j+1],
+              postings[j+2], searchContext.getNodeLabel(),
+              contextId.intValue());
+
+            items.add(item);
+            searchContext.addItem(item);
+
+            addWordToContextMap(word, contextId);
+         }
+      }
+
+      binaryIndex = null;
+      index = null;
+      lcIndex = null;
+   }
+
+   /**
+    * Gets the inverted index for the search items, creating it if
+    * it hasn't already been created.
+    */
+   public synchronized SearchIndex getIndex(boolean caseSensitive)
+   {
+      if (caseSensitive)
+      {
+         if (index == null)
+         {
+            index = new SearchIndex(items, true);
+         }
+
+         return index;
+      }
+      else
+      {
+         if (lcIndex == null)
+         {
+            // A view of the case-sensitive index is used so that
+            // the original form of each term is still available.
+
+            lcIndex = new CaseInsensitiveSearchIndex(getIndex(true));
+         }
+
+         return lcIndex;
+      }
+   }
+
+   public synchronized HashMap<String,Vector<Integer>> getWordToContextMap(boolean caseSensitive)
+   {
+      if (wordToContextMap == null)
+      {
+         wordToContextMap = new HashMap<String,Vector<Integer>>();
+         lcWordToContextMap = new HashMap<String,Vector<Integer>>();
+
+         for (int i = 0, n = binaryIndex.getTermCount(); i < n; i++)
+         {
+            String word = binaryIndex.getTerm(i);
+            int[] postings = binaryIndex.getPostings(i);
+
+            for (int j = 0; j < postings.length; j += 3)
+            {
+               addWordToContextMap(word, Integer.valueOf(postings[j]));
+            }
+         }
+      }
+
       return caseSensitive ? wordToContextMap : lcWordToContextMap;
    }
 
-   public HashMap<Integer,SearchContext> getContexts()
+   public synchronized HashMap<Integer,SearchContext> getContexts()
    {
+      if (binaryIndex != null && contexts.size() < binaryIndex.getContextCount())
+      {
+         for (int i = 0, n = binaryIndex.getContextCount(); i < n; i++)
+         {
+            Integer key = Integer.valueOf(binaryIndex.getContextId(i));
+
+            if (!contexts.containsKey(key))
+            {
+               contexts.put(key, binaryIndex.createContext(i));
+            }
+         }
+      }
+
       return contexts;
    }
 
-   public SearchContext getContext(int id)
+   public synchronized SearchContext getContext(int id)
    {
-      return contexts.get(Integer.valueOf(id));
+      Integer key = Integer.valueOf(id);
+
+      SearchContext context = contexts.get(key);
+
+      if (context == null && binaryIndex != null)
+      {
+         int idx = binaryIndex.findContext(id);
+
+         if (idx > -1)
+         {
+            context = binaryIndex.createContext(idx);
+            contexts.put(key, context);
+         }
+      }
+
+      return context;
    }
 
    public void write(Path path, Charset charset)
@@ -150,45 +302,83 @@ public class SearchData
       {
          out = new PrintWriter(Files.newBufferedWriter(path, charset));
 
-         out.print("<?xml version=\"1.0\" encoding=\"");
-         out.print(charset.name());
-         out.println("\" standalone=\"no\"?>");
-
-         out.println("<search>");
+         writeXmlHeader(out, charset);
 
          for (SearchItem item : items)
          {
-            out.print("<entry node=\"");
-
-            out.print(item.getNodeLabel());
-
-            out.print("\" ");
-
-            out.format("context-start=\"%d\" ", item.getContextStart());
-
-            out.format("context-end=\"%d\" ", item.getContextEnd());
+            writeXmlEntry(out, item, item.getContextId());
+         }
 
-            out.format("context-id=\"%d\" ", item.getContextId());
+         for (Integer key : contexts.keySet())
+         {
+            writeXmlContext(out, key.intValue(), contexts.get(key).getText());
+         }
 
-            out.print(">");
+         out.println("</search>");
+      }
+      finally
+      {
+         if (out != null)
+         {
+            out.close();
+         }
+      }
+   }
 
-            out.print(TeXJavaHelpLib.encodeHTML(item.getWord(), false));
+   /**
+    * Writes the XML declaration and the start of the search element.
+    * Also used by SearchDataWriter.
+    */
+   static void writeXmlHeader(PrintWriter out, Charset charset)
+   {
+      out.print("<?xml version=\"1.0\" encoding=\"");
+      out.print(charset.name());
+      out.println("\" standalone=\"no\"?>");
 
-            out.println("</entry>");
+      out.println("<search>");
+   }
 
-         }
+   /**
+    * Writes the XML entry element for the given search item.
+    */
+   static void writeXmlEntry(PrintWriter out, SearchItem item, int contextId)
+   {
+      out.print("<entry node=\"");
+      out.print(item.getNodeLabel());
+      out.print("\" ");
+      out.format("context-start=\"%d\" ", item.getContextStart());
+      out.format("context-end=\"%d\" ", item.getContextEnd());
+      out.format("context-id=\"%d\" ", contextId);
+      out.print(">");
+      out.print(TeXJavaHelpLib.encodeHTML(item.getWord(), false));
+      out.println("</entry>");
+   }
 
-         for (Integer key : contexts.keySet())
-         {
-            out.format("<context id=\"%d\">", key);
+   /**
+    * Writes the XML context element.
+    */
+   static void writeXmlContext(PrintWriter out, int contextId,
+     CharSequence text)
+   {
+      out.format("<context id=\"%d\">", contextId);
+      out.print(TeXJavaHelpLib.encodeHTML(text.toString(), false));
+      out.println("</context>");
+   }
 
-            out.print(TeXJavaHelpLib.encodeHTML(
-               contexts.get(key).getText().toString(), false));
+   /**
+    * Writes the compact binary form of the search data.
+    * @see BinarySearchIndex
+    */
+   public void writeBinary(Path path)
+   throws IOException
+   {
+      OutputStream out = null;
 
-            out.println("</context>");
-         }
+      try
+      {
+         out = new BufferedOutputStream(Files.newOutputStream(path));
 
-         out.println("</search>");
+         BinarySearchIndex.write(out, getIndex(true), contexts.values());
       }
       finally
       {
@@ -199,9 +389,30 @@ public class SearchData
       }
    }
 
+   public static SearchData load(ByteBuffer buffer)
+    throws IOException
+   {
+      return new SearchData(BinarySearchIndex.read(buffer));
+   }
+
    public static SearchData load(TeXJavaHelpLib helpLib)
     throws IOException,SAXException
    {
+      ByteBuffer buffer = helpLib.getSearchBinaryBuffer();
+
+      if (buffer != null)
+      {
+         try
+         {
+            return load(buffer);
+         }
+         catch (IOException e)
+         {
+            // fallback on XML
+            helpLib.debug(e);
+         }
+      }
+
       Reader in = null;
 
       SearchData data = null;
@@ -232,6 +443,11 @@ public class SearchData
 
    protected HashMap<String,Vector<Integer>> wordToContextMap;
    protected HashMap<String,Vector<Integer>> lcWordToContextMap;
+
+   protected SearchIndex index, lcIndex;
+   protected BinarySearchIndex binaryIndex;
+
+   public static final String BINARY_EXT = "tjhs";
 }
 
 class SearchDataReader extends XMLReaderAdapter
@@ -0,0 +1,274 @@
+/*
+    Copyright (C) 2024 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+
+package com.dickimawbooks.texjavahelplib;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Writes search data as it's created, rather than collecting all
+ * the search items in a SearchData object first. Each context is
+ * written to the XML file as soon as it's complete. If a binary
+ * file is also required, only the posting lists are kept in memory
+ * and the context text is spooled to a temporary file until the
+ * binary file is written on close.
+ */
+public class SearchDataWriter
+{
+   /**
+    * Creates a new writer.
+    * @param xmlPath the search XML file
+    * @param charset the character encoding of the XML file
+    * @param binaryPath the binary search file or null if not required
+    */
+   public SearchDataWriter(Path xmlPath, Charset charset, Path binaryPath)
+   throws IOException
+   {
+      out = new PrintWriter(Files.newBufferedWriter(xmlPath, charset));
+
+      SearchData.writeXmlHeader(out, charset);
+
+      this.binaryPath = binaryPath;
+
+      if (binaryPath != null)
+      {
+         termMap = new HashMap<String,IntList>();
+         stringMap = new HashMap<String,Integer>();
+         strings = new ByteArrayOutputStream();
+         contextTable = new ByteArrayOutputStream();
+
+         blobPath = Files.createTempFile("tjhsearch", ".tmp");
+         blobPath.toFile().deleteOnExit();
+
+         blob = new BufferedOutputStream(Files.newOutputStream(blobPath));
+      }
+   }
+
+   /**
+    * Writes a completed context and its search items. Contexts must
+    * be added in increasing order of ID.
+    */
+   public void add(int contextId, String context, List<SearchItem> items)
+   throws IOException
+   {
+      if (contextCount > 0 && contextId <= prevContextId)
+      {
+         throw new IllegalArgumentException(String.format(
+           "Context ID %d added after %d", contextId, prevContextId));
+      }
+
+      for (SearchItem item : items)
+      {
+         SearchData.writeXmlEntry(out, item, contextId);
+      }
+
+      SearchData.writeXmlContext(out, contextId, context);
+
+      if (binaryPath != null)
+      {
+         addBinaryContext(contextId, context, items);
+      }
+
+      prevContextId = contextId;
+      contextCount++;
+   }
+
+   protected void addBinaryContext(int contextId, String context,
+     List<SearchItem> items)
+   throws IOException
+   {
+      BinarySearchIndex.writeVarint(contextTable,
+        contextCount == 0 ? contextId : contextId-prevContextId);
+
+      String label = items.isEmpty() ? null : items.get(0).getNodeLabel();
+
+      if (label == null)
+      {
+         BinarySearchIndex.writeVarint(contextTable, 0);
+      }
+      else
+      {
+         Integer labelIdx = stringMap.get(label);
+
+         if (labelIdx == null)
+         {
+            labelIdx = Integer.valueOf(stringMap.size());
+            stringMap.put(label, labelIdx);
+            BinarySearchIndex.writeString(strings, label);
+         }
+
+         BinarySearchIndex.writeVarint(contextTable, labelIdx.intValue()+1);
+      }
+
+      byte[] bytes = context.getBytes(StandardCharsets.UTF_8);
+      BinarySearchIndex.writeVarint(contextTable, bytes.length);
+      blob.write(bytes);
+      blobSize += bytes.length;
+
+      for (SearchItem item : items)
+      {
+         IntList list = termMap.get(item.getWord());
+
+         if (list == null)
+         {
+            list = new IntList(3);
+            termMap.put(item.getWord(), list);
+         }
+
+         list.add(contextId);
+         list.add(item.getContextStart());
+         list.add(item.getContextEnd());
+      }
+   }
+
+   public int getContextCount()
+   {
+      return contextCount;
+   }
+
+   /**
+    * Closes the XML file and, if applicable, writes the binary file.
+    */
+   public void close() throws IOException
+   {
+      if (out == null) return;
+
+      try
+      {
+         out.println("</search>");
+         out.close();
+
+         if (out.checkError())
+         {
+            throw new IOException("Error writing search XML");
+         }
+
+         out = null;
+
+         if (binaryPath != null)
+         {
+            blob.close();
+            blob = null;
+
+            writeBinary();
+         }
+      }
+      finally
+      {
+         deleteBlob();
+      }
+   }
+
+   /**
+    * Closes the XML file and deletes the temporary file without
+    * writing the binary file. Used when the document couldn't be
+    * parsed.
+    */
+   public void discard() throws IOException
+   {
+      binaryPath = null;
+
+      if (out == null)
+      {
+         deleteBlob();
+      }
+      else
+      {
+         close();
+      }
+   }
+
+   private void deleteBlob() throws IOException
+   {
+      try
+      {
+         if (blob != null)
+         {
+            blob.close();
+            blob = null;
+         }
+      }
+      finally
+      {
+         if (blobPath != null)
+         {
+            Files.deleteIfExists(blobPath);
+            blobPath = null;
+         }
+      }
+   }
+
+   protected void writeBinary() throws IOException
+   {
+      SearchIndex index = new SearchIndex(termMap, true);
+      termMap = null;
+
+      OutputStream binOut = null;
+
+      try
+      {
+         binOut = new BufferedOutputStream(Files.newOutputStream(binaryPath));
+
+         binOut.write(BinarySearchIndex.MAGIC);
+         binOut.write(BinarySearchIndex.VERSION);
+
+         BinarySearchIndex.writeVarint(binOut, stringMap.size());
+         strings.writeTo(binOut);
+
+         BinarySearchIndex.writeVarint(binOut, contextCount);
+         contextTable.writeTo(binOut);
+
+         BinarySearchIndex.writeTerms(binOut, index);
+
+         BinarySearchIndex.writeVarint(binOut, (int)blobSize);
+         Files.copy(blobPath, binOut);
+      }
+      finally
+      {
+         if (binOut != null)
+         {
+            binOut.close();
+         }
+      }
+   }
+
+   private PrintWriter out;
+
+   private Path binaryPath, blobPath;
+   private OutputStream blob;
+   private long blobSize = 0L;
+
+   private HashMap<String,IntList> termMap;
+   private HashMap<String,Integer> stringMap;
+   private ByteArrayOutputStream strings, contextTable;
+
+   private int contextCount = 0, prevContextId = 0;
+}
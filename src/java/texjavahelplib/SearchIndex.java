@@ -0,0 +1,394 @@
+/*
+    Copyright (C) 2024 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+
+package com.dickimawbooks.texjavahelplib;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+
+/**
+ * Inverted index of search words. The terms are stored in a sorted
+ * dictionary. Each term has a posting list of (context ID, start,
+ * end) triples identifying each occurrence of the term. A suffix
+ * array over the terms allows partial word look-ups without having
+ * to scan every search item.
+ */
+public class SearchIndex
+{
+   public SearchIndex(Collection<SearchItem> items, boolean caseSensitive)
+   {
+      this(createTermMap(items, caseSensitive), caseSensitive);
+   }
+
+   /**
+    * Creates the index from a map of terms to their (context ID,
+    * start, end) posting lists.
+    */
+   SearchIndex(HashMap<String,IntList> termMap, boolean caseSensitive)
+   {
+      this.caseSensitive = caseSensitive;
+
+      terms = termMap.keySet().toArray(new String[termMap.size()]);
+      Arrays.sort(terms);
+
+      postingOffsets = new int[terms.length+1];
+
+      int total = 0;
+
+      for (int i = 0; i < terms.length; i++)
+      {
+         postingOffsets[i] = total;
+         total += termMap.get(terms[i]).size();
+      }
+
+      postingOffsets[terms.length] = total;
+
+      postings = new int[total];
+
+      for (int i = 0; i < terms.length; i++)
+      {
+         termMap.get(terms[i]).copyInto(postings, postingOffsets[i]);
+      }
+   }
+
+   private static HashMap<String,IntList> createTermMap(
+     Collection<SearchItem> items, boolean caseSensitive)
+   {
+      HashMap<String,IntList> termMap = new HashMap<String,IntList>();
+
+      for (SearchItem item : items)
+      {
+         String word = item.getWord();
+
+         if (!caseSensitive)
+         {
+            word = word.toLowerCase();
+         }
+
+         IntList list = termMap.get(word);
+
+         if (list == null)
+         {
+            list = new IntList();
+            termMap.put(word, list);
+         }
+
+         list.add(item.getContextId());
+         list.add(item.getContextStart());
+         list.add(item.getContextEnd());
+      }
+
+      return termMap;
+   }
+
+   /**
+    * Constructor for subclasses that provide their own posting
+    * lists. The terms must already be sorted.
+    */
+   protected SearchIndex(boolean caseSensitive, String[] terms)
+   {
+      this.caseSensitive = caseSensitive;
+      this.terms = terms;
+   }
+
+   /**
+    * Creates the suffix array. This is only needed for partial
+    * word searches so it's created on demand.
+    */
+   protected synchronized void createSuffixArray()
+   {
+      if (suffixTerms != null) return;
+
+      int n = 0;
+
+      for (String term : terms)
+      {
+         n += term.length();
+      }
+
+      long[] suffixes = new long[n];
+      int idx = 0;
+
+      for (int i = 0; i < terms.length; i++)
+      {
+         for (int j = 0, len = terms[i].length(); j < len; j++)
+         {
+            suffixes[idx++] = (((long)i) << 32) | j;
+         }
+      }
+
+      if (n > 1)
+      {
+         sortSuffixes(suffixes, new long[n], 0, n);
+      }
+
+      int[] sTerms = new int[n];
+      int[] sOffsets = new int[n];
+
+      for (int i = 0; i < n; i++)
+      {
+         sTerms[i] = (int)(suffixes[i] >>> 32);
+         sOffsets[i] = (int)suffixes[i];
+      }
+
+      suffixOffsets = sOffsets;
+      suffixTerms = sTerms;
+   }
+
+   private void sortSuffixes(long[] suffixes, long[] tmp, int from, int to)
+   {
+      if (to - from < 2) return;
+
+      int mid = (from + to) >>> 1;
+
+      sortSuffixes(suffixes, tmp, from, mid);
+      sortSuffixes(suffixes, tmp, mid, to);
+
+      if (compareSuffixes(suffixes[mid-1], suffixes[mid]) <= 0)
+      {
+         return;
+      }
+
+      System.arraycopy(suffixes, from, tmp, from, to-from);
+
+      for (int i = from, j = mid, k = from; k < to; k++)
+      {
+         if (j >= to || (i < mid && compareSuffixes(tmp[i], tmp[j]) <= 0))
+         {
+            suffixes[k] = tmp[i++];
+         }
+         else
+         {
+            suffixes[k] = tmp[j++];
+         }
+      }
+   }
+
+   private int compareSuffixes(long suffix1, long suffix2)
+   {
+      String term1 = terms[(int)(suffix1 >>> 32)];
+      String term2 = terms[(int)(suffix2 >>> 32)];
+      int i = (int)suffix1;
+      int j = (int)suffix2;
+
+      int n1 = term1.length();
+      int n2 = term2.length();
+
+      for (; i < n1 && j < n2; i++, j++)
+      {
+         char c1 = term1.charAt(i);
+         char c2 = term2.charAt(j);
+
+         if (c1 != c2)
+         {
+            return c1 - c2;
+         }
+      }
+
+      return (n1 - i) - (n2 - j);
+   }
+
+   /**
+    * Compares the suffix at the given index in the suffix array
+    * with the given prefix. Returns 0 if the suffix starts with
+    * the prefix.
+    */
+   private int compareSuffixPrefix(int suffixIdx, String prefix)
+   {
+      String term = terms[suffixTerms[suffixIdx]];
+      int offset = suffixOffsets[suffixIdx];
+      int n = prefix.length();
+
+      for (int i = 0; i < n; i++, offset++)
+      {
+         if (offset >= term.length())
+         {
+            return -1;
+         }
+
+         char c1 = term.charAt(offset);
+         char c2 = prefix.charAt(i);
+
+         if (c1 != c2)
+         {
+            return c1 - c2;
+         }
+      }
+
+      return 0;
+   }
+
+   public boolean isCaseSensitive()
+   {
+      return caseSensitive;
+   }
+
+   public int getTermCount()
+   {
+      return terms.length;
+   }
+
+   public String getTerm(int termIdx)
+   {
+      return terms[termIdx];
+   }
+
+   /**
+    * Gets the case-sensitive index that this index is a view of.
+    * This is the index itself unless it's a case-insensitive view.
+    */
+   public SearchIndex getCaseSensitiveIndex()
+   {
+      return this;
+   }
+
+   /**
+    * Gets the indexes of the terms in the case-sensitive index that
+    * the given term represents.
+    * @see #getCaseSensitiveIndex()
+    */
+   public int[] getCaseSensitiveTerms(int termIdx)
+   {
+      return new int[] {termIdx};
+   }
+
+   /**
+    * Gets the index of the given term or -1 if not found.
+    */
+   public int findTerm(String word)
+   {
+      int idx = Arrays.binarySearch(terms, word);
+
+      return idx < 0 ? -1 : idx;
+   }
+
+   /**
+    * Gets the posting list for the given term as a sequence of
+    * (context ID, start, end) triples.
+    */
+   public int[] getPostings(int termIdx)
+   {
+      return Arrays.copyOfRange(postings,
+        postingOffsets[termIdx], postingOffsets[termIdx+1]);
+   }
+
+   /**
+    * Gets the total number of postings.
+    */
+   public int getPostingCount()
+   {
+      return postings.length/3;
+   }
+
+   /**
+    * Finds all terms containing the given word. The return value
+    * is an array of pairs (term index, offset) where offset is the
+    * first occurrence of the word in the term. The pairs are
+    * ordered by term index. The cost is proportional to the number
+    * of matching suffixes rather than the size of the dictionary.
+    */
+   public int[] findTermsContaining(String word)
+   {
+      createSuffixArray();
+
+      int n = suffixTerms.length;
+
+      if (word.isEmpty() || n == 0)
+      {
+         return new int[0];
+      }
+
+      int lo = 0;
+      int hi = n;
+
+      while (lo < hi)
+      {
+         int mid = (lo + hi) >>> 1;
+
+         if (compareSuffixPrefix(mid, word) < 0)
+         {
+            lo = mid + 1;
+         }
+         else
+         {
+            hi = mid;
+         }
+      }
+
+      int end = lo;
+
+      while (end < n && compareSuffixPrefix(end, word) == 0)
+      {
+         end++;
+      }
+
+      int numFound = end - lo;
+
+      if (numFound == 0)
+      {
+         return new int[0];
+      }
+
+      long[] found = new long[numFound];
+
+      for (int i = lo; i < end; i++)
+      {
+         found[i-lo] = (((long)suffixTerms[i]) << 32) | suffixOffsets[i];
+      }
+
+      Arrays.sort(found);
+
+      IntList result = new IntList();
+      int prevTerm = -1;
+
+      for (long suffix : found)
+      {
+         int termIdx = (int)(suffix >>> 32);
+
+         // sorted so the first suffix for each term has the lowest offset
+
+         if (termIdx != prevTerm)
+         {
+            result.add(termIdx);
+            result.add((int)suffix);
+            prevTerm = termIdx;
+         }
+      }
+
+      return result.toArray();
+   }
+
+   @Override
+   public String toString()
+   {
+      return String.format("%s[caseSensitive=%s,terms=%d,postings=%d]",
+        getClass().getSimpleName(), caseSensitive, terms.length,
+        getPostingCount());
+   }
+
+   protected boolean caseSensitive;
+
+   protected String[] terms;
+   protected int[] postingOffsets;
+   protected int[] postings;
+
+   protected int[] suffixTerms;
+   protected int[] suffixOffsets;
+}
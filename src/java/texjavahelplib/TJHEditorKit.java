@@ -47,15 +47,12 @@ public class TJHEditorKit extends HTMLEditorKit
    @Override
    public Document createDefaultDocument()
    {
-      StyleSheet styles = getStyleSheet();
-      StyleSheet ss = helpLib.getHelpSetStyles();
+      // Each document has its own (initially empty) style sheet for
+      // document-specific rules, such as the font settings. The
+      // shared helpset style sheets are linked rather than copied so
+      // that the CSS files are only parsed once.
 
-      if (ss == null)
-      {
-         ss = new StyleSheet();
-      }
-
-      ss.addStyleSheet(styles);
+      StyleSheet ss = helpLib.createHelpSetStyleSheet(getStyleSheet());
 
       HTMLDocument doc = new HTMLDocument(ss);
       doc.setParser(getParser());
@@ -29,6 +29,8 @@ import java.util.Properties;
 import java.util.TreeSet;
 import java.util.Vector;
 
+import java.util.function.Supplier;
+
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -37,17 +39,23 @@ import java.util.concurrent.TimeUnit;
 
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 
+import java.lang.reflect.InvocationTargetException;
+
 import java.net.URL;
 import java.net.URI;
 import java.net.URISyntaxException;
 
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
 import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.Image;
@@ -76,6 +84,7 @@ import javax.swing.JRadioButton;
 import javax.swing.JRadioButtonMenuItem;
 import javax.swing.JRootPane;
 import javax.swing.KeyStroke;
+import javax.swing.SwingUtilities;
 
 import javax.swing.text.html.StyleSheet;
 
@@ -607,6 +616,36 @@ public class TeXJavaHelpLib
       }
    }
 
+   public boolean isDebuggingOn()
+   {
+      return application == null || application.isDebuggingOn();
+   }
+
+   /**
+    * Debugging message that's only created if debugging mode is on.
+    */
+   public void debug(Supplier<String> message)
+   {
+      if (isDebuggingOn())
+      {
+         debug(message.get());
+      }
+   }
+
+   /**
+    * Localised debugging message. The message is only looked up and
+    * formatted if debugging mode is on, so this may be used in
+    * frequently used code paths.
+    */
+   public void debugMessage(String label, String fallbackFormat,
+     Object... params)
+   {
+      if (isDebuggingOn())
+      {
+         debug(getMessageWithFallback(label, fallbackFormat, params));
+      }
+   }
+
    public String getApplicationName()
    {
       return applicationName;
@@ -814,6 +853,7 @@ public class TeXJavaHelpLib
    public void setIconPath(String relpath)
    {
       resourceIconBase = relpath;
+      clearIconCache();
    }
 
    public String getSmallIconSuffix()
@@ -824,6 +864,7 @@ public class TeXJavaHelpLib
    public void setSmallIconSuffix(String suffix)
    {
       smallIconSuffix = suffix;
+      clearIconCache();
    }
 
    public String getMappedSmallIconSuffix()
@@ -834,6 +875,7 @@ public class TeXJavaHelpLib
    public void setMappedSmallIconSuffix(String suffix)
    {
       mappedSmallIconSuffix = suffix;
+      clearIconCache();
    }
 
    public void loadImageMap(String resourcePath)
@@ -879,6 +921,8 @@ public class TeXJavaHelpLib
       }
 
       imageMap.load(reader);
+
+      clearIconCache();
    }
 
    public URL getMappedImageLocation(String action)
@@ -889,7 +933,7 @@ public class TeXJavaHelpLib
 
       if (location == null) return null;
 
-      URL imageURL = getClass().getResource(location);
+      URL imageURL = getIconRegistry().getResource(location);
 
       if (imageURL == null)
       {
@@ -900,6 +944,29 @@ public class TeXJavaHelpLib
       return imageURL;
    }
 
+   /**
+    * Gets the registry used to cache icon lookups.
+    */
+   public synchronized IconRegistry getIconRegistry()
+   {
+      if (iconRegistry == null)
+      {
+         iconRegistry = new IconRegistry(this);
+      }
+
+      return iconRegistry;
+   }
+
+   /**
+    * Loads the small and large icon sets for the given base names
+    * in the background. This is optional, but means that creating
+    * the menus and tool bars only requires cache lookups.
+    */
+   public void preloadIcons(String... bases)
+   {
+      getIconRegistry().preload(bases);
+   }
+
    public ImageIcon getHelpIcon(String base, boolean small)
    {
       return getHelpIcon(base, small, imageExtensions);
@@ -917,37 +984,7 @@ public class TeXJavaHelpLib
       {
          // Use icon provided in texjavahelplib.jar
 
-         InputStream in = null;
-
-         String suffix = small ? smallIconSuffix : largeIconSuffix;
-
-         try
-         {
-            in = getClass().getResourceAsStream(
-              HELP_LIB_ICON_PATH+base+suffix+".png");
-
-            if (in != null)
-            {
-               ic = new ImageIcon(ImageIO.read(in));
-            }
-         }
-         catch (IOException e)
-         {
-         }
-         finally
-         {
-            if (in != null)
-            {
-               try
-               {
-                  in.close();
-               }
-               catch (IOException e)
-               {
-                  debug(e);
-               }
-            }
-         }
+         ic = getHelpIcon(base, small ? smallIconSuffix : largeIconSuffix);
       }
 
       return ic;
@@ -960,38 +997,8 @@ public class TeXJavaHelpLib
     */
    public ImageIcon getHelpIcon(String base, String suffix)
    {
-      InputStream in = null;
-      ImageIcon ic = null;
-
-      try
-      {
-         in = getClass().getResourceAsStream(
-           HELP_LIB_ICON_PATH+base+suffix+".png");
-
-         if (in != null)
-         {
-            ic = new ImageIcon(ImageIO.read(in));
-         }
-      }
-      catch (IOException e)
-      {
-      }
-      finally
-      {
-         if (in != null)
-         {
-            try
-            {
-               in.close();
-            }
-            catch (IOException e)
-            {
-               debug(e);
-            }
-         }
-      }
-
-      return ic;
+      return getIconRegistry().getImageIOIcon(
+        HELP_LIB_ICON_PATH+base+suffix+".png");
    }
 
    /**
@@ -1000,54 +1007,66 @@ public class TeXJavaHelpLib
     */
    public IconSet getHelpIconSet(String base, String suffix)
    {
-      ImageIcon ic = getHelpIcon(base, suffix);
-
-      if (ic == null) return null;
-
-      IconSet icSet = new IconSet(base, ic);
-
-      ic = getHelpIcon(base+"_pressed", suffix);
+      IconRegistry registry = getIconRegistry();
+      String key = IconRegistry.getIconSetKey(base, "help"+suffix);
 
-      if (ic != null)
+      if (registry.hasIconSet(key))
       {
-         icSet.setPressedIcon(ic);
+         return registry.getIconSet(key);
       }
 
-      ic = getHelpIcon(base+"_selected", suffix);
+      IconSet icSet = null;
+      ImageIcon ic = getHelpIcon(base, suffix);
 
       if (ic != null)
       {
-         icSet.setSelectedIcon(ic);
-      }
+         icSet = new IconSet(base, ic);
 
-      ic = getHelpIcon(base+"_rollover", suffix);
+         ic = getHelpIcon(base+"_pressed", suffix);
 
-      if (ic != null)
-      {
-         icSet.setRolloverIcon(ic);
-      }
+         if (ic != null)
+         {
+            icSet.setPressedIcon(ic);
+         }
 
-      ic = getHelpIcon(base+"_rollover_selected", suffix);
+         ic = getHelpIcon(base+"_selected", suffix);
 
-      if (ic != null)
-      {
-         icSet.setRolloverSelectedIcon(ic);
-      }
+         if (ic != null)
+         {
+            icSet.setSelectedIcon(ic);
+         }
 
-      ic = getHelpIcon(base+"_disabled", suffix);
+         ic = getHelpIcon(base+"_rollover", suffix);
 
-      if (ic != null)
-      {
-         icSet.setDisabledIcon(ic);
-      }
+         if (ic != null)
+         {
+            icSet.setRolloverIcon(ic);
+         }
 
-      ic = getHelpIcon(base+"_disabled_selected", suffix);
+         ic = getHelpIcon(base+"_rollover_selected", suffix);
 
-      if (ic != null)
-      {
-         icSet.setDisabledSelectedIcon(ic);
+         if (ic != null)
+         {
+            icSet.setRolloverSelectedIcon(ic);
+         }
+
+         ic = getHelpIcon(base+"_disabled", suffix);
+
+         if (ic != null)
+         {
+            icSet.setDisabledIcon(ic);
+         }
+
+         ic = getHelpIcon(base+"_disabled_selected", suffix);
+
+         if (ic != null)
+         {
+            icSet.setDisabledSelectedIcon(ic);
+         }
       }
 
+      registry.putIconSet(key, icSet);
+
       return icSet;
    }
 
@@ -1085,9 +1104,20 @@ public class TeXJavaHelpLib
 
       if (mapped != null)
       {
-         return new ImageIcon(mapped);
+         return getIconRegistry().getImageIcon(mapped);
       }
 
+      return getResourceIcon(base + smallIconSuffix, extensions);
+   }
+
+   /**
+    * Gets the icon with the given name (without the extension) in
+    * the icon path.
+    */
+   protected ImageIcon getResourceIcon(String name, String... extensions)
+   {
+      IconRegistry registry = getIconRegistry();
+
       String basename = resourceIconBase;
 
       if (!resourceIconBase.endsWith("/"))
@@ -1095,15 +1125,15 @@ public class TeXJavaHelpLib
          basename += "/";
       }
 
-      basename += base + smallIconSuffix;
+      basename += name;
 
       for (String ext : extensions)
       {
-         URL url = getClass().getResource(basename + "." + ext);
+         URL url = registry.getResource(basename + "." + ext);
 
          if (url != null)
          {
-            return new ImageIcon(url);
+            return registry.getImageIcon(url);
          }
       }
 
@@ -1124,58 +1154,106 @@ public class TeXJavaHelpLib
          return icSet;
       }
 
-      String mappedBase = base+mappedSmallIconSuffix;
-      URL mapped = getMappedImageLocation(mappedBase);
+      IconRegistry registry = getIconRegistry();
+      String key = IconRegistry.getIconSetKey(base, smallIconSuffix, extensions);
 
-      if (mapped != null)
+      if (registry.hasIconSet(key))
       {
-         icSet = new IconSet(base, new ImageIcon(mapped));
+         return registry.getIconSet(key);
+      }
 
-         mapped = getMappedImageLocation(mappedBase+"_selected");
+      icSet = getMappedIconSet(base, base+mappedSmallIconSuffix);
 
-         if (mapped != null)
-         {
-            icSet.setSelectedIcon(new ImageIcon(mapped));
-         }
+      if (icSet == null)
+      {
+         icSet = getResourceIconSet(base, smallIconSuffix, extensions);
+      }
 
-         mapped = getMappedImageLocation(mappedBase+"_pressed");
+      if (icSet == null)
+      {
+         icSet = getHelpIconSet(base, smallIconSuffix);
+      }
 
-         if (mapped != null)
-         {
-            icSet.setPressedIcon(new ImageIcon(mapped));
-         }
+      registry.putIconSet(key, icSet);
 
-         mapped = getMappedImageLocation(mappedBase+"_rollover");
+      return icSet;
+   }
 
-         if (mapped != null)
-         {
-            icSet.setRolloverIcon(new ImageIcon(mapped));
-         }
+   /**
+    * Gets the icon set from the image map.
+    * @param base the icon set base name
+    * @param mappedBase the base key in the image map
+    * @return the icon set or null if the image map doesn't
+    * contain mappedBase
+    */
+   protected IconSet getMappedIconSet(String base, String mappedBase)
+   {
+      URL mapped = getMappedImageLocation(mappedBase);
 
-         mapped = getMappedImageLocation(mappedBase+"_rollover_selected");
+      if (mapped == null) return null;
 
-         if (mapped != null)
-         {
-            icSet.setRolloverSelectedIcon(new ImageIcon(mapped));
-         }
+      IconRegistry registry = getIconRegistry();
 
-         mapped = getMappedImageLocation(mappedBase+"_disabled");
+      IconSet icSet = new IconSet(base, registry.getImageIcon(mapped));
 
-         if (mapped != null)
-         {
-            icSet.setDisabledIcon(new ImageIcon(mapped));
-         }
+      mapped = getMappedImageLocation(mappedBase+"_selected");
 
-         mapped = getMappedImageLocation(mappedBase+"_disabled_selected");
+      if (mapped != null)
+      {
+         icSet.setSelectedIcon(registry.getImageIcon(mapped));
+      }
 
-         if (mapped != null)
-         {
-            icSet.setDisabledSelectedIcon(new ImageIcon(mapped));
-         }
+      mapped = getMappedImageLocation(mappedBase+"_pressed");
 
-         return icSet;
+      if (mapped != null)
+      {
+         icSet.setPressedIcon(registry.getImageIcon(mapped));
+      }
+
+      mapped = getMappedImageLocation(mappedBase+"_rollover");
+
+      if (mapped != null)
+      {
+         icSet.setRolloverIcon(registry.getImageIcon(mapped));
+      }
+
+      mapped = getMappedImageLocation(mappedBase+"_rollover_selected");
+
+      if (mapped != null)
+      {
+         icSet.setRolloverSelectedIcon(registry.getImageIcon(mapped));
+      }
+
+      mapped = getMappedImageLocation(mappedBase+"_disabled");
+
+      if (mapped != null)
+      {
+         icSet.setDisabledIcon(registry.getImageIcon(mapped));
+      }
+
+      mapped = getMappedImageLocation(mappedBase+"_disabled_selected");
+
+      if (mapped != null)
+      {
+         icSet.setDisabledSelectedIcon(registry.getImageIcon(mapped));
       }
 
+      return icSet;
+   }
+
+   /**
+    * Gets the icon set from the icon path.
+    * @param base the icon set base name
+    * @param sizeSuffix the size suffix
+    * @param extensions the permitted file extensions in order of
+    * preference
+    * @return the icon set or null if not found
+    */
+   protected IconSet getResourceIconSet(String base, String sizeSuffix,
+     String... extensions)
+   {
+      IconRegistry registry = getIconRegistry();
+
       String basename = resourceIconBase;
 
       if (!resourceIconBase.endsWith("/"))
@@ -1187,61 +1265,61 @@ public class TeXJavaHelpLib
 
       for (String ext : extensions)
       {
-         String suffix = smallIconSuffix + "." + ext;
+         String suffix = sizeSuffix + "." + ext;
 
-         URL url = getClass().getResource(basename + suffix);
+         URL url = registry.getResource(basename + suffix);
 
          if (url != null)
          {
-            icSet = new IconSet(base, new ImageIcon(url));
+            IconSet icSet = new IconSet(base, registry.getImageIcon(url));
 
-            url = getClass().getResource(basename + "_selected" + suffix);
+            url = registry.getResource(basename + "_selected" + suffix);
 
             if (url != null)
             {
-               icSet.setSelectedIcon(new ImageIcon(url));
+               icSet.setSelectedIcon(registry.getImageIcon(url));
             }
 
-            url = getClass().getResource(basename + "_pressed" + suffix);
+            url = registry.getResource(basename + "_pressed" + suffix);
 
             if (url != null)
             {
-               icSet.setPressedIcon(new ImageIcon(url));
+               icSet.setPressedIcon(registry.getImageIcon(url));
             }
 
-            url = getClass().getResource(basename + "_rollover" + suffix);
+            url = registry.getResource(basename + "_rollover" + suffix);
 
             if (url != null)
             {
-               icSet.setRolloverIcon(new ImageIcon(url));
+               icSet.setRolloverIcon(registry.getImageIcon(url));
             }
 
-            url = getClass().getResource(basename + "_rollover_selected" + suffix);
+            url = registry.getResource(basename + "_rollover_selected" + suffix);
 
             if (url != null)
             {
-               icSet.setRolloverSelectedIcon(new ImageIcon(url));
+               icSet.setRolloverSelectedIcon(registry.getImageIcon(url));
             }
 
-            url = getClass().getResource(basename + "_disabled" + suffix);
+            url = registry.getResource(basename + "_disabled" + suffix);
 
             if (url != null)
             {
-               icSet.setDisabledIcon(new ImageIcon(url));
+               icSet.setDisabledIcon(registry.getImageIcon(url));
             }
 
-            url = getClass().getResource(basename + "_disabled_selected" + suffix);
+            url = registry.getResource(basename + "_disabled_selected" + suffix);
 
             if (url != null)
             {
-               icSet.setDisabledSelectedIcon(new ImageIcon(url));
+               icSet.setDisabledSelectedIcon(registry.getImageIcon(url));
             }
 
             return icSet;
          }
       }
 
-      return getHelpIconSet(base, smallIconSuffix);
+      return null;
    }
 
    public String getLargeIconSuffix()
@@ -1252,6 +1330,7 @@ public class TeXJavaHelpLib
    public void setLargeIconSuffix(String suffix)
    {
       largeIconSuffix = suffix;
+      clearIconCache();
    }
 
    public ImageIcon getLargeIcon(String base)
@@ -1272,29 +1351,10 @@ public class TeXJavaHelpLib
 
       if (mapped != null)
       {
-         return new ImageIcon(mapped);
-      }
-
-      String basename = resourceIconBase;
-
-      if (!resourceIconBase.endsWith("/"))
-      {
-         basename += "/";
-      }
-
-      basename += base + largeIconSuffix;
-
-      for (String ext : extensions)
-      {
-         URL url = getClass().getResource(basename + "." + ext);
-
-         if (url != null)
-         {
-            return new ImageIcon(url);
-         }
+         return getIconRegistry().getImageIcon(mapped);
       }
 
-      return null;
+      return getResourceIcon(base + largeIconSuffix, extensions);
    }
 
    public IconSet getLargeIconSet(String base)
@@ -1311,123 +1371,41 @@ public class TeXJavaHelpLib
          return icSet;
       }
 
-      URL mapped = getMappedImageLocation(base);
+      IconRegistry registry = getIconRegistry();
+      String key = IconRegistry.getIconSetKey(base, largeIconSuffix, extensions);
 
-      if (mapped != null)
+      if (registry.hasIconSet(key))
       {
-         icSet = new IconSet(base, new ImageIcon(mapped));
-
-         mapped = getMappedImageLocation(base+"_selected");
-
-         if (mapped != null)
-         {
-            icSet.setSelectedIcon(new ImageIcon(mapped));
-         }
-
-         mapped = getMappedImageLocation(base+"_pressed");
-
-         if (mapped != null)
-         {
-            icSet.setPressedIcon(new ImageIcon(mapped));
-         }
-
-         mapped = getMappedImageLocation(base+"_rollover");
-
-         if (mapped != null)
-         {
-            icSet.setRolloverIcon(new ImageIcon(mapped));
-         }
-
-         mapped = getMappedImageLocation(base+"_rollover_selected");
-
-         if (mapped != null)
-         {
-            icSet.setRolloverSelectedIcon(new ImageIcon(mapped));
-         }
-
-         mapped = getMappedImageLocation(base+"_disabled");
-
-         if (mapped != null)
-         {
-            icSet.setDisabledIcon(new ImageIcon(mapped));
-         }
-
-         mapped = getMappedImageLocation(base+"_disabled_selected");
-
-         if (mapped != null)
-         {
-            icSet.setDisabledSelectedIcon(new ImageIcon(mapped));
-         }
-
-         return icSet;
+         return registry.getIconSet(key);
       }
 
-      String basename = resourceIconBase;
+      icSet = getMappedIconSet(base, base);
 
-      if (!resourceIconBase.endsWith("/"))
+      if (icSet == null)
       {
-         basename += "/";
+         icSet = getResourceIconSet(base, largeIconSuffix, extensions);
       }
 
-      basename += base;
-
-      for (String ext : extensions)
+      if (icSet == null)
       {
-         String suffix = largeIconSuffix + "." + ext;
-
-         URL url = getClass().getResource(basename+suffix);
-
-         if (url != null)
-         {
-            icSet = new IconSet(base, new ImageIcon(url));
-
-            url = getClass().getResource(basename + "_selected" + suffix);
-
-            if (url != null)
-            {
-               icSet.setSelectedIcon(new ImageIcon(url));
-            }
-
-            url = getClass().getResource(basename + "_pressed" + suffix);
-
-            if (url != null)
-            {
-               icSet.setPressedIcon(new ImageIcon(url));
-            }
-
-            url = getClass().getResource(basename + "_rollover" + suffix);
-
-            if (url != null)
-            {
-               icSet.setRolloverIcon(new ImageIcon(url));
-            }
-
-            url = getClass().getResource(basename + "_rollover_selected" + suffix);
-
-            if (url != null)
-            {
-               icSet.setRolloverSelectedIcon(new ImageIcon(url));
-            }
-
-            url = getClass().getResource(basename + "_disabled" + suffix);
-
-            if (url != null)
-            {
-               icSet.setDisabledIcon(new ImageIcon(url));
-            }
+         icSet = getHelpIconSet(base, largeIconSuffix);
+      }
 
-            url = getClass().getResource(basename + "_disabled_selected" + suffix);
+      registry.putIconSet(key, icSet);
 
-            if (url != null)
-            {
-               icSet.setDisabledSelectedIcon(new ImageIcon(url));
-            }
+      return icSet;
+   }
 
-            return icSet;
-         }
+   /**
+    * Clears cached icon sets. This is done automatically if the
+    * icon path, suffixes or image map are changed.
+    */
+   public void clearIconCache()
+   {
+      if (iconRegistry != null)
+      {
+         iconRegistry.clear();
       }
-
-      return getHelpIconSet(base, largeIconSuffix);
    }
 
    public Image getDocumentationIcon(String name)
@@ -1482,11 +1460,11 @@ public class TeXJavaHelpLib
 
       if (url == null)
       {
-         debug(getMessageWithFallback(
+         debugMessage(
            "message.cant_find_doc_image",
            "Can''t find documentation image map {0} (size={1})",
            name, size
-         ));
+         );
       }
 
       return url;
@@ -1501,11 +1479,11 @@ public class TeXJavaHelpLib
 
       Dictionary<URL,Image> imageCache = getHelpSetImageCache();
 
-      debug(getMessageWithFallback(
+      debugMessage(
          "message.adding_doc_image",
          "Adding documentation image {0} (resource path={1}, filename={2}, ext={3}, size={4})",
           name, resourcePath, filename, ext, size
-       ));
+       );
 
       String filePath = resourcePath+filename;
       String namePath = resourcePath+name;
@@ -1531,19 +1509,19 @@ public class TeXJavaHelpLib
 
          helpsetIcons.put(filePath, url);
 
-         debug(getMessageWithFallback(
+         debugMessage(
            "message.added_doc_image_map",
            "Added documentation image map {0} url={1}",
            filePath, url
-         ));
+         );
 
          helpsetIcons.put(namePath, url);
 
-         debug(getMessageWithFallback(
+         debugMessage(
            "message.added_doc_image_map",
            "Added documentation image map {0} url={1}",
            namePath, url
-         ));
+         );
       }
 
       if ("small".equals(size))
@@ -1581,11 +1559,11 @@ public class TeXJavaHelpLib
 
             helpsetSmallIcons.put(namePath, url);
 
-            debug(getMessageWithFallback(
+            debugMessage(
               "message.added_doc_small_image_map",
               "Added documentation small image map {0} url={1}",
               namePath, url
-            ));
+            );
          }
       }
       else if ("large".equals(size))
@@ -1623,11 +1601,11 @@ public class TeXJavaHelpLib
 
             helpsetLargeIcons.put(namePath, url);
 
-            debug(getMessageWithFallback(
+            debugMessage(
               "message.added_doc_large_image_map",
               "Added documentation large image map {0} url={1}",
               namePath, url
-            ));
+            );
          }
       }
    }
@@ -1710,44 +1688,101 @@ public class TeXJavaHelpLib
 
       if (hsf == null)
       {
-         URL url = getResourceURL();
-
-         path = helpsetdir + "/";
+         ResourceKey baseKey = helpSet.getBaseKey();
 
-         if (!(helpsetsubdir == null || helpsetsubdir.isEmpty()))
+         if (baseKey != null)
          {
-            path += helpsetSubdirPrefix + helpsetsubdir + "/";
+            path = helpsetdir + "/";
+
+            if (!(helpsetsubdir == null || helpsetsubdir.isEmpty()))
+            {
+               path += helpsetSubdirPrefix + helpsetsubdir + "/";
+            }
+
+            path += filename;
+
+            hsf = helpSet.getForKey(baseKey.resolve(path));
          }
+      }
 
-         path += filename;
+      return hsf;
+   }
 
-         try
-         {
-            URI uri = url.toURI().resolve(path);
+   public StyleSheet getHelpSetStyles()
+   {
+      return helpSet == null ? null : helpSet.getStyleSheet();
+   }
 
-            uri = uri.normalize();
+   /**
+    * Creates a style sheet for a new document that links to the
+    * helpset styles and the given default styles.
+    */
+   public StyleSheet createHelpSetStyleSheet(StyleSheet defaults)
+   {
+      if (helpSet == null)
+      {
+         StyleSheet styleSheet = new StyleSheet();
+         styleSheet.addStyleSheet(defaults);
+
+         return styleSheet;
+      }
+
+      return helpSet.createStyleSheet(defaults);
+   }
+
+   public Dictionary<URL,Image> getHelpSetImageCache()
+   {
+      return helpSet == null ? null : helpSet.getImageCache();
+   }
+
+   /**
+    * Gets the cache of parsed helpset pages.
+    */
+   public HTMLDocumentCache getHTMLDocumentCache()
+   {
+      return htmlDocumentCache;
+   }
+
+   /**
+    * Sets the maximum estimated size (in bytes) of the parsed
+    * pages that may be retained.
+    */
+   public void setHTMLDocumentCacheLimit(long maxWeight)
+   {
+      htmlDocumentCache.setMaximumWeight(maxWeight);
+   }
 
-            url = uri.toURL();
+   /**
+    * Sets the maximum size (in bytes) of the decoded helpset images
+    * that may be retained.
+    */
+   public void setHelpSetImageCacheLimit(long maxWeight)
+   {
+      imageCacheLimit = maxWeight;
 
-            hsf = helpSet.getForURL(url);
-         }
-         catch (Exception e)
-         {
-            debug(e);
-         }
+      if (helpSet != null && helpSet.imageCache != null)
+      {
+         helpSet.imageCache.setMaximumWeight(maxWeight);
       }
-
-      return hsf;
    }
 
-   public StyleSheet getHelpSetStyles()
+   public long getHelpSetImageCacheLimit()
    {
-      return helpSet == null ? null : helpSet.getStyleSheet();
+      return imageCacheLimit;
    }
 
-   public Dictionary<URL,Image> getHelpSetImageCache()
+   /**
+    * Gets the service that parses neighbouring pages in the
+    * background.
+    */
+   public synchronized PagePrefetcher getPagePrefetcher()
    {
-      return helpSet == null ? null : helpSet.getImageCache();
+      if (pagePrefetcher == null)
+      {
+         pagePrefetcher = new PagePrefetcher(this);
+      }
+
+      return pagePrefetcher;
    }
 
    public URL getHelpSetImageResource(String imgPath, String cssClass)
@@ -1826,7 +1861,7 @@ public class TeXJavaHelpLib
    }
 
    public InputStream getHelpSetResourceStream(String filename)
-    throws FileNotFoundException
+    throws IOException
    {
       HelpsetFile hsf = getHelpSetFile(filename);
 
@@ -1926,10 +1961,10 @@ public class TeXJavaHelpLib
 
       if (helpSet != null)
       {
-         debug(getMessageWithFallback(
+         debugMessage(
           "message.helpset.search",
           "Searching for helpset file {0} (subdir={1}, prefix={2}, hs locale={3})",
-          filename, helpsetsubdir, helpsetSubdirPrefix, helpsetLocale));
+          filename, helpsetsubdir, helpsetSubdirPrefix, helpsetLocale);
 
          String path;
 
@@ -1944,10 +1979,10 @@ public class TeXJavaHelpLib
          {
             path = getHelpSetResourcePath() + "/" + filename;
 
-            debug(getMessageWithFallback(
+            debugMessage(
              "message.helpset.search_try_path",
              "Trying path {0}",
-             path));
+             path);
 
             hsf = helpSet.get(path);
          }
@@ -1962,10 +1997,10 @@ public class TeXJavaHelpLib
                path = base + "/" + helpsetSubdirPrefix+dir
                   + "/" + filename;
 
-               debug(getMessageWithFallback(
+               debugMessage(
                 "message.helpset.search_try_path_for_locale",
                 "Trying path {0} (locale: {1})",
-                path, l));
+                path, l);
 
                hsf = helpSet.get(path);
 
@@ -1979,15 +2014,15 @@ public class TeXJavaHelpLib
 
          if (hsf == null)
          {
-            debug(getMessageWithFallback(
+            debugMessage(
              "message.helpset.search_not_found",
-             "No helpset file found"));
+             "No helpset file found");
          }
          else
          {
-            debug(getMessageWithFallback(
+            debugMessage(
              "message.helpset.search_found",
-             "Found helpset file {0}", hsf));
+             "Found helpset file {0}", hsf);
          }
       }
 
@@ -2006,8 +2041,8 @@ public class TeXJavaHelpLib
       }
       else
       {
-         debug(getMessageWithFallback(
-           "message.reading", "Reading {0}...", hsf));
+         debugMessage(
+           "message.reading", "Reading {0}...", hsf);
 
          return hsf.getStringReader();
       }
@@ -2118,8 +2153,8 @@ public class TeXJavaHelpLib
            getMessage("error.resource_not_found", path));
       }
 
-      debug(getMessageWithFallback(
-        "message.reading", "Reading {0}...", path));
+      debugMessage(
+        "message.reading", "Reading {0}...", path);
 
       return stream;
    }
@@ -2135,8 +2170,8 @@ public class TeXJavaHelpLib
       }
       else
       {
-         debug(getMessageWithFallback(
-           "message.reading", "Reading {0}...", hsf));
+         debugMessage(
+           "message.reading", "Reading {0}...", hsf);
 
          return hsf.getStringReader();
       }
@@ -2232,8 +2267,8 @@ public class TeXJavaHelpLib
            getMessage("error.resource_not_found", path));
       }
 
-      debug(getMessageWithFallback(
-        "message.reading", "Reading {0}...", path));
+      debugMessage(
+        "message.reading", "Reading {0}...", path);
 
       return stream;
    }
@@ -2249,13 +2284,90 @@ public class TeXJavaHelpLib
       }
       else
       {
-         debug(getMessageWithFallback(
-           "message.reading", "Reading {0}...", hsf));
+         debugMessage(
+           "message.reading", "Reading {0}...", hsf);
 
          return hsf.getStringReader();
       }
    }
 
+   /**
+    * Gets the compact binary search index, if available. If the
+    * helpset has been bundled into a tjh file, the buffer wraps the
+    * entry content. Otherwise, if the resource is a file, it's
+    * memory-mapped. Returns null if there's no binary index.
+    */
+   public ByteBuffer getSearchBinaryBuffer()
+     throws IOException
+   {
+      HelpsetFile hsf = findHelpSetFile(searchBinaryFilename);
+
+      if (hsf != null)
+      {
+         debugMessage(
+           "message.reading", "Reading {0}...", hsf);
+
+         return hsf.getByteBuffer();
+      }
+
+      if (helpSet != null)
+      {
+         return null;
+      }
+
+      String path = getHelpSetResourcePath() + "/" + searchBinaryFilename;
+
+      URL url = getClass().getResource(path);
+
+      if (url == null)
+      {
+         return null;
+      }
+
+      debugMessage(
+        "message.reading", "Reading {0}...", path);
+
+      if ("file".equals(url.getProtocol()))
+      {
+         FileChannel channel = null;
+
+         try
+         {
+            channel = FileChannel.open(Paths.get(url.toURI()),
+              StandardOpenOption.READ);
+
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+         }
+         catch (URISyntaxException e)
+         {
+            debug(e);
+         }
+         finally
+         {
+            if (channel != null)
+            {
+               channel.close();
+            }
+         }
+      }
+
+      InputStream in = null;
+
+      try
+      {
+         in = url.openStream();
+
+         return ByteBuffer.wrap(Helpset.readAll(in, -1L));
+      }
+      finally
+      {
+         if (in != null)
+         {
+            in.close();
+         }
+      }
+   }
+
    public InputStream getSearchXMLInputStream()
      throws FileNotFoundException
    {
@@ -2346,8 +2458,8 @@ public class TeXJavaHelpLib
            getMessage("error.resource_not_found", path));
       }
 
-      debug(getMessageWithFallback(
-        "message.reading", "Reading {0}...", path));
+      debugMessage(
+        "message.reading", "Reading {0}...", path);
 
       return stream;
    }
@@ -2363,8 +2475,8 @@ public class TeXJavaHelpLib
       }
       else
       {
-         debug(getMessageWithFallback(
-           "message.reading", "Reading {0}...", hsf));
+         debugMessage(
+           "message.reading", "Reading {0}...", hsf);
 
          return hsf.getStringReader();
       }
@@ -2460,8 +2572,8 @@ public class TeXJavaHelpLib
            getMessage("error.resource_not_found", path));
       }
 
-      debug(getMessageWithFallback(
-        "message.reading", "Reading {0}...", path));
+      debugMessage(
+        "message.reading", "Reading {0}...", path);
 
       return stream;
    }
@@ -2500,9 +2612,6 @@ public class TeXJavaHelpLib
 
       // Has the helpset been bundled into a tjh (zip) file?
 
-      InputStream zipStream = null;
-      String zipName = null;
-
       if (helpsetZipFile == null)
       {
          if (helpsetZipName == null)
@@ -2510,91 +2619,133 @@ public class TeXJavaHelpLib
             helpsetZipName = helpsetdir + "."+Helpset.ZIP_HELPSET_EXT;
          }
 
-         zipName = resourcebase + "/"+helpsetZipName;
+         String zipName = resourcebase + "/"+helpsetZipName;
+
+         URL zipUrl = getClass().getResource(zipName);
+
+         if (zipUrl != null)
+         {
+            File zipFile = null;
+
+            if ("file".equals(zipUrl.getProtocol()))
+            {
+               try
+               {
+                  zipFile = new File(zipUrl.toURI());
+               }
+               catch (URISyntaxException e)
+               {
+                  debug(e);
+               }
+            }
 
-         zipStream = getClass().getResourceAsStream(zipName);
+            if (zipFile == null)
+            {
+               // bundled in a jar so can't be accessed randomly
+
+               helpSet = Helpset.load(this, zipName, zipUrl.openStream());
+            }
+            else
+            {
+               helpSet = Helpset.load(this, zipFile);
+            }
+         }
       }
       else
       {
-         zipName = helpsetZipFile.getName();
-         zipStream = new FileInputStream(helpsetZipFile);
+         if (!helpsetZipFile.exists())
+         {
+            throw new FileNotFoundException(
+              getMessage("error.file_not_found", helpsetZipFile));
+         }
+
+         helpSet = Helpset.load(this, helpsetZipFile);
       }
 
-      if (zipStream != null)
+      if (pagePrefetcher != null)
       {
-         helpSet = Helpset.load(this, zipName, zipStream);
+         pagePrefetcher.cancel();
       }
 
+      htmlDocumentCache.clear();
+
       navhtmlfilename = navBaseName+"."+htmlsuffix;
       navxmlfilename = navBaseName+".xml";
 
       navigationTree = NavigationTree.load(this);
 
       indexData = IndexItem.load(this);
-      targetMap = new HashMap<String,TargetRef>();
+      targetMap = new HashMap<String,TargetRef>(indexData.size()*4/3+1);
 
       indexGroupList = new TreeSet<IndexItem>();
 
+      // Many items share the same file, so only resolve the node for
+      // each file once.
+
+      HashMap<String,NavigationNode> fileNodes = new HashMap<String,NavigationNode>();
+
       for (IndexItem item : indexData)
       {
-         NavigationNode node = null;
-
          String filename = item.getFileName();
 
-         if (filename != null)
+         if (filename == null) continue;
+
+         if (item.getKey().startsWith("docindex."))
          {
-            if (item.getKey().startsWith("docindex."))
-            {
-               indexGroupList.add(item);
-            }
+            indexGroupList.add(item);
+         }
 
-            HelpsetFile hsf = getHelpSetFile(filename);
+         NavigationNode node;
 
-            if (hsf != null)
-            {
-               node = hsf.getNode();
+         if (fileNodes.containsKey(filename))
+         {
+            node = fileNodes.get(filename);
+         }
+         else
+         {
+            node = getNavigationNodeForFile(filename);
+            fileNodes.put(filename, node);
+         }
 
-               if (node == null)
-               {
-                  node = navigationTree.getNodeByRef(filename);
+         // The node ID and display name will have been resolved by
+         // texjavahelpmk for recent helpsets. The saved display name
+         // was worked out for the saved node, so it can't be used if
+         // that node isn't found.
 
-                  hsf.setNode(node);
-               }
+         String nodeId = item.getNodeId();
+         boolean nodeResolved = false;
 
-               if (node != null && !node.hasHelpSetFile())
-               {
-                  node.setHelpSetFile(hsf);
-               }
-            }
+         if (nodeId != null)
+         {
+            NavigationNode resolvedNode = navigationTree.getNodeById(nodeId);
 
-            if (node == null)
+            if (resolvedNode != null)
             {
-               URL url = getHelpSetResource(filename);
-
-               node = navigationTree.getNodeByURL(url);
+               node = resolvedNode;
+               nodeResolved = true;
             }
+         }
 
-            if (node != null)
-            {
-               String ref = item.getTarget();
-
-               if (ref.matches("wrglossary\\.\\d+"))
-               {
-                  item.setName(node.getTitle());
-               }
-               else
-               {
-                  String text = item.brief();
+         if (node != null)
+         {
+            String ref = item.getTarget();
+            String displayName;
 
-                  if (text.isEmpty() || text.matches("\\d+(\\.\\d+)*"))
-                  {
-                     item.setName(text+" "+node.getTitle());
-                  }
-               }
+            if (nodeResolved)
+            {
+               displayName = item.getDisplayName();
+            }
+            else
+            {
+               displayName = item.resolveDisplayName(node);
+            }
 
-               TargetRef targetRef = new TargetRef(item, ref, node);
-               targetMap.put(ref, targetRef);
+            if (displayName != null)
+            {
+               item.setName(displayName);
             }
+
+            targetMap.put(ref, new TargetRef(item, ref, node));
          }
       }
 
@@ -2602,7 +2753,49 @@ public class TeXJavaHelpLib
 
       TJHIconFileReader.load(this);
 
-      helpFrame = new HelpFrame(this, title);
+      // The help frame isn't created until it's first required
+      // (or pre-warmed) as most application sessions never open it.
+
+      helpFrameTitle = title;
+      helpFrame = null;
+   }
+
+   /**
+    * Gets the navigation node for the given helpset file, linking
+    * the node and helpset file if found.
+    */
+   protected NavigationNode getNavigationNodeForFile(String filename)
+    throws IOException
+   {
+      NavigationNode node = null;
+
+      HelpsetFile hsf = getHelpSetFile(filename);
+
+      if (hsf != null)
+      {
+         node = hsf.getNode();
+
+         if (node == null)
+         {
+            node = navigationTree.getNodeByRef(filename);
+
+            hsf.setNode(node);
+         }
+
+         if (node != null && !node.hasHelpSetFile())
+         {
+            node.setHelpSetFile(hsf);
+         }
+      }
+
+      if (node == null)
+      {
+         URL url = getHelpSetResource(filename);
+
+         node = navigationTree.getNodeByURL(url);
+      }
+
+      return node;
    }
 
    public Dimension getHelpWindowInitialSize()
@@ -2664,28 +2857,151 @@ public class TeXJavaHelpLib
 
    // GUI components
 
+   /**
+    * Gets the help frame, creating it if it hasn't already been
+    * created.
+    * @return the help frame or null if the helpset hasn't been
+    * initialised or the frame couldn't be created
+    */
    public HelpFrame getHelpFrame()
    {
+      if (helpFrame == null && helpFrameTitle != null)
+      {
+         if (SwingUtilities.isEventDispatchThread())
+         {
+            createHelpFrame();
+         }
+         else
+         {
+            try
+            {
+               SwingUtilities.invokeAndWait(new Runnable()
+                {
+                   @Override
+                   public void run()
+                   {
+                      createHelpFrame();
+                   }
+                });
+            }
+            catch (InterruptedException e)
+            {
+               Thread.currentThread().interrupt();
+            }
+            catch (InvocationTargetException e)
+            {
+               error(e.getCause() instanceof Exception ?
+                 (Exception)e.getCause() : e);
+            }
+         }
+      }
+
       return helpFrame;
    }
 
+   /**
+    * Creates the help frame. Must be called on the event dispatch
+    * thread.
+    */
+   protected void createHelpFrame()
+   {
+      if (helpFrame != null || helpFrameTitle == null) return;
+
+      long startTime = System.nanoTime();
+
+      try
+      {
+         helpFrame = new HelpFrame(this, helpFrameTitle);
+      }
+      catch (IOException e)
+      {
+         error(e);
+         return;
+      }
+
+      if (isDebuggingOn())
+      {
+         debug(String.format("Help frame created in %dms",
+           TimeUnit.NANOSECONDS.toMillis(System.nanoTime()-startTime)));
+      }
+   }
+
+   /**
+    * Prepares the help frame in the background so that it opens
+    * quickly when first requested. The home page is parsed on the
+    * page prefetch thread and the frame is then created on the event
+    * dispatch thread. This does nothing if the frame has already
+    * been created or the helpset hasn't been initialised.
+    */
+   public void prewarmHelpFrame()
+   {
+      if (helpFrame != null || helpFrameTitle == null
+           || navigationTree == null)
+      {
+         return;
+      }
+
+      final Runnable createTask = new Runnable()
+       {
+          @Override
+          public void run()
+          {
+             createHelpFrame();
+          }
+       };
+
+      PagePrefetcher prefetcher = getPagePrefetcher();
+
+      final HelpsetFile hsf = prefetcher.getHelpSetFile(navigationTree.getRoot());
+
+      if (hsf == null || !hsf.isHTMLContent() || !hsf.hasContent()
+           || !prefetcher.isEnabled()
+           || getHTMLDocumentCache().contains(hsf))
+      {
+         SwingUtilities.invokeLater(createTask);
+         return;
+      }
+
+      prefetcher.getExecutor().execute(new Runnable()
+       {
+          @Override
+          public void run()
+          {
+             try
+             {
+                hsf.getHTMLDocument();
+             }
+             catch (Throwable e)
+             {
+                debug(e);
+             }
+
+             SwingUtilities.invokeLater(createTask);
+          }
+       });
+   }
+
    public void openHelp() throws HelpSetNotInitialisedException
    {
-      if (helpFrame == null)
+      HelpFrame frame = getHelpFrame();
+
+      if (frame == null)
       {
          throw new HelpSetNotInitialisedException(
            getMessageWithFallback(
            "error.no_helpset", "Helpset has not been initialised"));
       }
 
-      helpFrame.setVisible(true);
-      helpFrame.toFront();
+      frame.setVisible(true);
+      frame.toFront();
    }
 
    public void openHelpForId(String id)
     throws UnknownNodeException,IOException,HelpSetNotInitialisedException
    {
-      if (helpFrame == null)
+      HelpFrame frame = getHelpFrame();
+
+      if (frame == null)
       {
          throw new HelpSetNotInitialisedException(
            getMessageWithFallback(
@@ -2700,35 +3016,39 @@ public class TeXJavaHelpLib
            "error.node_id_not_found", "Node with ID ''{0}'' not found", id));
       }
 
-      helpFrame.setPage(node);
+      frame.setPage(node);
       openHelp();
    }
 
    public void openHelp(NavigationNode node)
     throws IOException,HelpSetNotInitialisedException
    {
-      if (helpFrame == null)
+      HelpFrame frame = getHelpFrame();
+
+      if (frame == null)
       {
          throw new HelpSetNotInitialisedException(
            getMessageWithFallback(
            "error.no_helpset", "Helpset has not been initialised"));
       }
 
-      helpFrame.setPage(node);
+      frame.setPage(node);
       openHelp();
    }
 
    public void openHelp(TargetRef ref)
     throws IOException,HelpSetNotInitialisedException
    {
-      if (helpFrame == null)
+      HelpFrame frame = getHelpFrame();
+
+      if (frame == null)
       {
          throw new HelpSetNotInitialisedException(
            getMessageWithFallback(
            "error.no_helpset", "Helpset has not been initialised"));
       }
 
-      helpFrame.setPage(ref);
+      frame.setPage(ref);
       openHelp();
    }
 
@@ -2825,7 +3145,8 @@ public class TeXJavaHelpLib
    {
       if (helpFontChangeListeners != null)
       {
-         for (HelpFontChangeListener listener : helpFontChangeListeners)
+         for (HelpFontChangeListener listener
+                : helpFontChangeListeners.getListeners())
          {
             listener.fontChanged(evt);
 
@@ -2837,16 +3158,28 @@ public class TeXJavaHelpLib
       }
    }
 
+   /**
+    * Adds a font change listener. Listeners are weakly referenced,
+    * so they don't prevent components from being garbage collected.
+    */
    public void addHelpFontChangeListener(HelpFontChangeListener listener)
    {
       if (helpFontChangeListeners == null)
       {
-         helpFontChangeListeners = new Vector<HelpFontChangeListener>();
+         helpFontChangeListeners = new WeakListenerList<HelpFontChangeListener>();
       }
 
       helpFontChangeListeners.add(listener);
    }
 
+   public void removeHelpFontChangeListener(HelpFontChangeListener listener)
+   {
+      if (helpFontChangeListeners != null)
+      {
+         helpFontChangeListeners.remove(listener);
+      }
+   }
+
    public HelpFontSettings getHelpFontSettings()
    {
       return helpFontSettings;
@@ -2875,7 +3208,8 @@ public class TeXJavaHelpLib
 
       if (lowerNavSettingsChangeListeners != null)
       {
-         for (LowerNavSettingsChangeListener listener : lowerNavSettingsChangeListeners)
+         for (LowerNavSettingsChangeListener listener
+                : lowerNavSettingsChangeListeners.getListeners())
          {
             listener.lowerNavSettingsChange(evt);
 
@@ -2887,16 +3221,30 @@ public class TeXJavaHelpLib
       }
    }
 
+   /**
+    * Adds a lower navigation settings listener. As with the font
+    * change listeners, listeners are weakly referenced.
+    */
    public void addLowerNavSettingsChangeListener(LowerNavSettingsChangeListener listener)
    {
       if (lowerNavSettingsChangeListeners == null)
       {
-         lowerNavSettingsChangeListeners = new Vector<LowerNavSettingsChangeListener>();
+         lowerNavSettingsChangeListeners
+           = new WeakListenerList<LowerNavSettingsChangeListener>();
       }
 
       lowerNavSettingsChangeListeners.add(listener);
    }
 
+   public void removeLowerNavSettingsChangeListener(
+     LowerNavSettingsChangeListener listener)
+   {
+      if (lowerNavSettingsChangeListeners != null)
+      {
+         lowerNavSettingsChangeListeners.remove(listener);
+      }
+   }
+
    public String getHelpFontDialogLabel()
    {
       return helpFontDialogLabel;
@@ -4682,20 +5030,20 @@ public class TeXJavaHelpLib
          throw new IOException(getMessage("error.bksl_in_kpsewhich", arg));
       }
 
-      if (kpsewhichResults == null)
+      KpsewhichCache cache = getKpsewhichCache();
+
+      // has kpsewhich already been called with this argument? 
+
+      if (cache.contains(arg))
       {
-         kpsewhichResults = new HashMap<String,String>();
+         return cache.get(arg);
       }
-      else
+
+      if (KpsewhichCache.isFileLookup(arg))
       {
-         // has kpsewhich already been called with this argument? 
+         cache.lookup(maxProcessTime, arg);
 
-         String result = kpsewhichResults.get(arg);
-         
-         if (result != null)
-         {
-            return result;
-         }
+         return cache.get(arg);
       }
 
       String line = null;
@@ -4707,12 +5055,33 @@ public class TeXJavaHelpLib
       {
          line = result.toString();
 
-         kpsewhichResults.put(arg, line);
+         cache.put(arg, line);
       }
 
       return line;
    }
 
+   /**
+    * Looks up all the given file names that haven't already been
+    * looked up with a single call to kpsewhich. The results can
+    * then be obtained with kpsewhich(String).
+    */
+   public void kpsewhich(long maxProcessTime, String... args)
+     throws IOException,InterruptedException
+   {
+      getKpsewhichCache().lookup(maxProcessTime, args);
+   }
+
+   public synchronized KpsewhichCache getKpsewhichCache()
+   {
+      if (kpsewhichCache == null)
+      {
+         kpsewhichCache = new KpsewhichCache(this);
+      }
+
+      return kpsewhichCache;
+   }
+
    public static enum MessageType
    {
       NORMAL, WARNING, ERROR, DEBUG, SILENT;
@@ -4727,6 +5096,8 @@ public class TeXJavaHelpLib
    protected Properties imageMap = null;
    protected String mappedSmallIconSuffix = "-small";
 
+   protected IconRegistry iconRegistry;
+
    protected boolean buttonDefaultIconSmall = true;
    protected boolean buttonDefaultOmitTextIfIcon = false;
    protected boolean toolbarButtonDefaultIconSmall = false;
@@ -4752,6 +5123,9 @@ public class TeXJavaHelpLib
    protected String htmlsuffix = "html";
 
    protected Helpset helpSet;
+   protected HTMLDocumentCache htmlDocumentCache = new HTMLDocumentCache();
+   protected long imageCacheLimit = HelpsetImageCache.DEFAULT_MAX_WEIGHT;
+   protected PagePrefetcher pagePrefetcher;
    protected String helpsetZipName = null;
    protected File helpsetZipFile = null;
 
@@ -4766,9 +5140,11 @@ public class TeXJavaHelpLib
    protected HashMap<String,TargetRef> targetMap;
 
    protected String searchXmlFilename = "search.xml";
+   protected String searchBinaryFilename = "search."+SearchData.BINARY_EXT;
    protected SearchData searchData;
 
    protected HelpFrame helpFrame;
+   protected String helpFrameTitle;
 
    protected MessageSystem messages;
    protected String applicationName;
@@ -4776,8 +5152,8 @@ public class TeXJavaHelpLib
 
    protected HashMap<String,Object> resourceProperties;
 
-   private Vector<HelpFontChangeListener> helpFontChangeListeners; 
-   private Vector<LowerNavSettingsChangeListener> lowerNavSettingsChangeListeners; 
+   private WeakListenerList<HelpFontChangeListener> helpFontChangeListeners;
+   private WeakListenerList<LowerNavSettingsChangeListener> lowerNavSettingsChangeListeners; 
 
    private HelpFontSettings helpFontSettings;
    private boolean helpLowerNavLabelShowText = true;
@@ -4785,7 +5161,7 @@ public class TeXJavaHelpLib
 
    private Dimension helpWindowInitSize;
 
-   private HashMap<String,String> kpsewhichResults;
+   private KpsewhichCache kpsewhichCache;
 
    /**
     * List of image extensions to try when searching for icons.
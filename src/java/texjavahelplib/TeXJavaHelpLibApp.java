@@ -19,6 +19,7 @@
 package com.dickimawbooks.texjavahelplib;
 
 import java.net.URL;
+import java.util.function.Supplier;
 import java.awt.Component;
 import javax.swing.ImageIcon;
 
@@ -213,5 +214,19 @@ public interface TeXJavaHelpLibApp
 
    public boolean isDebuggingOn();
 
+   /**
+    * Debugging message that's only created if debugging mode is on.
+    * This should be used where the message is expensive to create
+    * or is in a frequently used code path.
+    * @param message supplies the message
+    */ 
+   public default void debug(Supplier<String> message)
+   {
+      if (isDebuggingOn())
+      {
+         debug(message.get());
+      }
+   }
+
    public default void setExitCode(int code) { }
 }
@@ -0,0 +1,134 @@
+/*
+    Copyright (C) 2024 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+
+package com.dickimawbooks.texjavahelplib;
+
+import java.lang.ref.WeakReference;
+
+import java.util.EventListener;
+import java.util.Iterator;
+import java.util.Vector;
+
+/**
+ * List of weakly referenced listeners. A listener that's no longer
+ * referenced elsewhere (such as a disposed help dialog) can be
+ * garbage collected without having to be removed first, and is
+ * dropped from the list the next time the list is accessed. This
+ * means that a listener must be referenced by something else (such
+ * as the component that it updates) for as long as it's required.
+ */
+public class WeakListenerList<L extends EventListener>
+{
+   public WeakListenerList()
+   {
+      listeners = new Vector<WeakReference<L>>();
+   }
+
+   /**
+    * Adds the listener, if it's not already in the list.
+    */
+   public synchronized void add(L listener)
+   {
+      if (listener == null)
+      {
+         throw new NullPointerException();
+      }
+
+      Iterator<WeakReference<L>> it = listeners.iterator();
+
+      while (it.hasNext())
+      {
+         L l = it.next().get();
+
+         if (l == null)
+         {
+            it.remove();
+         }
+         else if (l == listener)
+         {
+            return;
+         }
+      }
+
+      listeners.add(new WeakReference<L>(listener));
+   }
+
+   /**
+    * Removes the listener.
+    * @return true if the listener was in the list
+    */
+   public synchronized boolean remove(L listener)
+   {
+      boolean found = false;
+
+      Iterator<WeakReference<L>> it = listeners.iterator();
+
+      while (it.hasNext())
+      {
+         L l = it.next().get();
+
+         if (l == null || l == listener)
+         {
+            it.remove();
+
+            if (l != null)
+            {
+               found = true;
+            }
+         }
+      }
+
+      return found;
+   }
+
+   /**
+    * Gets a snapshot of the listeners that are still reachable, in
+    * the order they were added. The list may be safely modified while
+    * iterating over the snapshot.
+    */
+   public synchronized Vector<L> getListeners()
+   {
+      Vector<L> list = new Vector<L>(listeners.size());
+
+      Iterator<WeakReference<L>> it = listeners.iterator();
+
+      while (it.hasNext())
+      {
+         L l = it.next().get();
+
+         if (l == null)
+         {
+            it.remove();
+         }
+         else
+         {
+            list.add(l);
+         }
+      }
+
+      return list;
+   }
+
+   public synchronized int size()
+   {
+      return getListeners().size();
+   }
+
+   private Vector<WeakReference<L>> listeners;
+}
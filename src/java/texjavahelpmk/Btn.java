@@ -81,11 +81,11 @@ public class Btn extends Dgls
 
                if (app.isDebuggingOn())
                {
-                  app.getHelpLib().debug(app.getMessageWithFallback(
+                  app.getHelpLib().debugMessage(
                     "message.no_small_icon_image_found",
                     "No small icon image found for {0}, falling back on {1}",
                     base, list.toString(parser)
-                  ));
+                  );
                }
             }
 
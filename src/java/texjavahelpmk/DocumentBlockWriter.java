@@ -24,6 +24,7 @@ import java.io.Writer;
 
 import java.text.BreakIterator;
 
+import java.util.Vector;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 
@@ -127,6 +128,7 @@ public class DocumentBlockWriter extends Writer
       boolean inTag = false;
 
       StringBuilder context = new StringBuilder(buffer.length());
+      Vector<SearchItem> items = new Vector<SearchItem>();
 
       for (int i = 0; i < buffer.length(); )
       {
@@ -140,7 +142,7 @@ public class DocumentBlockWriter extends Writer
          else if (cp == '<')
          {
             inTag = true;
-            processBuffer(start, i, context);
+            processBuffer(start, i, context, items);
 
             m = IMG.matcher(buffer);
 
@@ -148,7 +150,7 @@ public class DocumentBlockWriter extends Writer
 
             if (nextCp == 'i' && m.find(i) && m.start() == i)
             {
-               processBuffer(m.start(1), m.end(1), context);
+               processBuffer(m.start(1), m.end(1), context, items);
 
                i = m.end()-1;
                cp = buffer.codePointAt(i);
@@ -163,13 +165,19 @@ public class DocumentBlockWriter extends Writer
 
       if (!inTag)
       {
-         processBuffer(start, buffer.length(), context);
+         processBuffer(start, buffer.length(), context, items);
+      }
+
+      if (!items.isEmpty())
+      {
+         listener.addSearchContext(contextId, context.toString(), items);
       }
 
       writeAndClear();
    }
 
-   protected void processBuffer(int start, int end, StringBuilder context)
+   protected void processBuffer(int start, int end, StringBuilder context,
+     Vector<SearchItem> items)
      throws IOException
    {
       if (listener.isSearchEnabled())
@@ -198,12 +206,10 @@ public class DocumentBlockWriter extends Writer
 
                if (node != null)
                {
-                   SearchItem item = new SearchItem(word, 
+                   items.add(new SearchItem(word, 
                     contextOffset+idx1, contextOffset+idx2,
                     node.getId(),
-                    contextId);
-
-                   listener.addSearchItem(item, context);
+                    contextId));
                }
             }
          }
@@ -0,0 +1,162 @@
+/*
+    Copyright (C) 2024 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+
+package com.dickimawbooks.texjavahelpmk;
+
+import java.io.File;
+import java.util.Vector;
+import java.util.concurrent.Future;
+
+import com.dickimawbooks.texparserlib.TeXParser;
+
+/**
+ * Image conversion job. This identifies the temporary LaTeX file
+ * and the processes required to convert it to an image. The source
+ * location is recorded when the job is created so that any problems
+ * can be reported against the correct line even if the job is run
+ * after the parser has moved on.
+ */
+public class ImageJob
+{
+   public ImageJob(TeXParser parser, String name, File texFile,
+     String invoker, File texInputsDir, boolean crop)
+   {
+      this.name = name;
+      this.texFile = texFile;
+      this.invoker = invoker;
+      this.texInputsDir = texInputsDir;
+      this.crop = crop;
+
+      sourceFile = parser.getCurrentFile();
+      lineNum = parser.getLineNumber();
+   }
+
+   public String getName()
+   {
+      return name;
+   }
+
+   public File getTeXFile()
+   {
+      return texFile;
+   }
+
+   public String getInvoker()
+   {
+      return invoker;
+   }
+
+   public File getTeXInputsDir()
+   {
+      return texInputsDir;
+   }
+
+   public boolean isCropOn()
+   {
+      return crop;
+   }
+
+   /**
+    * Sets the file the PDF should be converted to. If not set, the
+    * job will stop after creating (and cropping) the PDF.
+    */
+   public void setImageFile(File imageFile)
+   {
+      this.imageFile = imageFile;
+   }
+
+   public File getImageFile()
+   {
+      return imageFile;
+   }
+
+   /**
+    * Sets the key identifying the image in the image cache or null
+    * if the result shouldn't be cached.
+    */
+   public void setCacheKey(String cacheKey)
+   {
+      this.cacheKey = cacheKey;
+   }
+
+   public String getCacheKey()
+   {
+      return cacheKey;
+   }
+
+   public void setFuture(Future<File> future)
+   {
+      this.future = future;
+   }
+
+   public Future<File> getFuture()
+   {
+      return future;
+   }
+
+   public synchronized void addWarning(String message)
+   {
+      if (warnings == null)
+      {
+         warnings = new Vector<String>();
+      }
+
+      warnings.add(message);
+   }
+
+   public synchronized Vector<String> getWarnings()
+   {
+      return warnings;
+   }
+
+   /**
+    * Prefixes the message with the source location where this job
+    * was created.
+    */
+   public String formatMessage(String message)
+   {
+      if (sourceFile == null)
+      {
+         return message;
+      }
+      else if (lineNum > 0)
+      {
+         return String.format("%s:%d: %s", sourceFile.getName(),
+           lineNum, message);
+      }
+      else
+      {
+         return String.format("%s: %s", sourceFile.getName(), message);
+      }
+   }
+
+   @Override
+   public String toString()
+   {
+      return formatMessage(name);
+   }
+
+   private String name, invoker, cacheKey;
+   private File texFile, texInputsDir, imageFile;
+   private boolean crop;
+   private File sourceFile;
+   private int lineNum;
+   private Future<File> future;
+   private Vector<String> warnings;
+}
@@ -0,0 +1,407 @@
+/*
+    Copyright (C) 2024 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+
+package com.dickimawbooks.texjavahelpmk;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.security.MessageDigest;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Record of the files used and created by a texjavahelpmk build.
+ * This is used by the up-to-date check to determine whether or not
+ * the previous build can be kept. Inputs are the files with a
+ * recognised extension in the input directory and the files given
+ * to options such as --head-from-file. They are identified by their
+ * content hash, but the size and modification time are also
+ * recorded so that files that haven't been touched don't need to be
+ * hashed again. Outputs are only checked for their size and
+ * modification time, in order to detect files that have been
+ * removed or altered since the last build.
+ *
+ * The manifest is a plain text file with tab-separated fields:
+ * <pre>
+ * version &lt;version&gt;
+ * settings &lt;hash&gt;
+ * in &lt;path&gt; &lt;size&gt; &lt;modified&gt; &lt;hash&gt;
+ * out &lt;path&gt; &lt;size&gt; &lt;modified&gt;
+ * </pre>
+ */
+public class TJHBuildManifest
+{
+   public TJHBuildManifest(String version, String settingsHash)
+   {
+      this.version = version;
+      this.settingsHash = settingsHash;
+
+      inputs = new TreeMap<String,FileRecord>();
+      outputs = new TreeMap<String,FileRecord>();
+   }
+
+   /**
+    * Reads a previously saved manifest.
+    * @return the manifest or null if the file doesn't exist or
+    * isn't a valid manifest
+    */
+   public static TJHBuildManifest read(File file)
+   {
+      if (!file.isFile()) return null;
+
+      BufferedReader in = null;
+
+      try
+      {
+         in = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8);
+
+         TJHBuildManifest manifest = new TJHBuildManifest(null, null);
+         String line;
+
+         while ((line = in.readLine()) != null)
+         {
+            if (line.isEmpty() || line.startsWith("#")) continue;
+
+            String[] fields = line.split("\t");
+
+            if (fields[0].equals("version") && fields.length == 2)
+            {
+               manifest.version = fields[1];
+            }
+            else if (fields[0].equals("settings") && fields.length == 2)
+            {
+               manifest.settingsHash = fields[1];
+            }
+            else if (fields[0].equals("in") && fields.length == 5)
+            {
+               manifest.inputs.put(fields[1], new FileRecord(
+                 Long.parseLong(fields[2]), Long.parseLong(fields[3]),
+                 fields[4]));
+            }
+            else if (fields[0].equals("out") && fields.length == 4)
+            {
+               manifest.outputs.put(fields[1], new FileRecord(
+                 Long.parseLong(fields[2]), Long.parseLong(fields[3]),
+                 null));
+            }
+            else
+            {
+               return null;
+            }
+         }
+
+         return manifest;
+      }
+      catch (IOException | NumberFormatException e)
+      {
+         return null;
+      }
+      finally
+      {
+         if (in != null)
+         {
+            try
+            {
+               in.close();
+            }
+            catch (IOException e)
+            {
+            }
+         }
+      }
+   }
+
+   public void write(File file) throws IOException
+   {
+      Files.createDirectories(file.getAbsoluteFile().getParentFile().toPath());
+
+      PrintWriter out = null;
+
+      try
+      {
+         out = new PrintWriter(Files.newBufferedWriter(file.toPath(),
+           StandardCharsets.UTF_8));
+
+         out.println("# texjavahelpmk build manifest");
+         out.format("version\t%s%n", version);
+         out.format("settings\t%s%n", settingsHash);
+
+         for (Map.Entry<String,FileRecord> entry : inputs.entrySet())
+         {
+            FileRecord rec = entry.getValue();
+
+            out.format("in\t%s\t%d\t%d\t%s%n", entry.getKey(),
+              rec.size, rec.modified, rec.hash);
+         }
+
+         for (Map.Entry<String,FileRecord> entry : outputs.entrySet())
+         {
+            FileRecord rec = entry.getValue();
+
+            out.format("out\t%s\t%d\t%d%n", entry.getKey(),
+              rec.size, rec.modified);
+         }
+      }
+      finally
+      {
+         if (out != null)
+         {
+            out.close();
+         }
+      }
+   }
+
+   /**
+    * Adds all files with a recognised input extension in the given
+    * directory and its sub-directories. Hidden files and the
+    * excluded files or directories are skipped. If a previous
+    * manifest is supplied, its hashes are reused for files that
+    * have the same size and modification time.
+    */
+   public void addInputs(File dir, TJHBuildManifest previous,
+     File... excluded)
+   throws IOException
+   {
+      HashSet<String> excludedPaths = new HashSet<String>();
+
+      for (File file : excluded)
+      {
+         if (file != null)
+         {
+            excludedPaths.add(file.getCanonicalPath());
+         }
+      }
+
+      addInputs(dir, dir, previous, excludedPaths);
+   }
+
+   private void addInputs(File baseDir, File dir, TJHBuildManifest previous,
+     HashSet<String> excludedPaths)
+   throws IOException
+   {
+      File[] files = dir.listFiles();
+
+      if (files == null) return;
+
+      for (File file : files)
+      {
+         if (file.isHidden() || file.getName().startsWith(".")
+              || excludedPaths.contains(file.getCanonicalPath()))
+         {
+            continue;
+         }
+
+         if (file.isDirectory())
+         {
+            addInputs(baseDir, file, previous, excludedPaths);
+         }
+         else if (isInputFile(file))
+         {
+            addInput(baseDir, file, previous);
+         }
+      }
+   }
+
+   /**
+    * Adds the given input file. If the file isn't in the base
+    * directory, it's identified by its absolute path.
+    */
+   public void addInput(File baseDir, File file, TJHBuildManifest previous)
+   throws IOException
+   {
+      String key = getKey(baseDir, file);
+
+      long size = file.length();
+      long modified = file.lastModified();
+
+      FileRecord rec = previous == null ? null : previous.inputs.get(key);
+
+      if (rec == null || rec.size != size || rec.modified != modified)
+      {
+         rec = new FileRecord(size, modified, computeHash(file));
+      }
+
+      inputs.put(key, rec);
+   }
+
+   /**
+    * Records all the files in the output directory.
+    */
+   public void addOutputs(File outDir)
+   {
+      addOutputs(outDir, outDir);
+   }
+
+   private void addOutputs(File baseDir, File dir)
+   {
+      File[] files = dir.listFiles();
+
+      if (files == null) return;
+
+      for (File file : files)
+      {
+         if (file.isDirectory())
+         {
+            addOutputs(baseDir, file);
+         }
+         else
+         {
+            outputs.put(getKey(baseDir, file),
+              new FileRecord(file.length(), file.lastModified(), null));
+         }
+      }
+   }
+
+   /**
+    * Determines whether the build recorded by the previous manifest
+    * is still valid for this manifest's inputs. That is, the version
+    * and settings are the same, the inputs have the same content,
+    * and the outputs still exist and haven't been modified.
+    */
+   public boolean isUpToDate(TJHBuildManifest previous, File outDir)
+   {
+      if (previous == null
+          || version == null || !version.equals(previous.version)
+          || settingsHash == null
+          || !settingsHash.equals(previous.settingsHash)
+          || previous.outputs.isEmpty()
+          || !inputs.keySet().equals(previous.inputs.keySet()))
+      {
+         return false;
+      }
+
+      for (Map.Entry<String,FileRecord> entry : inputs.entrySet())
+      {
+         if (!entry.getValue().hash.equals(
+                previous.inputs.get(entry.getKey()).hash))
+         {
+            return false;
+         }
+      }
+
+      for (Map.Entry<String,FileRecord> entry : previous.outputs.entrySet())
+      {
+         File file = new File(outDir, entry.getKey());
+         FileRecord rec = entry.getValue();
+
+         if (!file.isFile() || file.length() != rec.size
+              || file.lastModified() != rec.modified)
+         {
+            return false;
+         }
+      }
+
+      return true;
+   }
+
+   public static boolean isInputFile(File file)
+   {
+      String name = file.getName();
+      int idx = name.lastIndexOf('.');
+
+      if (idx < 0) return false;
+
+      return INPUT_EXTENSIONS.contains(name.substring(idx+1).toLowerCase());
+   }
+
+   private static String getKey(File baseDir, File file)
+   {
+      Path filePath = file.getAbsoluteFile().toPath().normalize();
+      Path basePath = baseDir.getAbsoluteFile().toPath().normalize();
+
+      Path path = filePath.startsWith(basePath) ?
+        basePath.relativize(filePath) : filePath;
+
+      return path.toString().replace(File.separatorChar, '/');
+   }
+
+   /**
+    * Computes the content hash of the given file.
+    * @see TeXImageCache#createDigest()
+    */
+   public static String computeHash(File file) throws IOException
+   {
+      InputStream in = null;
+
+      try
+      {
+         MessageDigest md = TeXImageCache.createDigest();
+
+         in = Files.newInputStream(file.toPath());
+
+         byte[] buffer = new byte[8192];
+         int n;
+
+         while ((n = in.read(buffer)) != -1)
+         {
+            md.update(buffer, 0, n);
+         }
+
+         return TeXImageCache.toHex(md.digest());
+      }
+      finally
+      {
+         if (in != null)
+         {
+            in.close();
+         }
+      }
+   }
+
+   /**
+    * Record of an input or output file. The hash is null for
+    * outputs.
+    */
+   private static class FileRecord
+   {
+      FileRecord(long size, long modified, String hash)
+      {
+         this.size = size;
+         this.modified = modified;
+         this.hash = hash;
+      }
+
+      long size, modified;
+      String hash;
+   }
+
+   private String version, settingsHash;
+   private TreeMap<String,FileRecord> inputs, outputs;
+
+   /**
+    * File extensions that identify files that may affect the
+    * build. This includes LaTeX auxiliary files, such as the toc
+    * and glstex files, as well as source files and images.
+    */
+   public static final HashSet<String> INPUT_EXTENSIONS
+    = new HashSet<String>(Arrays.asList("tex", "ltx", "sty", "cls", "def",
+       "cfg", "ldf", "clo", "fd", "aux", "toc", "lof", "lot", "glstex",
+       "bib", "bbl", "ind", "css", "png", "jpg", "jpeg", "gif", "pdf"));
+}
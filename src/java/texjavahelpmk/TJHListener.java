@@ -87,6 +87,8 @@ import com.dickimawbooks.texjavahelplib.NavigationNode;
 import com.dickimawbooks.texjavahelplib.IndexItem;
 import com.dickimawbooks.texjavahelplib.SearchItem;
 import com.dickimawbooks.texjavahelplib.SearchData;
+import com.dickimawbooks.texjavahelplib.SearchDataWriter;
+import com.dickimawbooks.texjavahelplib.HelpsetFile;
 import com.dickimawbooks.texjavahelplib.TJHIconFile;
 
 public class TJHListener extends L2HConverter
@@ -133,6 +135,7 @@ public class TJHListener extends L2HConverter
          setNavigationXmlFile(new File(outDir, "navigation.xml"));
          setIndexXmlFile(new File(outDir, "index.xml"));
          setSearchXmlFile(new File(outDir, "search.xml"));
+         setSearchBinaryFile(new File(outDir, "search."+SearchData.BINARY_EXT));
          setIconXmlFile(new File(outDir, "icons.xml"));
 
          String omissions = app.getMessageWithFallback("manual.no-search",
@@ -594,6 +597,11 @@ public class TJHListener extends L2HConverter
       searchXmlFile = file;
    }
 
+   public void setSearchBinaryFile(File file)
+   {
+      searchBinaryFile = file;
+   }
+
    public void setIconXmlFile(File file)
    {
       iconXmlFile = file;
@@ -848,10 +856,7 @@ public class TJHListener extends L2HConverter
          throw new TeXSyntaxException(getParser(), "error.no_division_data");
       }
 
-      DivisionInfo divInfo = divisionData.firstElement();
-      DivisionNode divNode = (DivisionNode)divInfo.getSpecial();
-
-      NavigationNode rootNode = NavigationNode.createTree(divNode);
+      NavigationNode rootNode = getNavigationTree();
 
       PrintWriter out = null;
 
@@ -886,6 +891,28 @@ public class TJHListener extends L2HConverter
       }
    }
 
+   /**
+    * Gets the navigation tree. This is created the first time it's
+    * needed, which should be once the document has ended, and is
+    * shared by the navigation and index files.
+    */
+   protected NavigationNode getNavigationTree()
+   {
+      if (navigationTree == null && divisionData != null
+           && !divisionData.isEmpty())
+      {
+         DivisionNode divNode
+            = (DivisionNode)divisionData.firstElement().getSpecial();
+
+         if (divNode != null)
+         {
+            navigationTree = NavigationNode.createTree(divNode);
+         }
+      }
+
+      return navigationTree;
+   }
+
    protected void writeTocNcx(NavigationNode rootNode, PrintWriter out) throws IOException
    {
       Locale locale = getMainLanguage();
@@ -1175,7 +1202,7 @@ public class TJHListener extends L2HConverter
       }
    }
 
-   protected void writeIndexFile(TeXObjectList stack) throws IOException
+   protected void writeIndexFile() throws IOException
    {
       if (indexXmlFile == null || indexData == null) return;
 
@@ -1190,6 +1217,17 @@ public class TJHListener extends L2HConverter
 
          addToManifest(new FileData(indexXmlFile, MIME_TYPE_XML));
 
+         // Save the node that each item belongs to, so that the
+         // library doesn't have to work it out when the helpset is
+         // loaded.
+
+         NavigationNode rootNode = getNavigationTree();
+
+         if (rootNode != null)
+         {
+            IndexItem.resolveNodes(indexData.values(), rootNode);
+         }
+
          IndexItem.saveIndex(indexData, out, charset, getTeXJavaHelpMk().getOutDirectory());
       }
       finally
@@ -1326,8 +1364,6 @@ public class TJHListener extends L2HConverter
          updateGlossaryEntryIndexItems(label, stack);
       }
 
-      writeIndexFile(stack);
-
       writeIconFile(stack);
 
       super.endDocument(stack);
@@ -1336,7 +1372,14 @@ public class TJHListener extends L2HConverter
    @Override
    protected void endDocumentHook() throws IOException
    {
+      getTeXJavaHelpMk().waitForImageJobs();
+
       writeNavigationXmlFile();
+
+      // The index file is written after the navigation file so
+      // that it can use the same navigation tree.
+
+      writeIndexFile();
       writeSearchFile();
 
       if (documentTargetType == DocumentTargetType.EPUB)
@@ -2254,25 +2297,55 @@ public class TJHListener extends L2HConverter
       return true;
    }
 
-   public void addSearchItem(SearchItem item, StringBuilder context)
+   /**
+    * Adds a completed search context. The context and its items
+    * are written straight away so they don't need to be kept until
+    * the end of the document.
+    */
+   public void addSearchContext(int contextId, String context,
+     Vector<SearchItem> items)
+   throws IOException
    {
       if (searchXmlFile == null) return;
 
-      if (searchData == null)
+      if (searchDataWriter == null)
       {
-         searchData = new SearchData();
+         searchDataWriter = new SearchDataWriter(searchXmlFile.toPath(),
+           getHtmlCharset(),
+           searchBinaryFile == null ? null : searchBinaryFile.toPath());
       }
 
-      searchData.add(item, context);
+      searchDataWriter.add(contextId, context, items);
    }
 
    protected void writeSearchFile() throws IOException
    {
-      if (searchXmlFile != null && searchData != null)
+      if (searchXmlFile != null && searchDataWriter != null)
       {
-         searchData.write(searchXmlFile.toPath(), getHtmlCharset());
+         searchDataWriter.close();
+         searchDataWriter = null;
 
          addToManifest(new FileData(searchXmlFile, MIME_TYPE_XML));
+
+         if (searchBinaryFile != null)
+         {
+            addToManifest(new FileData(searchBinaryFile,
+              HelpsetFile.TYPE_SEARCH_INDEX));
+         }
+      }
+   }
+
+   /**
+    * Closes the search data writer, if open, without writing the
+    * binary search file. Has no effect if the search data has
+    * already been written.
+    */
+   public void discardSearchData() throws IOException
+   {
+      if (searchDataWriter != null)
+      {
+         searchDataWriter.discard();
+         searchDataWriter = null;
       }
    }
 
@@ -2324,8 +2397,10 @@ public class TJHListener extends L2HConverter
    }
 
    protected File navigationXmlFile;
+   protected NavigationNode navigationTree;
    protected File indexXmlFile;
    protected File searchXmlFile;
+   protected File searchBinaryFile;
    protected File iconXmlFile;
    protected TeXJavaHelpSty tjhSty;
    protected HashMap<String,IndexItem> indexData;
@@ -2335,7 +2410,7 @@ public class TJHListener extends L2HConverter
 
    protected TeXObject locationPrefix;
 
-   protected SearchData searchData;
+   protected SearchDataWriter searchDataWriter;
 
    protected DocumentBlockWriter documentBlockWriter;
    protected DocumentTargetType documentTargetType = DocumentTargetType.HELPSET;
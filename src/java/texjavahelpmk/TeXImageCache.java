@@ -0,0 +1,319 @@
+/*
+    Copyright (C) 2024 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+
+package com.dickimawbooks.texjavahelpmk;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import java.awt.Dimension;
+
+/**
+ * Persistent cache of images created from LaTeX code. Each image is
+ * identified by a hash of everything that affects the result (the
+ * preamble, the image code, the output format, the crop setting and
+ * the applications used). An entry consists of the image file
+ * "hash.ext" and, if known, the image dimensions in "hash.ext.dim".
+ * Entries are touched whenever they're used so that the least
+ * recently used entries can be pruned if the cache exceeds its size
+ * limit.
+ */
+public class TeXImageCache
+{
+   public TeXImageCache(File dir) throws IOException
+   {
+      this.dir = dir;
+
+      Files.createDirectories(dir.toPath());
+   }
+
+   public File getDirectory()
+   {
+      return dir;
+   }
+
+   /**
+    * Computes the key from the given parts. A null part is distinct
+    * from an empty string. This is also used by TJHBuildManifest to
+    * identify the build settings.
+    */
+   public static String computeKey(Object... parts)
+   {
+      MessageDigest md = createDigest();
+
+      for (Object part : parts)
+      {
+         if (part == null)
+         {
+            md.update((byte)1);
+         }
+         else
+         {
+            md.update((byte)0);
+            md.update(part.toString().getBytes(StandardCharsets.UTF_8));
+         }
+      }
+
+      return toHex(md.digest());
+   }
+
+   /**
+    * Creates the SHA-256 digest used for cache keys and file hashes.
+    */
+   public static MessageDigest createDigest()
+   {
+      try
+      {
+         return MessageDigest.getInstance("SHA-256");
+      }
+      catch (NoSuchAlgorithmException e)
+      {// shouldn't happen, all platforms must support SHA-256
+         throw new IllegalStateException(e);
+      }
+   }
+
+   public static String toHex(byte[] digest)
+   {
+      StringBuilder builder = new StringBuilder(2*digest.length);
+
+      for (byte b : digest)
+      {
+         builder.append(HEX_DIGITS.charAt((b >> 4) & 0xF));
+         builder.append(HEX_DIGITS.charAt(b & 0xF));
+      }
+
+      return builder.toString();
+   }
+
+   /**
+    * Gets the cached image file for the given key and extension or
+    * null if not in the cache.
+    */
+   public File get(String key, String ext)
+   {
+      File file = new File(dir, key+"."+ext);
+
+      if (file.isFile())
+      {
+         file.setLastModified(System.currentTimeMillis());
+
+         synchronized (this)
+         {
+            hitCount++;
+         }
+
+         return file;
+      }
+
+      synchronized (this)
+      {
+         missCount++;
+      }
+
+      return null;
+   }
+
+   /**
+    * Gets the dimensions of the cached image or null if not known.
+    */
+   public Dimension getDimension(String key, String ext)
+   {
+      File file = new File(dir, key+"."+ext+DIM_EXT);
+
+      if (!file.isFile())
+      {
+         return null;
+      }
+
+      try
+      {
+         String[] split = new String(Files.readAllBytes(file.toPath()),
+           StandardCharsets.US_ASCII).trim().split(" ");
+
+         if (split.length == 2)
+         {
+            return new Dimension(Integer.parseInt(split[0]),
+              Integer.parseInt(split[1]));
+         }
+      }
+      catch (IOException | NumberFormatException e)
+      {
+      }
+
+      return null;
+   }
+
+   /**
+    * Adds a copy of the given image file to the cache. This may be
+    * called by image worker threads. The file is copied to a
+    * temporary file in the cache directory first and then moved
+    * into place, so a partially written file will never be found.
+    */
+   public void put(String key, String ext, File src, Dimension dim)
+     throws IOException
+   {
+      Path dirPath = dir.toPath();
+
+      if (dim != null)
+      {
+         Path tmp = Files.createTempFile(dirPath, key, TMP_EXT);
+
+         Files.write(tmp, String.format("%d %d%n", dim.width, dim.height)
+           .getBytes(StandardCharsets.US_ASCII));
+
+         move(tmp, dirPath.resolve(key+"."+ext+DIM_EXT));
+      }
+
+      Path tmp = Files.createTempFile(dirPath, key, TMP_EXT);
+
+      Files.copy(src.toPath(), tmp, StandardCopyOption.REPLACE_EXISTING);
+
+      move(tmp, dirPath.resolve(key+"."+ext));
+
+      synchronized (this)
+      {
+         addedCount++;
+      }
+   }
+
+   private void move(Path src, Path dest) throws IOException
+   {
+      try
+      {
+         Files.move(src, dest, StandardCopyOption.ATOMIC_MOVE);
+      }
+      catch (AtomicMoveNotSupportedException e)
+      {
+         Files.move(src, dest, StandardCopyOption.REPLACE_EXISTING);
+      }
+   }
+
+   /**
+    * Removes the least recently used entries until the total size
+    * of the cache is no more than the given number of bytes.
+    * Leftover temporary files are also removed.
+    */
+   public synchronized void prune(long maxBytes)
+   {
+      File[] files = dir.listFiles();
+
+      if (files == null) return;
+
+      long total = 0L;
+
+      for (File file : files)
+      {
+         if (file.getName().endsWith(TMP_EXT))
+         {
+            file.delete();
+         }
+         else
+         {
+            total += file.length();
+         }
+      }
+
+      if (total <= maxBytes) return;
+
+      Arrays.sort(files, new Comparator<File>()
+       {
+          @Override
+          public int compare(File f1, File f2)
+          {
+             return Long.compare(f1.lastModified(), f2.lastModified());
+          }
+       });
+
+      for (File file : files)
+      {
+         if (total <= maxBytes) break;
+
+         String name = file.getName();
+
+         if (name.endsWith(DIM_EXT) || name.endsWith(TMP_EXT))
+         {
+            continue;
+         }
+
+         long size = file.length();
+
+         if (file.delete())
+         {
+            total -= size;
+            removedCount++;
+
+            File dimFile = new File(dir, name+DIM_EXT);
+
+            size = dimFile.length();
+
+            if (dimFile.delete())
+            {
+               total -= size;
+            }
+         }
+      }
+   }
+
+   public synchronized int getHitCount()
+   {
+      return hitCount;
+   }
+
+   public synchronized int getMissCount()
+   {
+      return missCount;
+   }
+
+   public synchronized int getAddedCount()
+   {
+      return addedCount;
+   }
+
+   public synchronized int getRemovedCount()
+   {
+      return removedCount;
+   }
+
+   @Override
+   public String toString()
+   {
+      return dir.toString();
+   }
+
+   private File dir;
+
+   private int hitCount = 0, missCount = 0, addedCount = 0,
+     removedCount = 0;
+
+   public static final String DIM_EXT = ".dim";
+   public static final String TMP_EXT = ".tmp";
+   private static final String HEX_DIGITS = "0123456789abcdef";
+}
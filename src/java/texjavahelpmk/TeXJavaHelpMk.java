@@ -26,6 +26,12 @@ import java.util.Map;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
 import java.io.*;
 
 import java.nio.file.*;
@@ -60,6 +66,15 @@ public class TeXJavaHelpMk extends CLITeXAppAdapter
         "texjavahelpmk");
    }
 
+   @Override
+   public void initialiseHelpAndParse(String[] args)
+     throws IOException,InvalidSyntaxException
+   {
+      cliArgs = args;
+
+      super.initialiseHelpAndParse(args);
+   }
+
    @Override
    protected void parseNoSwitchCLIArg(String arg)
      throws InvalidSyntaxException
@@ -119,6 +134,9 @@ public class TeXJavaHelpMk extends CLITeXAppAdapter
        || arg.equals("--output") || arg.equals("-o")
        || arg.equals("--out-charset")
        || arg.equals("--pdf-to-image-converter")
+       || arg.equals("--image-jobs")
+       || arg.equals("--image-cache")
+       || arg.equals("--image-cache-limit")
        || arg.equals("--image-dest")
        || arg.equals("--image-preamble")
        || arg.equals("--image-preamble-from-file")
@@ -174,6 +192,14 @@ public class TeXJavaHelpMk extends CLITeXAppAdapter
       {
          breadcrumbtrail = true;
       }
+      else if (arg.equals("--nocheck-up-to-date"))
+      {
+         checkUpToDate = false;
+      }
+      else if (arg.equals("--check-up-to-date"))
+      {
+         checkUpToDate = true;
+      }
       else if (arg.equals("--nominitoc"))
       {
          minitoc = false;
@@ -523,6 +549,34 @@ public class TeXJavaHelpMk extends CLITeXAppAdapter
       {
          imageConverter = returnVals[0].toString();
       }
+      else if (cliParser.isIntArg(arg, "--image-jobs", returnVals))
+      {
+         imageJobs = returnVals[0].intValue();
+
+         if (imageJobs < 1)
+         {
+            imageJobs = Runtime.getRuntime().availableProcessors();
+         }
+      }
+      else if (cliParser.isArg(arg, "--image-cache", returnVals))
+      {
+         String dir = returnVals[0].toString();
+
+         if (dir.isEmpty())
+         {
+            imageCacheDir = null;
+         }
+         else
+         {
+            imageCacheDir = new File(dir);
+         }
+      }
+      else if (cliParser.isIntArg(arg, "--image-cache-limit", returnVals))
+      {
+         // megabytes
+
+         imageCacheLimit = 1024L * 1024L * returnVals[0].intValue();
+      }
       else if (cliParser.isArg(arg, "--image-dest", returnVals))
       {
          String dir = returnVals[0].toString();
@@ -606,6 +660,7 @@ public class TeXJavaHelpMk extends CLITeXAppAdapter
       System.out.println();
       printSyntaxItem(getMessage("syntax.general"));
       printSyntaxItem(getMessage("syntax.in", "--in", "-i", getApplicationName()));
+      printSyntaxItem(getMessage("syntax.check_up_to_date", "--[no]check-up-to-date"));
       System.out.println();
       printSyntaxItem(getMessage("syntax.output.options"));
       System.out.println();
@@ -618,6 +673,11 @@ public class TeXJavaHelpMk extends CLITeXAppAdapter
          "--image-preamble-from-file"));
       printSyntaxItem(getMessage("syntax.pdf-to-image-converter",
         "--pdf-to-image-converter", imageConverter));
+      printSyntaxItem(getMessage("syntax.image-jobs", "--image-jobs",
+        Runtime.getRuntime().availableProcessors()));
+      printSyntaxItem(getMessage("syntax.image-cache", "--image-cache"));
+      printSyntaxItem(getMessage("syntax.image-cache-limit",
+        "--image-cache-limit"));
       System.out.println();
       printSyntaxItem(getMessage("syntax.html.options"));
       System.out.println();
@@ -756,8 +816,127 @@ public class TeXJavaHelpMk extends CLITeXAppAdapter
       return outDir;
    }
 
+   /**
+    * Gets the directory used to store the build data for the
+    * up-to-date check. This is in the same directory as the input
+    * file and is named after the input file's base name.
+    */
+   public File getBuildDataDirectory()
+   {
+      String jobname = inFile.getName();
+
+      int idx = jobname.lastIndexOf('.');
+
+      if (idx > 0)
+      {
+         jobname = jobname.substring(0, idx);
+      }
+
+      return new File(inFile.getAbsoluteFile().getParentFile(),
+        jobname+".tjhmk");
+   }
+
+   /**
+    * Gets the PDF file created by LaTeX from the input file. This
+    * changes whenever the document is rebuilt by LaTeX, so it isn't
+    * treated as an input.
+    */
+   protected File getJobPdfFile()
+   {
+      String pdfName = getBuildDataDirectory().getName();
+      pdfName = pdfName.substring(0, pdfName.lastIndexOf('.'))+".pdf";
+
+      return new File(inFile.getAbsoluteFile().getParentFile(), pdfName);
+   }
+
+   /**
+    * Creates the manifest of the current inputs. The settings hash
+    * is obtained from the command line arguments. Files supplied to
+    * options such as --head-from-file are also included as inputs.
+    */
+   protected TJHBuildManifest createBuildManifest(TJHBuildManifest previous)
+   throws IOException
+   {
+      String[] args = cliArgs == null ? new String[0] : cliArgs;
+
+      TJHBuildManifest manifest = new TJHBuildManifest(
+        TeXJavaHelpLib.VERSION, TeXImageCache.computeKey((Object[])args));
+
+      File inDir = inFile.getAbsoluteFile().getParentFile();
+
+      manifest.addInputs(inDir, previous, outDir, getBuildDataDirectory(),
+        imageCacheDir, getJobPdfFile());
+
+      for (int i = 0; i < args.length; i++)
+      {
+         String arg = args[i];
+         String value = null;
+
+         int idx = arg.indexOf('=');
+
+         if (idx > 0)
+         {
+            value = arg.substring(idx+1);
+            arg = arg.substring(0, idx);
+         }
+         else if (i < args.length-1)
+         {
+            value = args[i+1];
+         }
+
+         if (value != null
+               && (arg.endsWith("-from-file") || arg.equals("--cover-image")))
+         {
+            File file = new File(value).getAbsoluteFile();
+
+            if (file.isFile())
+            {
+               manifest.addInput(inDir, file, previous);
+            }
+         }
+      }
+
+      return manifest;
+   }
+
    protected void run() throws IOException
    {
+      TJHBuildManifest buildManifest = null;
+      File buildManifestFile = null;
+
+      if (checkUpToDate)
+      {
+         File buildDir = getBuildDataDirectory();
+         buildManifestFile = new File(buildDir, "manifest.txt");
+
+         if (imageCacheDir == null)
+         {
+            imageCacheDir = new File(buildDir, "images");
+         }
+
+         if (getKpsewhichCacheFile() == null)
+         {
+            setKpsewhichCacheFile(new File(buildDir, "kpsewhich.txt"));
+         }
+
+         TJHBuildManifest previous = TJHBuildManifest.read(buildManifestFile);
+
+         buildManifest = createBuildManifest(previous);
+
+         if (buildManifest.isUpToDate(previous, outDir))
+         {
+            message(getMessageWithFallback("message.up_to_date",
+              "{0} is up to date", outDir));
+
+            return;
+         }
+
+         // Remove the old manifest so that a failed build can't be
+         // mistaken for a successful one.
+
+         Files.deleteIfExists(buildManifestFile.toPath());
+      }
+
       TJHListener listener = new TJHListener(this, outCharset, docTargetType);
 
       if (extraCss != null)
@@ -800,6 +979,11 @@ public class TeXJavaHelpMk extends CLITeXAppAdapter
          listener.setImageDest(imageDir.toPath());
       }
 
+      if (imageCacheDir != null && convertImages)
+      {
+         imageCache = new TeXImageCache(imageCacheDir);
+      }
+
       TeXParser parser = new TeXParser(listener);
 
       openLogWriter(parser, outCharset);
@@ -815,9 +999,43 @@ public class TeXJavaHelpMk extends CLITeXAppAdapter
          }
 
          parser.parse(inFile);
+
+         if (buildManifest != null && getExitCode() == 0)
+         {
+            // The inputs are checked again in case any were
+            // created or modified during the build.
+
+            buildManifest = createBuildManifest(buildManifest);
+            buildManifest.addOutputs(outDir);
+            buildManifest.write(buildManifestFile);
+         }
       }
       finally
       {
+         shutdownImageJobs();
+
+         try
+         {
+            listener.discardSearchData();
+         }
+         catch (IOException e)
+         {
+            getHelpLib().debug(e);
+         }
+
+         if (imageCache != null)
+         {
+            if (imageCacheLimit > 0)
+            {
+               imageCache.prune(imageCacheLimit);
+            }
+
+            message(getMessageWithFallback("message.image_cache_stats",
+             "Image cache {0}: {1} hit(s), {2} miss(es), {3} added, {4} removed",
+             imageCache, imageCache.getHitCount(), imageCache.getMissCount(),
+             imageCache.getAddedCount(), imageCache.getRemovedCount()));
+         }
+
          if (deleteTempDirOnExit)
          {
             deleteTempDir();
@@ -845,6 +1063,75 @@ public class TeXJavaHelpMk extends CLITeXAppAdapter
          name = String.format((Locale)null, "img%06d", nameIdx);
       }
 
+      String invoker;
+
+      if (listener.isStyLoaded("fontspec"))
+      {
+         invoker = "lualatex";
+      }
+      else
+      {
+         invoker = "pdflatex";
+      }
+
+      if (mimetype == null)
+      {
+         mimetype = L2HConverter.MIME_TYPE_PNG;
+      }
+
+      Path outPath = outDir.toPath();
+
+      if (relPath != null)
+      {
+         outPath = outPath.resolve(relPath);
+      }
+
+      String graphicsPath = null;
+      String[] grpaths = listener.getGraphicsPaths();
+
+      if (grpaths != null)
+      {
+         StringBuilder builder = new StringBuilder("\\graphicspath{");
+
+         Path basePath = inFile.getAbsoluteFile().getParentFile().toPath();
+         String basePathStr = basePath.toString();
+
+         if (File.separatorChar != '/')
+         {
+            basePathStr = basePathStr.replaceAll("/", File.separator);
+         }
+
+         if (!basePathStr.endsWith("/"))
+         {
+            basePathStr += "/";
+         }
+
+         for (int i = 0; i < grpaths.length; i++)
+         {
+            builder.append(String.format("{%s%s}", basePathStr, grpaths[i]));
+         }
+
+         builder.append("}");
+
+         graphicsPath = builder.toString();
+      }
+
+      String cacheKey = null;
+
+      if (imageCache != null)
+      {
+         cacheKey = TeXImageCache.computeKey(preamble, graphicsPath, content,
+           mimetype, crop, invoker, imageConverter);
+
+         L2HImage cachedImage = getCachedImage(parser, cacheKey, mimetype,
+           alt, name, crop, outPath);
+
+         if (cachedImage != null)
+         {
+            return cachedImage;
+         }
+      }
+
       Charset charset = listener.getCharSet();
       L2HImage image = null;
       PrintWriter writer = null;
@@ -867,31 +1154,9 @@ public class TeXJavaHelpMk extends CLITeXAppAdapter
          writer.println("\\batchmode");
          writer.println(preamble);
 
-         String[] grpaths = listener.getGraphicsPaths();
-
-         if (grpaths != null)
+         if (graphicsPath != null)
          {
-            writer.print("\\graphicspath{");
-
-            Path basePath = inFile.getAbsoluteFile().getParentFile().toPath();
-            String basePathStr = basePath.toString();
-
-            if (File.separatorChar != '/')
-            {
-               basePathStr = basePathStr.replaceAll("/", File.separator);
-            }
-
-            if (!basePathStr.endsWith("/"))
-            {
-               basePathStr += "/";
-            }
-
-            for (int i = 0; i < grpaths.length; i++)
-            {
-               writer.format("{%s%s}", basePathStr, grpaths[i]);
-            }
-
-            writer.println("}");
+            writer.println(graphicsPath);
          }
 
          writer.println("\\begin{document}");
@@ -901,17 +1166,6 @@ public class TeXJavaHelpMk extends CLITeXAppAdapter
          writer.close();
          writer = null;
 
-         String invoker;
-
-         if (listener.isStyLoaded("fontspec"))
-         {
-            invoker = "lualatex";
-         }
-         else
-         {
-            invoker = "pdflatex";
-         }
-
          File dir = inFile.getParentFile();
 
          if (dir == null)
@@ -919,73 +1173,36 @@ public class TeXJavaHelpMk extends CLITeXAppAdapter
             dir = new File(".");
          }
 
-         if (isDebuggingOn())
-         {
-            getHelpLib().debug(getMessageWithFallback("message.running",
-              "Running {0}",
-               String.format("%s -jobname \"%s\" \"%s\"", invoker, name, file.getName())));
-         }
-         
-         ProcessBuilder pb = new ProcessBuilder(invoker, "-jobname", name, file.getName());
+         ImageJob job = new ImageJob(parser, name, file, invoker, dir, crop);
+         job.setCacheKey(cacheKey);
 
-         pb.directory(tmpDir);
+         if (imageJobs > 1
+              && (mimetype.equals(L2HConverter.MIME_TYPE_PNG)
+               || mimetype.equals(L2HConverter.MIME_TYPE_JPEG)))
+         {
+            File imageFile = new File(outPath.toFile(), name
+              + (mimetype.equals(L2HConverter.MIME_TYPE_PNG) ? ".png" : ".jpeg"));
 
-         Map<String,String> env = pb.environment();
-         env.put("TEXINPUTS", String.format("%s%c",
-              dir.getAbsolutePath(), File.pathSeparatorChar));
+            job.setImageFile(imageFile);
 
-         Process process = pb.start();
-         int processExitCode = process.waitFor();
+            // The image doesn't exist until the job has finished, so
+            // the width and height are omitted. They will be
+            // picked up from the image cache (if enabled) on the next
+            // build.
 
-         if (processExitCode != 0)
-         {
-            setExitCode(TeXJavaHelpLibAppAdapter.EXIT_PROCESS_FAILED);
+            submitImageJob(job);
 
-            throw new IOException(getMessage("error.app_failed",
-              String.format("%s -jobname \"%s\" \"%s\"", invoker, name, file.getName()),
-              processExitCode));
+            return new L2HImage(outDir.toPath().relativize(imageFile.toPath()),
+             mimetype, 0, 0, name, alt, true);
          }
 
-         if (mimetype == null)
-         {
-            mimetype = L2HConverter.MIME_TYPE_PNG;
-         }
+         File pdfFile = runImageJob(job);
+         reportImageJobWarnings(job);
 
-         File pdfFile = new File(tmpDir, name+".pdf");
          File destFile = null;
 
-         if (crop)
-         {
-            invoker = "pdfcrop";
-
-            String croppedPdfName = name+"-crop.pdf";
-
-            processExitCode = getHelpLib().execCommandAndWaitFor(tmpDir,
-               MAX_PROCESS_TIME,
-               invoker, pdfFile.getName(), croppedPdfName);
-
-            if (processExitCode == 0)
-            {
-               pdfFile = new File(tmpDir, croppedPdfName);
-            }
-            else
-            {
-               warning(parser, getMessage("error.app_failed",
-                 String.format("%s \"%s\"", invoker,
-                    pdfFile.getName(), croppedPdfName),
-                 processExitCode));
-            }
-         }
-
          Dimension imageDim = null;
 
-         Path outPath = outDir.toPath();
-
-         if (relPath != null)
-         {
-            outPath = outPath.resolve(relPath);
-         }
-
          boolean isPdf = false;
 
          if (mimetype.equals(L2HConverter.MIME_TYPE_PDF))
@@ -994,17 +1211,17 @@ public class TeXJavaHelpMk extends CLITeXAppAdapter
          }
          else if (mimetype.equals(L2HConverter.MIME_TYPE_PNG))
          {
-            File pngFile = new File(outPath.toFile(), name+".png");
-            pdfToImage(pdfFile, pngFile);
+            destFile = new File(outPath.toFile(), name+".png");
+            pdfToImage(pdfFile, destFile);
 
-            imageDim = getImageFileDimensions(parser, pngFile, mimetype);
+            imageDim = getImageFileDimensions(parser, destFile, mimetype);
          }
          else if (mimetype.equals(L2HConverter.MIME_TYPE_JPEG))
          {
-            File jpegFile = new File(outPath.toFile(), name+".jpeg");
-            pdfToImage(pdfFile, jpegFile);
+            destFile = new File(outPath.toFile(), name+".jpeg");
+            pdfToImage(pdfFile, destFile);
 
-            imageDim = getImageFileDimensions(parser, jpegFile, mimetype);
+            imageDim = getImageFileDimensions(parser, destFile, mimetype);
          }
          else
          {
@@ -1052,6 +1269,20 @@ public class TeXJavaHelpMk extends CLITeXAppAdapter
 
          image = new L2HImage(outDir.toPath().relativize(destFile.toPath()),
           mimetype, width, height, name, alt, true);
+
+         if (cacheKey != null)
+         {
+            if (isPdf)
+            {
+               addToImageCache(cacheKey, new File(outPath.toFile(), name+".png"),
+                 imageDim);
+               addToImageCache(cacheKey, destFile, null);
+            }
+            else
+            {
+               addToImageCache(cacheKey, destFile, imageDim);
+            }
+         }
       }
       finally
       {
@@ -1064,6 +1295,308 @@ public class TeXJavaHelpMk extends CLITeXAppAdapter
       return image;
    }
 
+   /**
+    * Copies the cached image to the output directory.
+    * @return the image or null if not found in the cache
+    */
+   protected L2HImage getCachedImage(TeXParser parser, String cacheKey,
+     String mimetype, TeXObject alt, String name, boolean crop,
+     Path outPath)
+   throws IOException
+   {
+      String ext;
+
+      if (mimetype.equals(L2HConverter.MIME_TYPE_PNG))
+      {
+         ext = "png";
+      }
+      else if (mimetype.equals(L2HConverter.MIME_TYPE_JPEG))
+      {
+         ext = "jpeg";
+      }
+      else if (mimetype.equals(L2HConverter.MIME_TYPE_PDF))
+      {
+         ext = "pdf";
+      }
+      else
+      {
+         return null;
+      }
+
+      File cachedFile = imageCache.get(cacheKey, ext);
+
+      if (cachedFile == null)
+      {
+         return null;
+      }
+
+      File destFile = new File(outPath.toFile(), name+"."+ext);
+
+      int width = 0;
+      int height = 0;
+
+      if (ext.equals("pdf"))
+      {
+         File cachedPngFile = imageCache.get(cacheKey, "png");
+
+         if (cachedPngFile == null)
+         {
+            return null;
+         }
+
+         File pngFile = new File(outPath.toFile(), name+".png");
+
+         copyFile(cachedPngFile, pngFile);
+
+         Dimension imageDim = imageCache.getDimension(cacheKey, "png");
+
+         if (crop && imageDim != null)
+         {
+            width = imageDim.width;
+            height = imageDim.height;
+         }
+
+         alt = new L2HImage(pngFile.toPath(), 
+           L2HConverter.MIME_TYPE_PNG, 
+           imageDim == null ? 0 : imageDim.width,
+           imageDim == null ? 0 : imageDim.height,
+           name, alt, true);  
+      }
+      else
+      {
+         Dimension imageDim = imageCache.getDimension(cacheKey, ext);
+
+         if (imageDim != null)
+         {
+            width = imageDim.width;
+            height = imageDim.height;
+         }
+      }
+
+      copyFile(cachedFile, destFile);
+
+      return new L2HImage(outDir.toPath().relativize(destFile.toPath()),
+        mimetype, width, height, name, alt, true);
+   }
+
+   /**
+    * Adds the image file to the image cache. Failure to cache the
+    * image isn't considered an error.
+    */
+   protected void addToImageCache(String cacheKey, File file, Dimension dim)
+   {
+      String name = file.getName();
+      String ext = name.substring(name.lastIndexOf('.')+1);
+
+      try
+      {
+         imageCache.put(cacheKey, ext, file, dim);
+      }
+      catch (IOException e)
+      {
+         getHelpLib().debug(e);
+      }
+   }
+
+   /**
+    * Runs LaTeX (and pdfcrop, if required) on the job's temporary
+    * file and converts the result to an image if the job has an
+    * image file set. This may be called from an image worker thread,
+    * so any warnings are added to the job rather than written
+    * directly.
+    * @return the PDF file
+    */
+   protected File runImageJob(ImageJob job)
+     throws IOException,InterruptedException
+   {
+      String invoker = job.getInvoker();
+      String name = job.getName();
+      File file = job.getTeXFile();
+
+      if (isDebuggingOn())
+      {
+         getHelpLib().debugMessage("message.running",
+           "Running {0}",
+            String.format("%s -jobname \"%s\" \"%s\"", invoker, name, file.getName()));
+      }
+      
+      ProcessBuilder pb = new ProcessBuilder(invoker, "-jobname", name, file.getName());
+
+      pb.directory(tmpDir);
+
+      Map<String,String> env = pb.environment();
+      env.put("TEXINPUTS", String.format("%s%c",
+           job.getTeXInputsDir().getAbsolutePath(), File.pathSeparatorChar));
+
+      Process process = pb.start();
+      int processExitCode = process.waitFor();
+
+      if (processExitCode != 0)
+      {
+         setExitCode(TeXJavaHelpLibAppAdapter.EXIT_PROCESS_FAILED);
+
+         throw new IOException(getMessage("error.app_failed",
+           String.format("%s -jobname \"%s\" \"%s\"", invoker, name, file.getName()),
+           processExitCode));
+      }
+
+      File pdfFile = new File(tmpDir, name+".pdf");
+
+      if (job.isCropOn())
+      {
+         invoker = "pdfcrop";
+
+         String croppedPdfName = name+"-crop.pdf";
+
+         processExitCode = getHelpLib().execCommandAndWaitFor(tmpDir,
+            MAX_PROCESS_TIME,
+            invoker, pdfFile.getName(), croppedPdfName);
+
+         if (processExitCode == 0)
+         {
+            pdfFile = new File(tmpDir, croppedPdfName);
+         }
+         else
+         {
+            job.addWarning(getMessage("error.app_failed",
+              String.format("%s \"%s\"", invoker,
+                 pdfFile.getName(), croppedPdfName),
+              processExitCode));
+         }
+      }
+
+      File imageFile = job.getImageFile();
+
+      if (imageFile != null)
+      {
+         pdfToImage(pdfFile, imageFile);
+
+         Dimension dim = null;
+
+         try
+         {
+            dim = getImageDimensionReader().getDimension(imageFile);
+         }
+         catch (IOException e)
+         {
+            getHelpLib().debug(e);
+         }
+
+         if (job.getCacheKey() != null)
+         {
+            addToImageCache(job.getCacheKey(), imageFile, dim);
+         }
+      }
+
+      return pdfFile;
+   }
+
+   protected void submitImageJob(final ImageJob job)
+   {
+      if (imageExecutor == null)
+      {
+         imageExecutor = Executors.newFixedThreadPool(imageJobs);
+         pendingImageJobs = new Vector<ImageJob>();
+      }
+
+      job.setFuture(imageExecutor.submit(new Callable<File>()
+       {
+          @Override
+          public File call() throws IOException,InterruptedException
+          {
+             return runImageJob(job);
+          }
+       }));
+
+      pendingImageJobs.add(job);
+   }
+
+   protected void reportImageJobWarnings(ImageJob job)
+   {
+      Vector<String> warnings = job.getWarnings();
+
+      if (warnings != null)
+      {
+         for (String msg : warnings)
+         {
+            logAndStdErrMessage(String.format("%s%n", job.formatMessage(msg)));
+         }
+      }
+   }
+
+   /**
+    * Waits for all outstanding image jobs to finish. This needs to
+    * be done before the manifest is finalised. Any failures are
+    * reported against the location of the code that created the
+    * image.
+    */
+   public void waitForImageJobs() throws IOException
+   {
+      if (pendingImageJobs == null || pendingImageJobs.isEmpty())
+      {
+         return;
+      }
+
+      if (isDebuggingOn())
+      {
+         getHelpLib().debugMessage("message.waiting_for_images",
+           "Waiting for {0} image(s)", pendingImageJobs.size());
+      }
+
+      try
+      {
+         for (ImageJob job : pendingImageJobs)
+         {
+            try
+            {
+               job.getFuture().get();
+            }
+            catch (ExecutionException e)
+            {
+               Throwable cause = e.getCause();
+
+               setExitCode(TeXJavaHelpLibAppAdapter.EXIT_PROCESS_FAILED);
+
+               error(job.formatMessage(cause.getMessage()), cause);
+            }
+
+            reportImageJobWarnings(job);
+         }
+      }
+      catch (InterruptedException e)
+      {
+         throw new IOException(getMessage("error.interrupted"), e);
+      }
+      finally
+      {
+         pendingImageJobs.clear();
+      }
+   }
+
+   /**
+    * Stops the image worker threads. Any jobs that haven't finished
+    * are cancelled.
+    */
+   protected void shutdownImageJobs()
+   {
+      if (imageExecutor != null)
+      {
+         imageExecutor.shutdownNow();
+
+         try
+         {
+            imageExecutor.awaitTermination(MAX_PROCESS_TIME,
+              TimeUnit.MILLISECONDS);
+         }
+         catch (InterruptedException e)
+         {
+            getHelpLib().debug(e);
+         }
+
+         imageExecutor = null;
+      }
+   }
+
    protected void pdfToImage(File pdfFile, File destFile)
      throws IOException,InterruptedException
    {
@@ -1077,8 +1610,8 @@ public class TeXJavaHelpMk extends CLITeXAppAdapter
 
          if (idx > -1)
          {
-            name = name.substring(0, idx);
             ext = name.substring(idx+1);
+            name = name.substring(0, idx);
          }
 
          File tmpFile = pdfToImage(pdfFile, name, ext);
@@ -1192,6 +1725,8 @@ public class TeXJavaHelpMk extends CLITeXAppAdapter
          app.error(null, e);
       }
 
+      app.saveKpsewhichCache();
+
       System.exit(app.getExitCode());
    }
 
@@ -1199,11 +1734,13 @@ public class TeXJavaHelpMk extends CLITeXAppAdapter
    private boolean mathJax = false;
    private boolean useUnicodeSubSupScript = false;
 
-   private File inFile, outDir, imageDir;
+   private File inFile, outDir, imageDir, imageCacheDir;
    private int splitLevel=8;
    private Charset outCharset;
 
    private boolean convertImages = true;
+   private boolean checkUpToDate = false;
+   private String[] cliArgs;
    private boolean splitUseBaseNamePrefix = false;
    private DocumentTargetType docTargetType = DocumentTargetType.HELPSET;
    private boolean breadcrumbtrail = false;
@@ -1232,6 +1769,12 @@ public class TeXJavaHelpMk extends CLITeXAppAdapter
    private String imageConverter = "magick";
 
    private int nameIdx=0;
+
+   private int imageJobs = Runtime.getRuntime().availableProcessors();
+   private TeXImageCache imageCache = null;
+   private long imageCacheLimit = 0L;
+   private ExecutorService imageExecutor;
+   private Vector<ImageJob> pendingImageJobs;
    
    private String extraHead=null;
    private String extraCss=null;
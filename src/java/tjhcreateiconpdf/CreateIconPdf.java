@@ -23,6 +23,7 @@ import java.io.*;
 import java.nio.file.Files;
 import java.nio.charset.Charset;
 
+import java.util.LinkedHashMap;
 import java.util.Locale;
 import java.util.Vector;
 
@@ -41,7 +42,9 @@ import com.dickimawbooks.texparserlib.latex2latex.LaTeX2LaTeX;
  * Creates a PDF with each icon image as a separate page. This
  * is designed to allow texjavahelp.sty to include an application icon in the
  * documentation without having to copy all the icon images into the
- * graphics path.
+ * graphics path. Optionally, the icons can also be packed into a
+ * single PNG image with a map file (an icon atlas), which
+ * TeXJavaHelpLib can load instead of the individual icon images.
  */
 public class CreateIconPdf extends CLITeXAppAdapter
 {
@@ -142,6 +145,8 @@ public class CreateIconPdf extends CLITeXAppAdapter
 
       printSyntaxItem(getMessage("syntax.out", "--out-dir", "-o"));
 
+      printSyntaxItem(getMessage("syntax.atlas-dir", "--atlas-dir", "-a"));
+
       System.out.println();
       System.out.println(getMessage("clisyntax.other.options"));
       System.out.println();
@@ -162,6 +167,7 @@ public class CreateIconPdf extends CLITeXAppAdapter
        || arg.equals("--size") || arg.equals("-s")
        || arg.equals("--base") || arg.equals("-b")
        || arg.equals("--resource-path") || arg.equals("-p")
+       || arg.equals("--atlas-dir") || arg.equals("-a")
          )
       {
          return 1;
@@ -242,6 +248,28 @@ public class CreateIconPdf extends CLITeXAppAdapter
                getMessage("error.syntax.not_directory", outDir));
          }
       }
+      else if (cliParser.isArg(arg, "-a", "--atlas-dir", returnVals))
+      {
+         if (atlasDir != null)
+         {
+            throw new InvalidSyntaxException(
+              getMessage("error.clisyntax.only_one", arg));
+         }
+
+         if (returnVals[0] == null)
+         {
+            throw new InvalidSyntaxException(
+               getMessage("error.clisyntax.missing_value", arg));
+         }
+
+         atlasDir = new File(returnVals[0].toString());
+
+         if (!atlasDir.isDirectory())
+         {
+            throw new InvalidSyntaxException(
+               getMessage("error.syntax.not_directory", atlasDir));
+         }
+      }
       else if (cliParser.isArg(arg, "-s", "--size", returnVals))
       {
          if (returnVals[0] == null)
@@ -324,6 +352,34 @@ public class CreateIconPdf extends CLITeXAppAdapter
 
       pdfFile = new File(outDir, basename + "-" +sizeVal + ".pdf");
       mapFile = new File(outDir, basename + "-" +sizeVal + ".def");
+
+      if (atlasDir != null)
+      {
+         atlasImageFile = new File(atlasDir, basename + "-" +sizeVal + "-atlas.png");
+         atlasMapFile = new File(atlasDir, basename + "-" +sizeVal + "."
+           + IconAtlas.ATLAS_MAP_EXT);
+      }
+   }
+
+   /**
+    * Packs the icons into a single image and writes the atlas map.
+    */
+   protected void writeAtlas() throws IOException
+   {
+      LinkedHashMap<String,File> files = new LinkedHashMap<String,File>();
+
+      for (TJHIconFile icf : imageFiles)
+      {
+         files.put(icf.toImageFileName(), icf.getTeXPath().getFile());
+      }
+
+      int count = IconAtlas.write(files, atlasImageFile, atlasMapFile);
+
+      if (isDebuggingOn())
+      {
+         getHelpLib().debugMessage("message.atlas_written",
+           "Written icon atlas {0} ({1} icons)", atlasMapFile, count);
+      }
    }
 
    protected void addImageFile(File file)
@@ -446,9 +502,9 @@ public class CreateIconPdf extends CLITeXAppAdapter
 
          if (isDebuggingOn())
          {
-            getHelpLib().debug(getMessageWithFallback("message.running",
+            getHelpLib().debugMessage("message.running",
               "Running {0}",
-               String.format("%s \"%s\"", invoker, file.getName())));
+               String.format("%s \"%s\"", invoker, file.getName()));
          }
 
          ProcessBuilder pb = new ProcessBuilder(invoker, file.getName());
@@ -486,6 +542,11 @@ public class CreateIconPdf extends CLITeXAppAdapter
 
          writer.close();
          writer = null;
+
+         if (atlasDir != null)
+         {
+            writeAtlas();
+         }
       }
       finally
       {
@@ -521,6 +582,8 @@ public class CreateIconPdf extends CLITeXAppAdapter
          app.error(null, e);
       }
 
+      app.saveKpsewhichCache();
+
       System.exit(app.getExitCode());
    }
 
@@ -532,6 +595,7 @@ public class CreateIconPdf extends CLITeXAppAdapter
    protected File outDir;
    protected File pdfFile;
    protected File mapFile;
+   protected File atlasDir, atlasImageFile, atlasMapFile;
    protected boolean keepDocSrc = false;
    protected Vector<String> inFileNames;
    protected Vector<TJHIconFile> imageFiles;
@@ -0,0 +1,375 @@
+/*
+    Copyright (C) 2026 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+
+package com.dickimawbooks.tjhflattendocsrc;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Vector;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.dickimawbooks.texjavahelplib.TeXJavaHelpLib;
+
+/**
+ * Copies files in the background while the document is parsed.
+ * Each destination is only copied once. If the same destination is
+ * requested again from a different source with the same content,
+ * the request is ignored. A destination that already has the same
+ * size and modification time as the source, or the same content,
+ * isn't copied again. The modification time is retained when a
+ * file is copied, so unchanged files can be identified without
+ * reading them on later runs.
+ */
+public class CopyQueue
+{
+   public CopyQueue(FlattenDocSrc app, int jobs)
+   {
+      this.app = app;
+      executor = Executors.newFixedThreadPool(Math.max(1, jobs));
+      requests = new HashMap<Path,CopyRequest>();
+      futures = new Vector<Future<Boolean>>();
+      startTime = System.nanoTime();
+   }
+
+   /**
+    * Queues a copy of the source file to the destination file.
+    */
+   public synchronized void add(File src, File dest) throws IOException
+   {
+      if (executor == null)
+      {
+         throw new IllegalStateException("Copy queue has already been joined");
+      }
+
+      Path destPath = dest.toPath().toAbsolutePath().normalize();
+      Path srcPath = src.toPath().toAbsolutePath().normalize();
+
+      CopyRequest previous = requests.get(destPath);
+
+      if (previous != null)
+      {
+         if (previous.src.equals(srcPath)
+              || Arrays.equals(getHash(previous.src), getHash(srcPath)))
+         {
+            duplicateCount++;
+            return;
+         }
+
+         // A different file is being copied to the same destination.
+         // The last one wins, as when the files were copied in turn.
+
+         app.warning(null, app.getMessageWithFallback(
+           "warning.copy_conflict",
+           "Replacing {0} (copied from {1}) with {2}",
+           dest, previous.src, srcPath));
+      }
+
+      final CopyRequest request = new CopyRequest(srcPath, destPath, previous);
+
+      requests.put(destPath, request);
+
+      request.future = executor.submit(new Callable<Boolean>()
+       {
+          @Override
+          public Boolean call() throws IOException
+          {
+             return Boolean.valueOf(copy(request));
+          }
+       });
+
+      futures.add(request.future);
+   }
+
+   /**
+    * Copies the file unless the destination is already identical.
+    * @return true if the file was copied
+    */
+   protected boolean copy(CopyRequest request) throws IOException
+   {
+      if (request.previous != null)
+      {
+         // Wait for the earlier copy to the same destination. Any
+         // failure is reported by the earlier request.
+
+         try
+         {
+            getResult(request.previous.future);
+         }
+         catch (IOException e)
+         {
+         }
+      }
+
+      final Path src = request.src;
+      final Path dest = request.dest;
+
+      TeXJavaHelpLib helpLib = app.getHelpLib();
+
+      if (Files.exists(dest) && isIdentical(src, dest))
+      {
+         if (helpLib.isDebuggingOn())
+         {
+            helpLib.debug(String.format("%s unchanged", dest));
+         }
+
+         return false;
+      }
+
+      Path dir = dest.getParent();
+
+      if (dir != null && !Files.exists(dir))
+      {
+         if (helpLib.isDebuggingOn())
+         {
+            helpLib.debug(String.format("mkdir %s", dir));
+         }
+
+         Files.createDirectories(dir);
+      }
+
+      if (helpLib.isDebuggingOn())
+      {
+         helpLib.debug(String.format("%s -> %s", src, dest));
+      }
+
+      Files.copy(src, dest, StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.COPY_ATTRIBUTES);
+
+      synchronized (this)
+      {
+         bytesCopied += Files.size(dest);
+      }
+
+      return true;
+   }
+
+   protected boolean isIdentical(Path src, Path dest) throws IOException
+   {
+      if (Files.size(src) != Files.size(dest))
+      {
+         return false;
+      }
+
+      if (Files.getLastModifiedTime(src).equals(Files.getLastModifiedTime(dest)))
+      {
+         return true;
+      }
+
+      if (Arrays.equals(getHash(src), computeHash(dest)))
+      {
+         // Update the modification time so that the file doesn't
+         // need to be read next time.
+
+         Files.setLastModifiedTime(dest, Files.getLastModifiedTime(src));
+
+         return true;
+      }
+
+      return false;
+   }
+
+   /**
+    * Gets the SHA-256 hash of the given source file's content. The
+    * hash is remembered, as the source files don't change.
+    */
+   protected byte[] getHash(Path path) throws IOException
+   {
+      byte[] hash;
+
+      synchronized (hashes)
+      {
+         hash = hashes.get(path);
+      }
+
+      if (hash == null)
+      {
+         hash = computeHash(path);
+
+         synchronized (hashes)
+         {
+            hashes.put(path, hash);
+         }
+      }
+
+      return hash;
+   }
+
+   public static byte[] computeHash(Path path) throws IOException
+   {
+      MessageDigest md;
+
+      try
+      {
+         md = MessageDigest.getInstance("SHA-256");
+      }
+      catch (NoSuchAlgorithmException e)
+      {// shouldn't happen, all platforms must support SHA-256
+         throw new IllegalStateException(e);
+      }
+
+      InputStream in = null;
+
+      try
+      {
+         in = Files.newInputStream(path);
+
+         byte[] buffer = new byte[65536];
+         int n;
+
+         while ((n = in.read(buffer)) != -1)
+         {
+            md.update(buffer, 0, n);
+         }
+      }
+      finally
+      {
+         if (in != null)
+         {
+            in.close();
+         }
+      }
+
+      return md.digest();
+   }
+
+   /**
+    * Waits for all the queued copies to finish and writes a
+    * summary. No further copies may be added. If any copies
+    * failed, the first failure is thrown once all the others have
+    * finished.
+    */
+   public void join() throws IOException
+   {
+      Vector<Future<Boolean>> list;
+
+      synchronized (this)
+      {
+         if (executor == null) return;
+
+         executor.shutdown();
+         executor = null;
+
+         list = futures;
+      }
+
+      IOException failure = null;
+      int copied = 0, unchanged = 0;
+
+      for (Future<Boolean> future : list)
+      {
+         try
+         {
+            if (getResult(future))
+            {
+               copied++;
+            }
+            else
+            {
+               unchanged++;
+            }
+         }
+         catch (IOException e)
+         {
+            if (failure == null)
+            {
+               failure = e;
+            }
+            else
+            {
+               app.logAndStdErrMessage(e.getMessage());
+            }
+         }
+      }
+
+      double secs = (System.nanoTime()-startTime)/1.0e9;
+
+      app.logAndPrintMessage(app.getMessageWithFallback(
+        "message.copy_summary",
+        "Copied {0} file(s) ({1} bytes), skipped {2} unchanged file(s) and {3} duplicate(s) in {4,number,0.00}s",
+        copied, bytesCopied, unchanged, duplicateCount, secs));
+
+      if (failure != null)
+      {
+         throw failure;
+      }
+   }
+
+   private boolean getResult(Future<Boolean> future) throws IOException
+   {
+      try
+      {
+         return future.get().booleanValue();
+      }
+      catch (InterruptedException e)
+      {
+         throw new InterruptedIOException(e.getMessage());
+      }
+      catch (ExecutionException e)
+      {
+         Throwable cause = e.getCause();
+
+         if (cause instanceof IOException)
+         {
+            throw (IOException)cause;
+         }
+
+         throw new IOException(cause);
+      }
+   }
+
+   private FlattenDocSrc app;
+   private ExecutorService executor;
+   private HashMap<Path,CopyRequest> requests;
+   private Vector<Future<Boolean>> futures;
+   private HashMap<Path,byte[]> hashes = new HashMap<Path,byte[]>();
+
+   private long startTime, bytesCopied = 0L;
+   private int duplicateCount = 0;
+}
+
+class CopyRequest
+{
+   CopyRequest(Path src, Path dest, CopyRequest previous)
+   {
+      this.src = src;
+      this.dest = dest;
+      this.previous = previous;
+   }
+
+   Path src, dest;
+   CopyRequest previous;
+   Future<Boolean> future;
+}
@@ -89,6 +89,7 @@ public class FlattenDocSrc extends CLITeXAppAdapter
           || arg.equals("--output") || arg.equals("-o")
           || arg.equals("--out-charset")
           || arg.equals("--image-dest")
+          || arg.equals("--copy-jobs")
          )
       {
          return 1;
@@ -145,6 +146,15 @@ public class FlattenDocSrc extends CLITeXAppAdapter
             imageDir = new File(dir);
          }
       }
+      else if (cliParser.isIntArg(arg, "--copy-jobs", returnVals))
+      {
+         copyJobs = returnVals[0].intValue();
+
+         if (copyJobs < 1)
+         {
+            copyJobs = Runtime.getRuntime().availableProcessors();
+         }
+      }
       else
       {
          return super.parseCLIArg(arg, returnVals);
@@ -204,6 +214,8 @@ public class FlattenDocSrc extends CLITeXAppAdapter
       printSyntaxItem(getMessage("syntax.out", "--output", "-o"));
       printSyntaxItem(getMessage("syntax.out.charset", "--out-charset"));
       printSyntaxItem(getMessage("syntax.out.image-dest", "--image-dest"));
+      printSyntaxItem(getMessage("syntax.out.copy-jobs", "--copy-jobs",
+        Runtime.getRuntime().availableProcessors()));
 
       System.out.println();
       System.out.println(getMessage("clisyntax.other.options"));
@@ -265,6 +277,41 @@ public class FlattenDocSrc extends CLITeXAppAdapter
       return outDir;
    }
 
+   /**
+    * Queues the file to be copied in the background while parsing
+    * continues. The access permissions are checked straight away.
+    */
+   @Override
+   public void copyFile(File src, File dest)
+   throws IOException
+   {
+      if (copyQueue == null)
+      {
+         super.copyFile(src, dest);
+         return;
+      }
+
+      if (!isReadAccessAllowed(src))
+      {
+         throw new IOException(getMessage("message.no.read", src));
+      }
+
+      File destDirFile = dest.getParentFile();
+
+      if (destDirFile != null && !destDirFile.exists()
+            && !isWriteAccessAllowed(destDirFile))
+      {
+         throw new IOException(getMessage("message.no.write", destDirFile));
+      }
+
+      if (!isWriteAccessAllowed(dest))
+      {
+         throw new IOException(getMessage("message.no.write", dest));
+      }
+
+      copyQueue.add(src, dest);
+   }
+
    protected void copyBib2GlsFile(String name, TeXParser parser)
      throws IOException
    {
@@ -404,15 +451,46 @@ public class FlattenDocSrc extends CLITeXAppAdapter
       parser.setCategoryCode(false, '$', CategoryCode.OTHER);
       parser.setCategoryCode(false, '~', CategoryCode.OTHER);
 
+      copyQueue = new CopyQueue(this, copyJobs);
+
+      Throwable parseFailure = null;
+
       try
       {
          parser.parse(inFile);
 
          parseAux();
       }
+      catch (Throwable e)
+      {
+         parseFailure = e;
+         throw e;
+      }
       finally
       {
-         closeLogWriter();
+         try
+         {
+            try
+            {
+               copyQueue.join();
+            }
+            catch (IOException e)
+            {
+               // don't let a copy failure hide the parse failure
+
+               if (parseFailure == null)
+               {
+                  throw e;
+               }
+
+               parseFailure.addSuppressed(e);
+            }
+         }
+         finally
+         {
+            copyQueue = null;
+            closeLogWriter();
+         }
       }
    }
 
@@ -434,6 +512,8 @@ public class FlattenDocSrc extends CLITeXAppAdapter
          app.error(null, e);
       }
 
+      app.saveKpsewhichCache();
+
       System.exit(app.getExitCode());
    }
 
@@ -447,6 +527,9 @@ public class FlattenDocSrc extends CLITeXAppAdapter
    private boolean replaceGraphicsPath = true;
    private boolean graphicsUseKpsewhich = false;
 
+   private int copyJobs = Runtime.getRuntime().availableProcessors();
+   private CopyQueue copyQueue;
+
    public static final String NAME = "tjhflattendocsrc";
 }
 
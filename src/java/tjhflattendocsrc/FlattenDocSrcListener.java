@@ -116,6 +116,22 @@ public class FlattenDocSrcListener extends LaTeX2LaTeX
          }
          else
          {
+            if (graphicsUseKpsewhich)
+            {
+               // Look up all the possible file names in one go
+               // rather than running kpsewhich for each extension.
+
+               String[] names = new String[imageExtensions.length+1];
+               names[0] = imgName+".tex";
+
+               for (int i = 0; i < imageExtensions.length; i++)
+               {
+                  names[i+1] = imgName+imageExtensions[i];
+               }
+
+               getFlattenDocSrc().kpsewhich(names);
+            }
+
             if (csname.equals("includeimg"))
             {
                 path = new TeXPath(parser, imgName, "tex",
@@ -44,6 +44,7 @@ import com.dickimawbooks.texjavahelplib.InvalidSyntaxException;
 import com.dickimawbooks.texjavahelplib.AbstractCLI;
 import com.dickimawbooks.texjavahelplib.CLISyntaxParser;
 import com.dickimawbooks.texjavahelplib.CLIArgValue;
+import com.dickimawbooks.texjavahelplib.CompiledDictionary;
 import com.dickimawbooks.texjavahelplib.MessageSystem;
 
 public class Xml2Bib extends AbstractCLI
@@ -369,7 +370,8 @@ public class Xml2Bib extends AbstractCLI
           The order of files is important as duplicate keys will be overridden
           in a subsequent file. This allows texjavahelplib-*.xml to be specified
           first and the application's resource file next, which can override
-          default values.
+          default values. The files may be either XML or compiled
+          dictionaries.
           */
 
          if (resourceFileNames != null)
@@ -377,7 +379,7 @@ public class Xml2Bib extends AbstractCLI
             for (String name : resourceFileNames)
             {
                in = getClass().getResourceAsStream(name);
-               props.loadFromXML(in);
+               CompiledDictionary.load(in, props);
                in.close();
                in = null;
             }
@@ -386,7 +388,7 @@ public class Xml2Bib extends AbstractCLI
          for (String filename : inFileNames)
          {
             in = new FileInputStream(getXmlFile(filename));
-            props.loadFromXML(in);
+            CompiledDictionary.load(in, props);
             in.close();
             in = null;
          }
@@ -29,6 +29,12 @@ import java.util.Locale;
 import java.util.Vector;
 import java.util.zip.*;
 
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import com.dickimawbooks.texjavahelplib.TeXJavaHelpLib;
 import com.dickimawbooks.texjavahelplib.InvalidSyntaxException;
 import com.dickimawbooks.texjavahelplib.AbstractCLI;
@@ -37,6 +43,7 @@ import com.dickimawbooks.texjavahelplib.HelpsetFile;
 import com.dickimawbooks.texjavahelplib.Helpset;
 import com.dickimawbooks.texjavahelplib.HelpSetLocale;
 import com.dickimawbooks.texjavahelplib.MessageSystem;
+import com.dickimawbooks.texjavahelplib.SearchData;
 
 public class ZipHelpset extends AbstractCLI
 {
@@ -133,6 +140,9 @@ public class ZipHelpset extends AbstractCLI
 
       printSyntaxItem(getMessage("syntax.license-file", "--license-file", "-L"));
 
+      printSyntaxItem(getMessage("syntax.jobs", "--jobs", "-j",
+        Runtime.getRuntime().availableProcessors()));
+
       System.out.println();
       System.out.println(getMessage("clisyntax.other.options"));
       System.out.println();
@@ -153,6 +163,7 @@ public class ZipHelpset extends AbstractCLI
        || arg.equals("--helpset")
        || arg.equals("--locales") || arg.equals("-l")
        || arg.equals("--locale-prefix") || arg.equals("-p")
+       || arg.equals("--jobs") || arg.equals("-j")
        )
       {
          return 1;
@@ -347,6 +358,15 @@ public class ZipHelpset extends AbstractCLI
 
          fileLocaleTagList.add(flt);
       }
+      else if (isIntArg(arg, "-j", "--jobs", returnVals))
+      {
+         jobs = returnVals[0].intValue();
+
+         if (jobs < 1)
+         {
+            jobs = Runtime.getRuntime().availableProcessors();
+         }
+      }
       else if (isArg(arg, "-o", "--output", returnVals))
       {
          if (zipFile != null)
@@ -451,6 +471,8 @@ public class ZipHelpset extends AbstractCLI
          }
       }
 
+      final Vector<Path> paths = new Vector<Path>();
+
       Files.walkFileTree(helpsetPath, new SimpleFileVisitor<Path>()
        {
           @Override
@@ -459,64 +481,148 @@ public class ZipHelpset extends AbstractCLI
           {
              if (!attrs.isDirectory())
              {
-                String type = Files.probeContentType(path);
-
-                if (HelpsetFile.isSupportedType(type))
-                {
-                   URI uri = path.toUri();
-
-                   URI rUri = baseUri.relativize(uri);
-
-                   HelpSetLocale hsl = null;
-
-                   if (fileLocaleTagList != null)
-                   {
-                      for (FileLocaleTag flt : fileLocaleTagList)
-                      {
-                         if (flt.matches(path))
-                         {
-                            hsl = new HelpSetLocale(flt.getTag());
-
-                            break;
-                         }
-                      }
-                   }
-
-                   if (hsl == null && localeNames != null)
-                   {
-                      for (String tag : localeNames)
-                      {
-                         if (matches(path, tag))
-                         {
-                            hsl = new HelpSetLocale(tag);
-
-                            break;
-                         }
-                      }
-                   }
-
-                   HelpsetFile hsFile = new HelpsetFile(getHelpLib(),
-                     rUri.toString(), type, hsl);
-
-                   hsFile.setPath(path);
-                   hsFile.setNameFrom(inPath.relativize(path));
-
-                   hsFile.setEncodingFromPath();
-
-                   helpset.add(hsFile);
-                }
-                else
-                {
-                   warning(getMessage("message.skipping_unsupported",
-                    path, type));
-                }
+                paths.add(path);
              }
 
              return FileVisitResult.CONTINUE;
           }
        });
 
-      helpset.writeHelpset(zipFile);
+      // Probing the content type and encoding requires reading each
+      // file, so this is done concurrently. The files are added to
+      // the helpset in the order they were found.
+
+      final String[] types = new String[paths.size()];
+      Vector<Future<HelpsetFile>> futures
+         = new Vector<Future<HelpsetFile>>(paths.size());
+
+      ExecutorService executor = Executors.newFixedThreadPool(jobs);
+
+      try
+      {
+         for (int i = 0; i < paths.size(); i++)
+         {
+            final int idx = i;
+            final Path path = paths.get(i);
+
+            futures.add(executor.submit(new Callable<HelpsetFile>()
+            {
+               @Override
+               public HelpsetFile call() throws IOException
+               {
+                  types[idx] = Files.probeContentType(path);
+
+                  return createHelpsetFile(path, types[idx]);
+               }
+            }));
+         }
+
+         for (int i = 0; i < futures.size(); i++)
+         {
+            HelpsetFile hsFile = getResult(futures.get(i));
+
+            if (hsFile == null)
+            {
+               warning(getMessage("message.skipping_unsupported",
+                paths.get(i), types[i]));
+            }
+            else
+            {
+               helpset.add(hsFile);
+            }
+         }
+      }
+      finally
+      {
+         executor.shutdownNow();
+      }
+
+      helpset.writeHelpset(zipFile, jobs);
+   }
+
+   /**
+    * Creates the helpset file for the given path.
+    * @return the helpset file or null if the type isn't supported
+    */
+   protected HelpsetFile createHelpsetFile(Path path, String type)
+   throws IOException
+   {
+      if (!HelpsetFile.isSupportedType(type)
+           && path.toString().endsWith("."+SearchData.BINARY_EXT))
+      {
+         type = HelpsetFile.TYPE_SEARCH_INDEX;
+      }
+
+      if (!HelpsetFile.isSupportedType(type))
+      {
+         return null;
+      }
+
+      URI uri = path.toUri();
+
+      URI rUri = baseUri.relativize(uri);
+
+      HelpSetLocale hsl = null;
+
+      if (fileLocaleTagList != null)
+      {
+         for (FileLocaleTag flt : fileLocaleTagList)
+         {
+            if (flt.matches(path))
+            {
+               hsl = new HelpSetLocale(flt.getTag());
+
+               break;
+            }
+         }
+      }
+
+      if (hsl == null && localeNames != null)
+      {
+         for (String tag : localeNames)
+         {
+            if (matches(path, tag))
+            {
+               hsl = new HelpSetLocale(tag);
+
+               break;
+            }
+         }
+      }
+
+      HelpsetFile hsFile = new HelpsetFile(getHelpLib(),
+        rUri.toString(), type, hsl);
+
+      hsFile.setPath(path);
+      hsFile.setNameFrom(inPath.relativize(path));
+
+      hsFile.setEncodingFromPath();
+
+      return hsFile;
+   }
+
+   private HelpsetFile getResult(Future<HelpsetFile> future)
+    throws IOException
+   {
+      try
+      {
+         return future.get();
+      }
+      catch (InterruptedException e)
+      {
+         throw new InterruptedIOException(e.getMessage());
+      }
+      catch (ExecutionException e)
+      {
+         Throwable cause = e.getCause();
+
+         if (cause instanceof IOException)
+         {
+            throw (IOException)cause;
+         }
+
+         throw new IOException(cause);
+      }
    }
 
    protected boolean matches(Path path, String tag)
@@ -602,6 +708,8 @@ public class ZipHelpset extends AbstractCLI
 
    String localePrefix = null;
 
+   int jobs = Runtime.getRuntime().availableProcessors();
+
    Vector<HelpsetFile> licenseFiles;
    Vector<FileLocaleTag> fileLocaleTagList;
 }
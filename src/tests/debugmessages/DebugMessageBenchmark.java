@@ -0,0 +1,152 @@
+/*
+    Copyright (C) 2026 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+
+package com.dickimawbooks.texjavahelplib;
+
+import java.io.IOException;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Compares the cost of the per-entry debug message written when a
+ * large helpset is loaded with debugging switched off. The message
+ * is either formatted before it's passed to debug(String) (as
+ * before) or passed to debugMessage, which only formats it if
+ * debugging is on.
+ * Syntax: DebugMessageBenchmark [&lt;entries&gt;]
+ */
+public class DebugMessageBenchmark
+{
+   public static void main(String[] args) throws Exception
+   {
+      int entries = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+
+      TeXJavaHelpLib helpLib = createHelpLib();
+
+      String[] names = new String[entries];
+
+      for (int i = 0; i < entries; i++)
+      {
+         names[i] = String.format("helpset/en/node%05d.html", i);
+      }
+
+      // warm up
+
+      for (int i = 0; i < 5; i++)
+      {
+         run(helpLib, names, false);
+         run(helpLib, names, true);
+      }
+
+      long[] eager = run(helpLib, names, false);
+      long[] deferred = run(helpLib, names, true);
+
+      System.out.format(
+        "Formatted before debug(String): %.3fus, %d bytes per entry%n",
+         eager[0]/1000.0/entries, eager[1]/entries);
+
+      System.out.format(
+        "debugMessage:                   %.3fus, %d bytes per entry%n",
+         deferred[0]/1000.0/entries, deferred[1]/entries);
+   }
+
+   /**
+    * Returns the elapsed time in nanoseconds and the number of bytes
+    * allocated by this thread (or -1 if that isn't supported).
+    */
+   private static long[] run(TeXJavaHelpLib helpLib, String[] names,
+     boolean deferred)
+   {
+      java.lang.management.ThreadMXBean bean
+         = ManagementFactory.getThreadMXBean();
+
+      com.sun.management.ThreadMXBean sunBean = null;
+
+      if (bean instanceof com.sun.management.ThreadMXBean)
+      {
+         sunBean = (com.sun.management.ThreadMXBean)bean;
+      }
+
+      long threadId = Thread.currentThread().getId();
+
+      long startBytes = sunBean == null ? 0L
+         : sunBean.getThreadAllocatedBytes(threadId);
+      long start = System.nanoTime();
+
+      for (String name : names)
+      {
+         if (deferred)
+         {
+            helpLib.debugMessage("message.extracting", "Extracting {0}...",
+              name);
+         }
+         else
+         {
+            helpLib.debug(helpLib.getMessageWithFallback(
+              "message.extracting", "Extracting {0}...", name));
+         }
+      }
+
+      long time = System.nanoTime()-start;
+
+      long bytes = sunBean == null ? -1L
+         : sunBean.getThreadAllocatedBytes(threadId)-startBytes;
+
+      return new long[] {time, bytes};
+   }
+
+   private static TeXJavaHelpLib createHelpLib() throws IOException
+   {
+      TeXJavaHelpLibAppAdapter app = new TeXJavaHelpLibAppAdapter()
+       {
+          @Override
+          public boolean isGUI()
+          {
+             return false;
+          }
+
+          @Override
+          public String getApplicationName()
+          {
+             return "DebugMessageBenchmark";
+          }
+
+          @Override
+          public boolean isDebuggingOn()
+          {
+             return false;
+          }
+
+          @Override
+          public void message(String text)
+          {
+          }
+
+          @Override
+          public void debug(String text)
+          {
+          }
+       };
+
+      TeXJavaHelpLib helpLib = new TeXJavaHelpLib(app);
+      app.setHelpLib(helpLib);
+
+      return helpLib;
+   }
+}
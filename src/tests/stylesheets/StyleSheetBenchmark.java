@@ -0,0 +1,131 @@
+/*
+    Copyright (C) 2026 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+
+package com.dickimawbooks.texjavahelplib;
+
+import java.io.StringReader;
+
+import javax.swing.text.html.HTMLDocument;
+import javax.swing.text.html.HTMLEditorKit;
+import javax.swing.text.html.StyleSheet;
+
+/**
+ * Compares the time taken to create and parse a page when the
+ * helpset CSS files are parsed for each document (as before) with
+ * the time taken when the parsed style sheets are shared.
+ * Syntax: StyleSheetBenchmark [&lt;iterations&gt;]
+ */
+public class StyleSheetBenchmark
+{
+   public static void main(String[] args) throws Exception
+   {
+      int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+
+      TeXJavaHelpLib helpLib = StyleSheetTest.createHelpLib();
+
+      String[] css = new String[] {createCss("a", 300), createCss("b", 100)};
+      Helpset helpset = StyleSheetTest.createHelpset(helpLib, css);
+
+      StringBuilder html = new StringBuilder("<html><body>");
+
+      for (int i = 0; i < 100; i++)
+      {
+         html.append(String.format(
+           "<h2 class=\"a%d\">Section %d</h2><p class=\"b%d\">Paragraph %d"
+           + " with <em>some</em> <a href=\"#s%d\">text</a>.</p>",
+           i, i, i % 100, i, i));
+      }
+
+      html.append("</body></html>");
+
+      String page = html.toString();
+
+      HTMLEditorKit kit = new HTMLEditorKit();
+      StyleSheet defaults = kit.getStyleSheet();
+
+      // warm up
+
+      run(helpset, defaults, kit, page, iterations/4, false);
+      run(helpset, defaults, kit, page, iterations/4, true);
+
+      double perDoc = run(helpset, defaults, kit, page, iterations, false);
+      double shared = run(helpset, defaults, kit, page, iterations, true);
+
+      System.out.format("CSS parsed per document: %.3fms per page%n", perDoc);
+      System.out.format("Shared style sheets:     %.3fms per page%n", shared);
+      System.out.format("Speedup: %.2fx%n", perDoc/shared);
+   }
+
+   private static double run(Helpset helpset, StyleSheet defaults,
+     HTMLEditorKit kit, String page, int iterations, boolean shared)
+   throws Exception
+   {
+      long start = System.nanoTime();
+
+      for (int i = 0; i < iterations; i++)
+      {
+         StyleSheet styleSheet;
+
+         if (shared)
+         {
+            styleSheet = helpset.createStyleSheet(defaults);
+         }
+         else
+         {
+            styleSheet = null;
+
+            for (HelpsetFile hsf : helpset.cssFiles)
+            {
+               StyleSheet s = hsf.getStyleSheet();
+
+               if (styleSheet == null)
+               {
+                  styleSheet = s;
+               }
+               else
+               {
+                  styleSheet.addStyleSheet(s);
+               }
+            }
+
+            styleSheet.addStyleSheet(defaults);
+         }
+
+         HTMLDocument doc = new HTMLDocument(styleSheet);
+         kit.read(new StringReader(page), doc, 0);
+      }
+
+      return (System.nanoTime()-start)/1.0e6/iterations;
+   }
+
+   private static String createCss(String prefix, int count)
+   {
+      StringBuilder builder = new StringBuilder();
+
+      for (int i = 0; i < count; i++)
+      {
+         builder.append(String.format(
+           ".%s%d { color: #%06x; margin-left: %dpx; font-size: %dpt }%n"
+           + "div.%s%d p { padding: %dpx }%n",
+           prefix, i, i*997 % 0xFFFFFF, i % 20, 8 + i % 10, prefix, i, i % 5));
+      }
+
+      return builder.toString();
+   }
+}
@@ -0,0 +1,195 @@
+/*
+    Copyright (C) 2026 Nicola L.C. Talbot
+    www.dickimaw-books.com
+
+    This program is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation; either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program; if not, write to the Free Software
+    Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301  USA
+*/
+
+package com.dickimawbooks.texjavahelplib;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+import javax.swing.text.Element;
+import javax.swing.text.ElementIterator;
+import javax.swing.text.html.CSS;
+import javax.swing.text.html.HTMLDocument;
+import javax.swing.text.html.HTMLEditorKit;
+import javax.swing.text.html.StyleSheet;
+
+/**
+ * Checks that the shared helpset style sheets have the same
+ * precedence as when the CSS files were parsed into each document's
+ * style sheet.
+ */
+public class StyleSheetTest
+{
+   public static void main(String[] args) throws Exception
+   {
+      TeXJavaHelpLib helpLib = createHelpLib();
+
+      int failed = 0;
+
+      // The first CSS file takes precedence over the others.
+
+      failed += check(helpLib, "red",
+        new String[] {"p { color: red }", "p { color: green }"},
+        "p { color: blue }", "<p>x</p>");
+
+      // The defaults take precedence over the CSS files after the
+      // first.
+
+      failed += check(helpLib, "blue",
+        new String[] {"body { color: black }", "p { color: green }"},
+        "p { color: blue }", "<p>x</p>");
+
+      // Later CSS files take precedence over earlier ones (other
+      // than the first).
+
+      failed += check(helpLib, "green",
+        new String[] {"body { color: black }", "p { color: red }",
+         "p { color: green }"},
+        null, "<p>x</p>");
+
+      // The page's own rules take precedence over the CSS files.
+
+      failed += check(helpLib, "purple",
+        new String[] {"p { color: red }", "p { color: green }"},
+        "p { color: blue }",
+        "<html><head><style>p { color: purple }</style></head>"
+         + "<body><p>x</p></body></html>");
+
+      // The page's own rules (such as the font settings) take
+      // precedence over more specific rules in the first CSS file.
+
+      failed += check(helpLib, "purple",
+        new String[] {"p.note { color: red }", "p { color: green }"},
+        null,
+        "<html><head><style>p { color: purple }</style></head>"
+         + "<body><p class=\"note\">x</p></body></html>");
+
+      if (failed > 0)
+      {
+         System.err.println(failed+" check(s) failed");
+         System.exit(1);
+      }
+
+      System.out.println("All checks passed");
+   }
+
+   private static int check(TeXJavaHelpLib helpLib, String expected,
+      String[] css, String defaults, String html)
+   throws Exception
+   {
+      Helpset helpset = createHelpset(helpLib, css);
+
+      StyleSheet defaultSheet = null;
+
+      if (defaults != null)
+      {
+         defaultSheet = new StyleSheet();
+         defaultSheet.loadRules(new StringReader(defaults), null);
+      }
+
+      String result = getParagraphColor(
+        helpset.createStyleSheet(defaultSheet), html);
+
+      if (expected.equals(result))
+      {
+         return 0;
+      }
+
+      System.err.format("Expected %s, found %s (css: %s, defaults: %s, page: %s)%n",
+        expected, result, String.join(" | ", css), defaults, html);
+
+      return 1;
+   }
+
+   static Helpset createHelpset(TeXJavaHelpLib helpLib, String[] css)
+   {
+      Helpset helpset = new Helpset(helpLib);
+
+      for (int i = 0; i < css.length; i++)
+      {
+         HelpsetFile hsf = new HelpsetFile(helpLib, "style"+i+".css",
+           HelpsetFile.TYPE_CSS);
+         hsf.setByteContent(css[i].getBytes(StandardCharsets.UTF_8));
+
+         helpset.add(hsf);
+         helpset.addContent(hsf);
+      }
+
+      return helpset;
+   }
+
+   static String getParagraphColor(StyleSheet styleSheet, String html)
+   throws Exception
+   {
+      HTMLDocument doc = new HTMLDocument(styleSheet);
+      new HTMLEditorKit().read(new StringReader(html), doc, 0);
+
+      ElementIterator it = new ElementIterator(doc);
+      Element elem;
+
+      while ((elem = it.next()) != null)
+      {
+         if (elem.getName().equals("p"))
+         {
+            Object value = styleSheet.getViewAttributes(
+              new javax.swing.text.html.ParagraphView(elem))
+              .getAttribute(CSS.Attribute.COLOR);
+
+            return value == null ? null : value.toString();
+         }
+      }
+
+      return null;
+   }
+
+   static TeXJavaHelpLib createHelpLib() throws IOException
+   {
+      TeXJavaHelpLibAppAdapter app = new TeXJavaHelpLibAppAdapter()
+       {
+          @Override
+          public boolean isGUI()
+          {
+             return false;
+          }
+
+          @Override
+          public String getApplicationName()
+          {
+             return "StyleSheetTest";
+          }
+
+          @Override
+          public boolean isDebuggingOn()
+          {
+             return false;
+          }
+
+          @Override
+          public void message(String text)
+          {
+          }
+       };
+
+      TeXJavaHelpLib helpLib = new TeXJavaHelpLib(app);
+      app.setHelpLib(helpLib);
+
+      return helpLib;
+   }
+}